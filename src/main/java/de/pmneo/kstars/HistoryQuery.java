@@ -0,0 +1,175 @@
+package de.pmneo.kstars;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import de.pmneo.kstars.utils.Downsampler;
+import de.pmneo.kstars.utils.HistoryStore;
+
+/**
+ * Server-side downsampling of SessionHistory for the charts — served by the "history" command
+ * (/cmd/history/&lt;series&gt;?from=&amp;to=&amp;points=&amp;mode=). The status stream hands the
+ * browser every raw guide sample (up to 20k a night) just to be drawn into a few hundred pixels;
+ * this returns about as many points as the chart is wide, as parallel ts/values arrays.
+ *
+ * Series:
+ * <ul>
+ * <li>guide — RA and DEC guiding error</li>
+ * <li>hfr, hfr/&lt;train&gt; — autofocus HFR samples, every train or one</li>
+ * <li>capture/&lt;train&gt;[/&lt;metric&gt;] — per-capture metrics (SessionHistory.CAPTURE_METRICS)</li>
+ * <li>temperature, mount[/&lt;ra|dec|az|alt&gt;] — only from the analyze log, see AnalyzeLogFollower</li>
+ * </ul>
+ *
+ * With stored=true (the "source=store" parameter) the series come from the on-disk HistoryStore
+ * instead of the in-memory ring buffers — same series names, any range across any number of
+ * nights.
+ *
+ * Mode "lttb" (default) or "minmax", see {@link Downsampler}. Results for closed buckets (nothing
+ * can be appended to them anymore) are cached: min/max per bucket, LTTB — whose picks depend on
+ * the neighbouring buckets — per fully closed range. Both only ever cost the few points they
+ * hold, and the cache is bounded.
+ */
+public class HistoryQuery {
+
+    public static final int DEFAULT_POINTS = 500;
+    public static final int MAX_POINTS = 5000;
+    public static final long DEFAULT_RANGE_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private static final int CACHE_ENTRIES = 20_000;
+
+    private final SessionHistory history;
+
+    private final Map<String, Downsampler.Points> cache = new LinkedHashMap<>( 256, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<String, Downsampler.Points> eldest ) {
+            return size() > CACHE_ENTRIES;
+        }
+    };
+
+    public HistoryQuery( SessionHistory history ) {
+        this.history = history;
+    }
+
+    /** @param series e.g. "guide", "hfr/Primary", "capture/Primary/hfr" */
+    public Map<String,Object> query( String series, long from, long to, int points, String mode, boolean stored ) throws IOException {
+        HistoryStore store = history.getStore();
+        if( stored && store == null ) {
+            throw new IllegalArgumentException( "No history store configured" );
+        }
+        if( to <= from ) {
+            throw new IllegalArgumentException( "Empty range " + from + " - " + to );
+        }
+        points = Math.max( 2, Math.min( points, MAX_POINTS ) );
+        boolean minMax = "minmax".equals( mode );
+
+        // min/max emits up to two points per bucket
+        long width = Downsampler.bucketWidth( from, to, minMax ? Math.max( 1, points / 2 ) : points );
+        long alignedFrom = Math.floorDiv( from, width ) * width;
+        long alignedTo = Math.floorDiv( to + width - 1, width ) * width;
+
+        String[] parts = series.split( "/" );
+        String prefix = stored ? "store:" : "";
+        Map<String,Downsampler.Points> res = new LinkedHashMap<>();
+        switch( parts[0] ) {
+            case "guide":
+                res.put( "ra", downsample( prefix + "guide/ra", stored ? store.guide( "ra", alignedFrom, alignedTo ) : history.guideDeltaHistory.ra( alignedFrom, alignedTo ), width, minMax ) );
+                res.put( "de", downsample( prefix + "guide/de", stored ? store.guide( "de", alignedFrom, alignedTo ) : history.guideDeltaHistory.de( alignedFrom, alignedTo ), width, minMax ) );
+                break;
+            case "hfr":
+                if( stored ) {
+                    if( parts.length < 2 ) {
+                        throw new IllegalArgumentException( "usage: history/hfr/<train>?source=store" );
+                    }
+                    res.put( parts[1], downsample( prefix + "hfr/" + parts[1], store.hfr( parts[1], alignedFrom, alignedTo ), width, minMax ) );
+                    break;
+                }
+                for( Map.Entry<String, SessionHistory.HfrSeries> e : history.hfrHistory.entrySet() ) {
+                    if( parts.length < 2 || parts[1].equals( e.getKey() ) ) {
+                        res.put( e.getKey(), downsample( prefix + "hfr/" + e.getKey(), e.getValue().hfr( alignedFrom, alignedTo ), width, minMax ) );
+                    }
+                }
+                break;
+            case "capture":
+                if( parts.length < 2 ) {
+                    throw new IllegalArgumentException( "usage: history/capture/<train>[/<metric>]" );
+                }
+                for( String metric : SessionHistory.CAPTURE_METRICS ) {
+                    if( parts.length < 3 || parts[2].equals( metric ) ) {
+                        String key = prefix + "capture/" + parts[1] + "/" + metric;
+                        res.put( metric, downsample( key, stored ? store.capture( parts[1], metric, alignedFrom, alignedTo ) : history.captureMetric( parts[1], metric, alignedFrom, alignedTo ), width, minMax ) );
+                    }
+                }
+                break;
+            case "temperature":
+                if( stored ) {
+                    throw new IllegalArgumentException( "temperature isn't kept in the history store" );
+                }
+                res.put( "temperature", downsample( "temperature", history.temperatureHistory.temperature( alignedFrom, alignedTo ), width, minMax ) );
+                break;
+            case "mount":
+                if( stored ) {
+                    throw new IllegalArgumentException( "mount isn't kept in the history store" );
+                }
+                for( String axis : new String[]{ "ra", "dec", "az", "alt" } ) {
+                    if( parts.length < 2 || parts[1].equals( axis ) ) {
+                        res.put( axis, downsample( "mount/" + axis, history.mountCoordsHistory.axis( axis, alignedFrom, alignedTo ), width, minMax ) );
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException( "Unknown series " + series + ", expected guide, hfr[/<train>], capture/<train>[/<metric>], temperature or mount[/<axis>]" );
+        }
+
+        Map<String,Object> result = new LinkedHashMap<>();
+        result.put( "from", alignedFrom );
+        result.put( "to", alignedTo );
+        result.put( "mode", minMax ? "minmax" : "lttb" );
+        result.put( "bucketMillis", width );
+        result.put( "series", res );
+        return result;
+    }
+
+    private Downsampler.Points downsample( String key, Downsampler.Series s, long width, boolean minMax ) {
+        int[] starts = new int[ s.size + 1 ];
+        long[] bucketIds = new long[ s.size + 1 ];
+        int buckets = Downsampler.group( s, width, starts, bucketIds );
+
+        if( minMax ) {
+            Downsampler.Points res = new Downsampler.Points( buckets * 2 );
+            for( int b=0; b<buckets; b++ ) {
+                long start = bucketIds[ b ] * width;
+                if( s.isClosed( start, start + width ) ) {
+                    final int i = b;
+                    res.addAll( cached( key + "|minmax|" + width + "|" + bucketIds[ b ], () -> Downsampler.minMax( s, starts[ i ], starts[ i + 1 ] ) ) );
+                }
+                else {
+                    res.addAll( Downsampler.minMax( s, starts[ b ], starts[ b + 1 ] ) );
+                }
+            }
+            return res.trim();
+        }
+
+        if( buckets > 0 && s.isClosed( bucketIds[0] * width, ( bucketIds[ buckets - 1 ] + 1 ) * width ) ) {
+            return cached( key + "|lttb|" + width + "|" + bucketIds[0] + "|" + bucketIds[ buckets - 1 ] + "|" + s.size,
+                () -> Downsampler.lttb( s, starts, buckets ).trim() );
+        }
+        return Downsampler.lttb( s, starts, buckets ).trim();
+    }
+
+    private Downsampler.Points cached( String key, Supplier<Downsampler.Points> compute ) {
+        synchronized( cache ) {
+            Downsampler.Points hit = cache.get( key );
+            if( hit != null ) {
+                return hit;
+            }
+        }
+
+        Downsampler.Points res = compute.get().trim();
+        synchronized( cache ) {
+            cache.put( key, res );
+        }
+        return res;
+    }
+}
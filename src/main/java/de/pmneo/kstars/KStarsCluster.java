@@ -1,10 +1,8 @@
 package de.pmneo.kstars;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -47,9 +45,18 @@ import com.google.gson.GsonBuilder;
 
 import bsh.Interpreter;
 
+import de.pmneo.kstars.utils.AnalyzeArchiveIndex;
+import de.pmneo.kstars.utils.AnalyzeLogFollower;
 import de.pmneo.kstars.utils.Coordinates;
+import de.pmneo.kstars.utils.FitsThumbnail;
+import de.pmneo.kstars.utils.FitsThumbnailCache;
+import de.pmneo.kstars.utils.HistoryStore;
+import de.pmneo.kstars.utils.ProcessTracker;
 import de.pmneo.kstars.utils.RaDecUtils;
+import de.pmneo.kstars.utils.RenderExecutor;
+import de.pmneo.kstars.utils.ThumbnailPrerenderer;
 import de.pmneo.kstars.web.CommandServlet.Action;
+import de.pmneo.kstars.web.OutboundMailbox;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -121,6 +128,25 @@ public abstract class KStarsCluster extends KStarsState {
 	// all, which would otherwise look like "nothing left to park").
 	protected final AtomicBoolean devicesComplete = new AtomicBoolean( true );
 
+    /** Enables SessionHistory's on-disk archive under the given directory — empty/null keeps
+     *  history in memory only. Must be called before start(), i.e. before anything is recorded. */
+    public void setHistoryStore( String dir ) {
+        if( dir == null || dir.isBlank() ) {
+            return;
+        }
+        try {
+            history.setStore( new HistoryStore( new File( dir.replaceFirst( "^~", System.getProperty( "user.home" ) ) ) ) );
+        }
+        catch( Throwable t ) {
+            logError( "Failed to open history store " + dir + ", keeping history in memory only", t );
+        }
+    }
+
+    /** Disk budget of the rendered thumbnail cache — see FitsThumbnailCache. */
+    public void setThumbnailCacheMb( int mb ) {
+        thumbnails.setMaxDiskBytes( Math.max( 0, mb ) * 1024L * 1024L );
+    }
+
     private double preCoolTemp = -15;
     public void setPreCoolTemp(double preCoolTemp) {
 		for( IndiCamera camera : cameraDevices.values() ) {
@@ -179,9 +205,47 @@ public abstract class KStarsCluster extends KStarsState {
 		}
 
 		schedulerService.scheduleWithFixedDelay( this::broadcastStatusIfChanged, 1, 1, TimeUnit.SECONDS );
+		StatusBroadcaster.getInstance().setSubscriptionListener( () -> statusDirty( StatusSnapshot.CORE ) );
 		schedulerService.scheduleWithFixedDelay( this::refreshIndiWatches, 1, 1, TimeUnit.MINUTES );
 
 		restoreHistoryFromAnalyzeLog();
+		schedulerService.scheduleWithFixedDelay( this::followAnalyzeLog, 5, 5, TimeUnit.SECONDS );
+		schedulerService.scheduleWithFixedDelay( this::indexAnalyzeArchive, 1, 15, TimeUnit.MINUTES );
+	}
+
+	/** Tails the analyze log Ekos keeps appending to — see AnalyzeLogFollower. The checkpoint file
+	 *  lives with our own data, not in Ekos' directory. */
+	private final AnalyzeLogFollower analyzeLogFollower = new AnalyzeLogFollower(
+		new File( System.getProperty( "user.home" ), ".local/share/kstars/analyze" ),
+		new File( System.getProperty( "user.home" ), ".local/share/kstarscluster/analyze.checkpoints" ),
+		history::recordFromAnalyzeLog );
+
+	private void followAnalyzeLog() {
+		try {
+			analyzeLogFollower.poll();
+		}
+		catch( Throwable t ) {
+			logError( "Failed to follow the analyze log", t );
+		}
+	}
+
+	/** Per-night summaries of every analyze log on disk, for the "analyzeArchive" command — see
+	 *  AnalyzeArchiveIndex. Only files changed since the last run get parsed again. */
+	private final AnalyzeArchiveIndex analyzeArchive = new AnalyzeArchiveIndex(
+		new File( System.getProperty( "user.home" ), ".local/share/kstars/analyze" ),
+		new File( System.getProperty( "user.home" ), ".local/share/kstarscluster/analyze-index.json" ) );
+
+	private void indexAnalyzeArchive() {
+		try {
+			long start = System.currentTimeMillis();
+			int parsed = analyzeArchive.refresh();
+			if( parsed > 0 ) {
+				logMessage( "Indexed " + parsed + " analyze logs in " + ( System.currentTimeMillis() - start ) + "ms" );
+			}
+		}
+		catch( Throwable t ) {
+			logError( "Failed to index the analyze log archive", t );
+		}
 	}
 
 	/**
@@ -199,30 +263,123 @@ public abstract class KStarsCluster extends KStarsState {
 			logMessage( "Restored " + summary.images() + " images, " + summary.hfrSamples()
 					+ " HFR samples, " + summary.guideSamples() + " guide samples, "
 					+ summary.timelineEvents() + " timeline events from the Ekos analyze log" );
+
+			for( Deque<SessionHistory.CapturedImage> images : history.capturedImages.values() ) {
+				for( SessionHistory.CapturedImage img : images ) {
+					prerenderThumbnail( img.filename, img.ts );
+				}
+			}
 		}
 		catch( Throwable t ) {
 			logError( "Failed to restore history from analyze log", t );
 		}
 	}
 
-	private String lastBroadcastStatus = null;
+	/** Topics whose values are polled rather than signalled — re-read by the periodic tick, everything else is pushed by statusDirty(). */
+	private static final Set<String> POLLED_STATUS_TOPICS = Set.of( StatusSnapshot.CORE, StatusSnapshot.DEVICES, StatusSnapshot.SCHEDULER, StatusSnapshot.ALIGNMENT, StatusSnapshot.MOUNT );
+	/** Collects a burst of signals (e.g. a capture's status change, captureComplete and the
+	 *  resulting timeline event all land within a few ms) into a single push. */
+	private static final long STATUS_PUSH_DEBOUNCE_MS = 50;
+
+	private final Set<String> dirtyStatusTopics = ConcurrentHashMap.newKeySet();
+	private final AtomicBoolean statusPushScheduled = new AtomicBoolean( false );
+	private final Object statusPushLock = new Object();
+	/** Subscriptions the last push computed for — a topic (or image train) that's been subscribed since then gets computed on the next one. */
+	private Set<String> pushedSubscriptions = Set.of();
+
+	/** The periodic half of the status push: the polled values (sequence queue, mount coords,
+	 *  FOV, device properties, the job list, process/connection state) only change when we look,
+	 *  so look once per second. Signal-driven state isn't touched here at all — see statusDirty. */
 	private void broadcastStatusIfChanged() {
 		try {
-			refreshSequenceQueueStatus();
-			refreshMountCoords();
-			refreshFov();
+			// Each of these is a synchronous D-Bus call — skipped outright while no client is
+			// subscribed to the topic it feeds.
+			StatusSnapshot wanted = new StatusSnapshot( StatusBroadcaster.getInstance().subscribedTopics() );
 
-			String json = new GsonBuilder().create().toJson( buildStatusSnapshot() );
-			if( !json.equals( lastBroadcastStatus ) ) {
-				lastBroadcastStatus = json;
-				StatusBroadcaster.getInstance().broadcast( json );
+			if( wanted.wants( StatusSnapshot.SCHEDULER ) ) {
+				refreshSequenceQueueStatus();
+			}
+			if( wanted.wants( StatusSnapshot.MOUNT ) ) {
+				refreshMountCoords();
 			}
+			if( wanted.wants( StatusSnapshot.ALIGNMENT ) ) {
+				refreshFov();
+			}
+
+			pushStatus( POLLED_STATUS_TOPICS );
 		}
 		catch( Throwable t ) {
 			logError( "Failed to broadcast status", t );
 		}
 	}
 
+	/** Event-driven half: a handle* or record* change schedules one push STATUS_PUSH_DEBOUNCE_MS out,
+	 *  and whatever else turns dirty until then rides along with it. */
+	@Override
+	protected void statusDirty( String topic ) {
+		dirtyStatusTopics.add( topic );
+		if( statusPushScheduled.compareAndSet( false, true ) ) {
+			schedulerService.schedule( this::pushDirtyStatus, STATUS_PUSH_DEBOUNCE_MS, TimeUnit.MILLISECONDS );
+		}
+	}
+
+	private void pushDirtyStatus() {
+		try {
+			statusPushScheduled.set( false );
+
+			Set<String> dirty = new HashSet<>();
+			for( Iterator<String> it = dirtyStatusTopics.iterator(); it.hasNext(); ) {
+				dirty.add( it.next() );
+				it.remove();
+			}
+			pushStatus( dirty );
+		}
+		catch( Throwable t ) {
+			logError( "Failed to push status", t );
+		}
+	}
+
+	/**
+	 * Recomputes only the dirty topics (plus core, which is tiny, plus anything some client has
+	 * subscribed to since the last push) and carries every other subscribed topic over from the
+	 * previous revision unchanged. StatusBroadcaster.publish() still does the change detection
+	 * itself (per top-level key, so delta clients only get what changed) — nothing is sent if
+	 * nothing differs. Topics nobody is subscribed to are neither computed nor carried.
+	 */
+	private void pushStatus( Set<String> dirty ) {
+		synchronized( statusPushLock ) {
+			StatusBroadcaster broadcaster = StatusBroadcaster.getInstance();
+			Set<String> subscriptions = broadcaster.subscribedTopics();
+			if( subscriptions == null ) {
+				subscriptions = StatusSnapshot.ALL_TOPICS;
+			}
+
+			Set<String> compute = new HashSet<>();
+			compute.add( StatusSnapshot.CORE );
+			for( String subscription : subscriptions ) {
+				String topic = StatusSnapshot.baseTopic( subscription );
+				if( dirty.contains( topic ) || !pushedSubscriptions.contains( subscription ) ) {
+					compute.add( topic );
+				}
+			}
+
+			Set<String> computeSubscriptions = new HashSet<>();
+			Set<String> carryOver = new HashSet<>();
+			for( String subscription : subscriptions ) {
+				String topic = StatusSnapshot.baseTopic( subscription );
+				if( compute.contains( topic ) ) {
+					computeSubscriptions.add( subscription );
+				}
+				else {
+					carryOver.add( topic );
+				}
+			}
+
+			broadcaster.publish( buildStatusSnapshot( computeSubscriptions ), carryOver );
+			pushedSubscriptions = subscriptions;
+		}
+	}
+
 	/**
 	 * Capture.getSequenceQueueStatusJSON(train) is a synchronous D-Bus call, so — same rule as
 	 * everywhere else — it only ever runs from this periodic broadcaster thread, never from a
@@ -389,6 +546,7 @@ public abstract class KStarsCluster extends KStarsState {
 		subscriptions.add( this.capture.addSigHandler( Capture.captureComplete.class, sig -> {
 			logMessage( "Captured " + sig.getMetadata().get( "filename" ) + " (" + sig.getTrain() + ")" );
 			history.recordCapturedImage( sig.getTrain(), sig.getMetadata() );
+			prerenderThumbnail( (String) sig.getMetadata().get( "filename" ), System.currentTimeMillis() );
 			incrementActiveSchedulerJobCompletedCount();
 		} ) );
 		subscriptions.add( this.mount.addNewStatusHandler( Mount.newStatus.class, status -> {
@@ -716,6 +874,8 @@ public abstract class KStarsCluster extends KStarsState {
 	}
 
 	private boolean tryStartKStars() {
+		// about to act on the answer — don't trust a "not running" that's up to 10s old
+		kstarsProcess.invalidate();
 		long runtime = getKStarsRuntime();
 		if( runtime < 0 ) {
 			Calendar[] range = config.getCivilTwilight();
@@ -755,7 +915,10 @@ public abstract class KStarsCluster extends KStarsState {
 					}).start();
 
 					logMessage( "Started kstars" );
-					if( !WaitUntil.waitUntil("Starting kstars", 10, () -> getKStarsRuntime() > 0 ) ) {
+					if( !WaitUntil.waitUntil("Starting kstars", 10, () -> {
+						kstarsProcess.invalidate();
+						return getKStarsRuntime() > 0;
+					} ) ) {
 						logMessage( "Failed to start kstars" );
 						return false;
 					}
@@ -1058,6 +1221,37 @@ public abstract class KStarsCluster extends KStarsState {
 	protected final AtomicReference<List<Double>> lastAlignSolution = new AtomicReference<>( List.of() );
 	protected final AtomicReference<List<SchedulerJob>> allSchedulerJobs = new AtomicReference<>( List.of() );
 
+	/** Downsampled chart data off {@link #history}, for the "history" command. */
+	protected final HistoryQuery historyQuery = new HistoryQuery( history );
+
+	/** Shared with ImageServlet, so what the pre-renderer puts in is what the browser gets. */
+	public final FitsThumbnailCache thumbnails = new FitsThumbnailCache();
+	/** ImageServlet's renders — one thread per core, and at most 256 requests waiting for one. */
+	public final RenderExecutor imageRenderer = new RenderExecutor( "image-render", Runtime.getRuntime().availableProcessors(), 256 );
+	private final ThumbnailPrerenderer thumbnailPrerenderer = new ThumbnailPrerenderer( thumbnails, this::isAutomationCpuBusy );
+
+	/** Plate solving, autofocus and an image download all want the CPU right now — thumbnails can
+	 *  wait a few seconds, none of these should. */
+	private boolean isAutomationCpuBusy() {
+		if( alignStatus.get() == AlignState.ALIGN_PROGRESS ) {
+			return true;
+		}
+		for( FocusState state : focusState.values() ) {
+			if( state == FocusState.FOCUS_PROGRESS || state == FocusState.FOCUS_FRAMING ) {
+				return true;
+			}
+		}
+		return captureStatus.containsValue( CaptureStatus.CAPTURE_IMAGE_RECEIVED );
+	}
+
+	/** Queues a recorded capture's file for pre-rendering, if it's (still) there. */
+	private void prerenderThumbnail( String filename, long ts ) {
+		File file = history.resolveKnownCapturedFile( filename );
+		if( file != null ) {
+			thumbnailPrerenderer.submit( file, ts );
+		}
+	}
+
 	protected boolean checkEkosReady( boolean autoConnect ) {
 		try {
 			ekos.checkAlive();
@@ -1289,6 +1483,8 @@ public abstract class KStarsCluster extends KStarsState {
 
 	public void addActions( Map<String, Action> actions ) {
         actions.put( "status", this::statusAction );
+		// per-client outbound queue/lag counters of the status and logging WebSockets
+		actions.put( "sockets", ( parts, req, resp ) -> OutboundMailbox.stats() );
 
 		actions.put( "suspend", ( parts, req, resp ) -> {
 			automationSuspended.set( true );
@@ -1320,6 +1516,93 @@ public abstract class KStarsCluster extends KStarsState {
 		} );
 
 
+		// sequenceContent/<job name>[/<hash>] — a job's .esq XML, which the status stream only
+		// references by hash (see SchedulerJobSummary). With the hash the response never changes,
+		// so the browser may keep it for good.
+		actions.put( "sequenceContent", ( parts, req, resp ) -> {
+			if( parts.length < 2 ) {
+				return "usage: sequenceContent/<job name>[/<hash>]";
+			}
+			String hash = parts.length > 2 ? parts[2] : null;
+			String content = sequenceContents.get( parts[1], hash, allSchedulerJobs.get() );
+			if( content == null ) {
+				resp.sendError( HttpServletResponse.SC_NOT_FOUND, "No sequence for job " + parts[1] + ( hash != null ? " with hash " + hash : "" ) );
+				return null;
+			}
+
+			resp.setContentType( "application/xml" );
+			resp.setCharacterEncoding( "UTF-8" );
+			if( hash != null ) {
+				resp.setHeader( "Cache-Control", "public, max-age=31536000, immutable" );
+			}
+			resp.getWriter().write( content );
+			return null;
+		} );
+
+		// history/<series>?from=&to=&points=&mode=&source=store — see HistoryQuery; from/to in
+		// epoch millis, defaulting to the last 24h
+		actions.put( "history", ( parts, req, resp ) -> {
+			if( parts.length < 2 ) {
+				return "usage: history/<guide|hfr[/<train>]|capture/<train>[/<metric>]>?from=&to=&points=&mode=<lttb|minmax>";
+			}
+			try {
+				long to = req.getParameter( "to" ) != null ? Long.parseLong( req.getParameter( "to" ) ) : System.currentTimeMillis();
+				long from = req.getParameter( "from" ) != null ? Long.parseLong( req.getParameter( "from" ) ) : to - HistoryQuery.DEFAULT_RANGE_MILLIS;
+				int points = req.getParameter( "points" ) != null ? Integer.parseInt( req.getParameter( "points" ) ) : HistoryQuery.DEFAULT_POINTS;
+				String series = String.join( "/", Arrays.copyOfRange( parts, 1, parts.length ) );
+				return historyQuery.query( series, from, to, points, req.getParameter( "mode" ), "store".equals( req.getParameter( "source" ) ) );
+			}
+			catch( IllegalArgumentException e ) {
+				resp.setStatus( HttpServletResponse.SC_BAD_REQUEST );
+				return Map.of( "error", String.valueOf( e.getMessage() ) );
+			}
+		} );
+
+		// imageStats — thumbnail pre-rendering, decoded frame, thumbnail and auto-stretch cache counters, render queue
+		actions.put( "imageStats", ( parts, req, resp ) -> {
+			Map<String,Object> res = new LinkedHashMap<>();
+			res.put( "prerender", thumbnailPrerenderer.stats() );
+			res.put( "frames", FitsThumbnail.frameCacheStats() );
+			res.putAll( thumbnails.stats() );
+			res.put( "render", imageRenderer.stats() );
+			return res;
+		} );
+
+		// storedNights — what the history store holds, per night
+		actions.put( "storedNights", ( parts, req, resp ) -> {
+			HistoryStore store = history.getStore();
+			return store == null ? Map.of() : store.listNights();
+		} );
+		// storedCaptures[/<train>]?from=&to=&limit= — raw capture records out of the history store
+		actions.put( "storedCaptures", ( parts, req, resp ) -> {
+			HistoryStore store = history.getStore();
+			if( store == null ) {
+				return List.of();
+			}
+			try {
+				long to = req.getParameter( "to" ) != null ? Long.parseLong( req.getParameter( "to" ) ) : System.currentTimeMillis();
+				long from = req.getParameter( "from" ) != null ? Long.parseLong( req.getParameter( "from" ) ) : to - HistoryQuery.DEFAULT_RANGE_MILLIS;
+				int limit = req.getParameter( "limit" ) != null ? Integer.parseInt( req.getParameter( "limit" ) ) : 5000;
+				return store.captures( parts.length > 1 ? parts[1] : null, from, to, limit );
+			}
+			catch( IllegalArgumentException e ) {
+				resp.setStatus( HttpServletResponse.SC_BAD_REQUEST );
+				return Map.of( "error", String.valueOf( e.getMessage() ) );
+			}
+		} );
+
+		// analyzeArchive[/<yyyy-MM-dd>] — every night's summary, or one night's with its files
+		actions.put( "analyzeArchive", ( parts, req, resp ) -> {
+			if( parts.length < 2 ) {
+				return analyzeArchive.nights();
+			}
+			Map<String,Object> night = analyzeArchive.night( parts[1] );
+			if( night == null ) {
+				resp.sendError( HttpServletResponse.SC_NOT_FOUND, "Nothing indexed for night " + parts[1] );
+			}
+			return night;
+		} );
+
 		actions.put( "scheduler", ( parts, req, resp ) -> {
 			if( parts.length < 2 ) {
 				return "usage: scheduler/<start|stop>";
@@ -1538,9 +1821,16 @@ public abstract class KStarsCluster extends KStarsState {
 		return buildStatusSnapshot();
 	}
 
-	/** Same payload as {@link #statusAction}, without the req-bound capPark side effect — reused by the periodic status WebSocket broadcast. */
+	/** Same payload as {@link #statusAction}, without the req-bound capPark side effect. */
 	public Map<String,Object> buildStatusSnapshot() {
-		Map<String,Object> res = new LinkedHashMap<>();
+		return buildStatusSnapshot( null );
+	}
+
+	/** Only the given topics (null = all of them) — the periodic status WebSocket broadcast asks
+	 *  for whatever its clients are subscribed to (see StatusSnapshot). Subclasses add their own
+	 *  keys by overriding this one. */
+	public StatusSnapshot buildStatusSnapshot( Set<String> topics ) {
+		StatusSnapshot res = new StatusSnapshot( topics );
 
 		// Always available, regardless of connection state — lets the UI tell "KStars
 		// process isn't running" apart from "KStars is running but Ekos isn't ready yet".
@@ -1556,13 +1846,56 @@ public abstract class KStarsCluster extends KStarsState {
 		// short while ekos is down. The UI gets a consistently full status either way and
 		// can still show last night's images/HFR/guide history after ekos has stopped —
 		// it only needs to check ekosReady itself to know everything else is stale.
+		if( res.wants( StatusSnapshot.DEVICES ) ) {
+			fillDeviceStatus( res );
+		}
+
+		fillStatus( res );
+
+		if( res.wants( StatusSnapshot.ALIGNMENT ) ) {
+			res.put( StatusSnapshot.ALIGNMENT, "alignment", fillAlignment( new HashMap<>(), lastAlignSolution.get() ) );
+
+			double[] fovValues = fov.get();
+			if( fovValues != null ) {
+				Map<String,Object> fovMap = new LinkedHashMap<>();
+				fovMap.put( "widthArcmin", fovValues[0] );
+				fovMap.put( "heightArcmin", fovValues[1] );
+				res.put( StatusSnapshot.ALIGNMENT, "fov", fovMap );
+			}
+		}
+
+		// Folded into the status push instead of separate polling loops for the HFR chart
+		// and image strip — one WebSocket, not three independently-polled REST endpoints.
+		history.fillStatus( res );
+
+		if( res.wants( StatusSnapshot.SCHEDULER ) ) {
+			List<SchedulerJobSummary> jobs = new ArrayList<>();
+			for( SchedulerJob job : allSchedulerJobs.get() ) {
+				jobs.add( sequenceContents.summarize( job ) );
+			}
+			res.put( StatusSnapshot.SCHEDULER, "jobs", jobs );
+			res.put( StatusSnapshot.SCHEDULER, "sequenceQueue", sequenceQueueStatus );
+		}
+
+		double[] coords = mountCoords.get();
+		if( coords != null && res.wants( StatusSnapshot.MOUNT ) ) {
+			Map<String,Object> mountCoordsMap = new LinkedHashMap<>();
+			mountCoordsMap.put( "ra", coords[0] );
+			mountCoordsMap.put( "dec", coords[1] );
+			res.put( StatusSnapshot.MOUNT, "mountCoords", mountCoordsMap );
+		}
+
+		return res;
+	}
+
+	private void fillDeviceStatus( StatusSnapshot res ) {
 		for( IndiFilterWheel filterDevice : filterDevices.values() ) {
 			Map<String,Object> device = new LinkedHashMap<>();
 			List<String> filters = filterDevice.getFilters() ;
 			device.put( "filters", filters );
 			device.put( "currentFilter", filters.get( filterDevice.getFilterSlot() - 1 ) );
 
-			res.put( filterDevice.deviceName, device );
+			res.put( StatusSnapshot.DEVICES, filterDevice.deviceName, device );
 		}
 
 
@@ -1574,7 +1907,7 @@ public abstract class KStarsCluster extends KStarsState {
 			camera.put( "antiDewHeaterOn", cameraDevice.isAntiDewHeaterOn() );
 			camera.put( "isCooling", cameraDevice.isCooling() );
 
-			res.put( cameraDevice.deviceName, camera );
+			res.put( StatusSnapshot.DEVICES, cameraDevice.deviceName, camera );
 		}
 
 		for( IndiCap capDevice : capDevices.values() ) {
@@ -1583,7 +1916,7 @@ public abstract class KStarsCluster extends KStarsState {
 			cap.put( "name", capDevice.deviceName );
 			cap.put( "parked", capDevice.isParked() );
 
-			res.put( capDevice.deviceName, cap );
+			res.put( StatusSnapshot.DEVICES, capDevice.deviceName, cap );
 		}
 
 		// A physical flat panel (e.g. Gemini Flat-Wizard) is often ONE INDI device exposing
@@ -1591,39 +1924,14 @@ public abstract class KStarsCluster extends KStarsState {
 		// overwriting it when the device name collides with one from the cap loop above.
 		for( IndiLightBox lightBox : lightBoxDevices.values() ) {
 			@SuppressWarnings("unchecked")
-			Map<String,Object> device = (Map<String,Object>) res.computeIfAbsent( lightBox.deviceName, n -> new LinkedHashMap<>() );
+			Map<String,Object> device = (Map<String,Object>) res.get( lightBox.deviceName );
+			if( device == null ) {
+				device = new LinkedHashMap<>();
+				res.put( StatusSnapshot.DEVICES, lightBox.deviceName, device );
+			}
 			device.put( "name", lightBox.deviceName );
 			device.put( "lightOn", lightBox.isLightOn() );
 		}
-
-		fillStatus( res );
-
-		res.put( "alignment", fillAlignment( new HashMap<>(), lastAlignSolution.get() ) );
-		res.put( "jobs", allSchedulerJobs.get() );
-
-		// Folded into the status push instead of separate polling loops for the HFR chart
-		// and image strip — one WebSocket, not three independently-polled REST endpoints.
-		history.fillStatus( res );
-
-		res.put( "sequenceQueue", sequenceQueueStatus );
-
-		double[] coords = mountCoords.get();
-		if( coords != null ) {
-			Map<String,Object> mountCoordsMap = new LinkedHashMap<>();
-			mountCoordsMap.put( "ra", coords[0] );
-			mountCoordsMap.put( "dec", coords[1] );
-			res.put( "mountCoords", mountCoordsMap );
-		}
-
-		double[] fovValues = fov.get();
-		if( fovValues != null ) {
-			Map<String,Object> fovMap = new LinkedHashMap<>();
-			fovMap.put( "widthArcmin", fovValues[0] );
-			fovMap.put( "heightArcmin", fovValues[1] );
-			res.put( "fov", fovMap );
-		}
-
-		return res;
 	}
 
 
@@ -2018,31 +2326,13 @@ public abstract class KStarsCluster extends KStarsState {
         }
     }
 
+	/** Asked every second by the status broadcast (plus tryStartKStars/the monitor loop) — see
+	 *  ProcessTracker for why this reads /proc instead of forking ps each time. */
+	private final ProcessTracker kstarsProcess = new ProcessTracker( "kstars" );
+
 	public int getKStarsRuntime() {
 		try {
-			Process runtime = Runtime.getRuntime().exec( new String[]{ "ps", "-C", "kstars", "-o", "etimes="} );
-				
-			InputStream in = runtime.getInputStream();
-
-			runtime.waitFor();
-			ByteArrayOutputStream out = new ByteArrayOutputStream();
-
-			byte[] buf = new byte[4096];
-			int len = 0;
-			while( (len = in.read(buf)) > 0 ) {
-				out.write(buf, 0, len);
-			}
-			
-			in.close();
-			out.close();
-
-			var seconds = out.toString().trim().split("\n")[0].trim();
-			if( seconds.isBlank() ) {
-				return -1;
-			}
-			else {
-				return Integer.parseInt(seconds);
-			}
+			return kstarsProcess.getRuntime();
 		}
 		catch( Throwable t ) {
 			logError( "Failed to get KStars pid", t );
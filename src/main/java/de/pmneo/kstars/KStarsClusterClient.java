@@ -6,6 +6,7 @@ import java.net.Socket;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -579,8 +580,8 @@ public class KStarsClusterClient extends KStarsCluster {
 
 
     @Override
-    public Map<String,Object> buildStatusSnapshot() {
-        Map<String,Object> res = super.buildStatusSnapshot();
+    public StatusSnapshot buildStatusSnapshot( Set<String> topics ) {
+        StatusSnapshot res = super.buildStatusSnapshot( topics );
 
         Map<String,Object> serverInfo = server.fillStatus( new HashMap<>() );
         serverInfo.put( "alignment", fillAlignment(new HashMap<>(), serverSolutionResult.get() ) );
@@ -7,6 +7,7 @@ import java.net.Socket;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -115,7 +116,7 @@ public class KStarsClusterServer extends KStarsCluster {
                 payload.put( "fov", null );
             }
 
-            String json = new GsonBuilder().create().toJson( payload );
+            String json = StatusJson.GSON.toJson( payload );
 
             var res = client.newRequest( publicStatusUrl )
                 .method( HttpMethod.POST )
@@ -652,8 +653,8 @@ public class KStarsClusterServer extends KStarsCluster {
 
 
     @Override
-    public Map<String,Object> buildStatusSnapshot() {
-        Map<String,Object> res = super.buildStatusSnapshot();
+    public StatusSnapshot buildStatusSnapshot( Set<String> topics ) {
+        StatusSnapshot res = super.buildStatusSnapshot( topics );
         res.put( "roofStatus", roofStatus.get() );
         return res;
     }
@@ -34,6 +34,14 @@ public class KStarsState extends WithLogging {
 
     public KStarsState( String logPrefix ) {
         super( logPrefix );
+        history.setChangeListener( this::statusDirty );
+    }
+
+    /** Called whenever one of the handle* methods below (or a SessionHistory record*) changed
+     *  something the status snapshot shows, with the StatusSnapshot topic it belongs to — the
+     *  status push is event-driven off this (see KStarsCluster.statusDirty), so Ekos state
+     *  changes reach the web UI right away instead of on the next periodic tick. */
+    protected void statusDirty( String topic ) {
     }
 
     public void resetValues() {
@@ -50,6 +58,7 @@ public class KStarsState extends WithLogging {
             ekosStatus.set( state );
         }
         logMessage( "handleEkosStatus(" + state + ")" );
+        statusDirty( StatusSnapshot.CORE );
         return ekosStatus.get( );
     }
 
@@ -101,6 +110,7 @@ public class KStarsState extends WithLogging {
                 break;
         }
 
+        statusDirty( StatusSnapshot.CORE );
         return state;
     }
     
@@ -130,6 +140,7 @@ public class KStarsState extends WithLogging {
                 break;
         }
 
+        statusDirty( StatusSnapshot.CORE );
         return state;
     }
 
@@ -152,6 +163,7 @@ public class KStarsState extends WithLogging {
         logMessage( "handleAlignStatus(" + state + ")" );
         state = alignStatus.get();
         history.recordTimelineEvent( "align", state.name() );
+        statusDirty( StatusSnapshot.CORE );
         return state;
     }
 
@@ -190,6 +202,7 @@ public class KStarsState extends WithLogging {
             break;
         }
         
+        statusDirty( StatusSnapshot.CORE );
         return state;
     }
 
@@ -280,11 +293,14 @@ public class KStarsState extends WithLogging {
                 break;				
         }
 
+        statusDirty( StatusSnapshot.CORE );
         return state;
     }
 
 
     public final AtomicReference<SchedulerJob> schedulerActiveJob = new AtomicReference<SchedulerJob>( null );
+    /** Sequence XML of the scheduler jobs — the status only carries its hash, see SchedulerJobSummary. */
+    public final SequenceContentCache sequenceContents = new SequenceContentCache();
 
     /** True only while the scheduler actually EXECUTES a job — false while it merely waits for a job's startup time. */
     public boolean isSchedulerJobExecuting() {
@@ -318,6 +334,7 @@ public class KStarsState extends WithLogging {
             break;
         }
 
+        statusDirty( StatusSnapshot.CORE );
         return state;
     }
     
@@ -328,6 +345,7 @@ public class KStarsState extends WithLogging {
             weatherState.set( state );
         }
         logMessage( "handleSchedulerWeatherStatus(" + state + ")" );
+        statusDirty( StatusSnapshot.CORE );
         return weatherState.get();
     }
 
@@ -355,7 +373,7 @@ public class KStarsState extends WithLogging {
         res.put( "focusState", this.focusState );
         res.put( "guideStatus", this.guideStatus.get() );
 
-        res.put( "activeJob", this.schedulerActiveJob.get() );
+        res.put( "activeJob", sequenceContents.summarize( this.schedulerActiveJob.get() ) );
 
         return res;
 	}
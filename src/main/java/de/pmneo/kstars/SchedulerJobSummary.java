@@ -0,0 +1,62 @@
+package de.pmneo.kstars;
+
+import org.kde.kstars.ekos.SchedulerJob;
+
+/**
+ * What the status stream says about a scheduler job: every field of SchedulerJob except
+ * sequenceContent, the job's entire .esq XML. That used to ride along in "activeJob" and "jobs"
+ * on every status push to every browser (and through the broadcaster's change detection), so the
+ * payload grew with the size of the capture sequences even though the UI never shows them.
+ *
+ * Instead the summary carries sequenceHash — a content hash the UI can fetch the XML with from
+ * /cmd/sequenceContent/&lt;name&gt;/&lt;hash&gt; when it actually wants it (see
+ * SequenceContentCache). null while the job's sequence hasn't been loaded yet; the endpoint then
+ * still serves it by name alone.
+ *
+ * Field names and order are SchedulerJob's, so the web UI's SchedulerJob type still fits.
+ */
+public class SchedulerJobSummary {
+
+    public final double altitude;
+    public final int completedCount;
+    public final String completionTime;
+    public final boolean inSequenceFocus;
+    public final double minAltitude;
+    public final double minMoonSeparation;
+    public final String name;
+    public final double pa;
+    public final int repeatsRemaining;
+    public final int repeatsRequired;
+    public final String sequence;
+    public final int sequenceCount;
+    public final int stage;
+    public final String startupTime;
+    public final int state;
+    public final double targetDEC;
+    public final double targetRA;
+    public final double fRatio;
+
+    public final String sequenceHash;
+
+    public SchedulerJobSummary( SchedulerJob job, String sequenceHash ) {
+        this.altitude = job.altitude;
+        this.completedCount = job.completedCount;
+        this.completionTime = job.completionTime;
+        this.inSequenceFocus = job.inSequenceFocus;
+        this.minAltitude = job.minAltitude;
+        this.minMoonSeparation = job.minMoonSeparation;
+        this.name = job.name;
+        this.pa = job.pa;
+        this.repeatsRemaining = job.repeatsRemaining;
+        this.repeatsRequired = job.repeatsRequired;
+        this.sequence = job.sequence;
+        this.sequenceCount = job.sequenceCount;
+        this.stage = job.stage;
+        this.startupTime = job.startupTime;
+        this.state = job.state;
+        this.targetDEC = job.targetDEC;
+        this.targetRA = job.targetRA;
+        this.fRatio = job.fRatio;
+        this.sequenceHash = sequenceHash;
+    }
+}
@@ -0,0 +1,93 @@
+package de.pmneo.kstars;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.kde.kstars.ekos.SchedulerJob;
+
+/**
+ * The scheduler jobs' sequence XML, by job name, with a content hash — what the status stream
+ * references (SchedulerJobSummary.sequenceHash) instead of shipping the XML itself, and what
+ * /cmd/sequenceContent serves.
+ *
+ * Hashing happens once per distinct content: a job's sequenceContent String is carried over
+ * unchanged for as long as the job runs (see KStarsCluster.updateSchedulerActiveJob), so the
+ * per-snapshot summarize() is an identity check, not a SHA-256 over the XML every second.
+ */
+public class SequenceContentCache {
+
+    private static class Entry {
+        final String content;
+        final String hash;
+
+        Entry( String content, String hash ) {
+            this.content = content;
+            this.hash = hash;
+        }
+    }
+
+    private final Map<String, Entry> byName = new ConcurrentHashMap<>();
+
+    /** The job's status projection — also records its sequence content (if loaded) for the endpoint. */
+    public SchedulerJobSummary summarize( SchedulerJob job ) {
+        if( job == null ) {
+            return null;
+        }
+        return new SchedulerJobSummary( job, remember( job.name, job.sequenceContent ) );
+    }
+
+    /** Records the content under the job name and returns its hash, null if there's no content. */
+    public String remember( String name, String content ) {
+        if( name == null || content == null ) {
+            return null;
+        }
+
+        Entry entry = byName.get( name );
+        if( entry == null || ( entry.content != content && !entry.content.equals( content ) ) ) {
+            entry = new Entry( content, hash( content ) );
+            byName.put( name, entry );
+        }
+        return entry.hash;
+    }
+
+    /**
+     * The job's sequence XML, or null if it isn't known. With a hash, only content matching it is
+     * returned (so a response for a given name+hash never changes and can be cached for good).
+     * Without one, an unknown job's sequence is loaded from its .esq on demand — the jobs list
+     * from D-Bus doesn't carry it, only the active job gets it loaded eagerly.
+     */
+    public String get( String name, String hash, Iterable<SchedulerJob> jobs ) throws IOException {
+        Entry entry = byName.get( name );
+        if( entry == null && hash == null ) {
+            for( SchedulerJob job : jobs ) {
+                if( name.equals( job.name ) && job.sequence != null ) {
+                    String content = job.sequenceContent != null ? job.sequenceContent : job.loadSequenceContent();
+                    remember( name, content );
+                    entry = byName.get( name );
+                    break;
+                }
+            }
+        }
+
+        if( entry == null || ( hash != null && !hash.equals( entry.hash ) ) ) {
+            return null;
+        }
+        return entry.content;
+    }
+
+    /** First 64 bits of SHA-256 — plenty to tell a handful of sequence revisions apart. */
+    private static String hash( String content ) {
+        try {
+            byte[] digest = MessageDigest.getInstance( "SHA-256" ).digest( content.getBytes( StandardCharsets.UTF_8 ) );
+            return HexFormat.of().formatHex( digest, 0, 8 );
+        }
+        catch( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException( "SHA-256 not available", e );
+        }
+    }
+}
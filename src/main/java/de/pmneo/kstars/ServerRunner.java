@@ -81,6 +81,14 @@ public class ServerRunner {
 	@Argument(alias = "pss", required = false )
 	public static String publicStatusSecret = "";
 
+	// SessionHistory's on-disk archive (see HistoryStore) — empty keeps history in memory only.
+	@Argument(alias = "hs", required = false )
+	public static String historyStore = "~/.local/share/kstarscluster/history";
+
+	// Disk budget of the rendered thumbnail cache (./thumb-cache), least recently used first out.
+	@Argument(alias = "tc", required = false )
+	public static int thumbnailCacheMb = 512;
+
 	public static void main(String[] args) throws Exception {
 		Args.parseOrExit(ServerRunner.class, args);
 
@@ -105,6 +113,8 @@ public class ServerRunner {
 		cluster.setRequiredRotators(requiredRotators);
 		cluster.setRequiredCaps(requiredCaps);
 		cluster.setRequiredLightBoxes(requiredLightBoxes);
+		cluster.setHistoryStore(historyStore);
+		cluster.setThumbnailCacheMb(thumbnailCacheMb);
 		cluster.start();
 
 		startServer( cluster );
@@ -161,7 +171,8 @@ public class ServerRunner {
         contextHandler.addServlet(HipsProxyServlet.class, "/hips/*");
         contextHandler.addServlet(AstrobinProxyServlet.class, "/astrobin/*");
         contextHandler.addServlet(AllskyProxyServlet.class, "/allsky/*");
-        contextHandler.addServlet(ImageServlet.class, "/images/*");
+        // renders on the cluster's own image executor, completing the response asynchronously
+        contextHandler.addServlet(ImageServlet.class, "/images/*").setAsyncSupported(true);
         contextHandler.addServlet(ObservatoryServlet.class, "/observatory/*");
         contextHandler.addServlet(DefaultServlet.class, "/");
 
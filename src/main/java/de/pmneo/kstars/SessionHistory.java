@@ -3,17 +3,23 @@ package de.pmneo.kstars;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.ToDoubleFunction;
 
+import de.pmneo.kstars.utils.CaptureFileIndex;
+import de.pmneo.kstars.utils.Downsampler;
 import de.pmneo.kstars.utils.EkosAnalyzeLog;
+import de.pmneo.kstars.utils.HistoryStore;
+import de.pmneo.kstars.utils.RingBufferSeries;
 
 /**
  * Everything about what happened this session and where the resulting files ended up: captured
@@ -21,31 +27,108 @@ import de.pmneo.kstars.utils.EkosAnalyzeLog;
  * history from Ekos' own Analyze log on startup (our ring buffers are in-memory only, so a
  * restart would otherwise show a blank UI even though KStars/Ekos kept running throughout), and
  * resolving a recorded filename to wherever it actually lives on disk today (some external
- * process renames capture files after the fact — see resolveRenamedCapture). Deliberately
+ * process renames capture files after the fact — see CaptureFileIndex). Deliberately
  * standalone (no dependency on KStarsCluster/KStarsState's live D-Bus device-status handling) —
  * callers just record events as they happen and read the history back for the status broadcast.
  */
 public class SessionHistory {
 
+    /** Told the StatusSnapshot topic of every recorded change — see KStarsState.statusDirty. */
+    private volatile Consumer<String> changeListener = topic -> {};
+
+    public void setChangeListener( Consumer<String> changeListener ) {
+        this.changeListener = changeListener;
+    }
+
+    private void changed( String topic ) {
+        changeListener.accept( topic );
+    }
+
+    /** Where every guide/HFR/capture record is written through to, for good — null (the
+     *  default) keeps history purely in memory. See HistoryStore. */
+    private volatile HistoryStore store;
+
+    public void setStore( HistoryStore store ) {
+        this.store = store;
+    }
+
+    public HistoryStore getStore() {
+        return store;
+    }
+
+    private interface StoreWrite {
+        void write( HistoryStore store ) throws IOException;
+    }
+
+    /** A failing disk must never cost the in-memory record (or the signal handler calling it). */
+    private void writeThrough( String what, StoreWrite write ) {
+        HistoryStore s = store;
+        if( s == null ) {
+            return;
+        }
+        try {
+            write.write( s );
+        }
+        catch( Throwable t ) {
+            SimpleLogger.getLogger().logError( "Failed to store " + what + " in the history store", t );
+        }
+    }
+
     /** Recent HFR samples per train, newest last — feeds the web UI's HFR graph. */
     public static class HfrSample {
+        /** Per-train sequence number (see AppendOnlySeries) — -1 for a sample that hasn't been recorded yet (e.g. fresh out of the analyze log parser). */
+        public final long seq;
         public final long ts;
         public final double hfr;
         public final int position;
 
         public HfrSample( long ts, double hfr, int position ) {
+            this( -1, ts, hfr, position );
+        }
+
+        public HfrSample( long seq, long ts, double hfr, int position ) {
+            this.seq = seq;
             this.ts = ts;
             this.hfr = hfr;
             this.position = position;
         }
     }
 
+    /** hfrHistory's storage: ts/hfr/position columns, an HfrSample only gets built when read. */
+    public static class HfrSeries extends RingBufferSeries<HfrSample> {
+        private final double[] hfr;
+        private final int[] position;
+
+        public HfrSeries( int capacity ) {
+            super( capacity );
+            this.hfr = new double[ capacity ];
+            this.position = new int[ capacity ];
+        }
+
+        public long append( long timestamp, double hfr, int position ) {
+            long stamp = beginAppend();
+            int slot = appendSlot();
+            this.hfr[ slot ] = hfr;
+            this.position[ slot ] = position;
+            return commitAppend( stamp, timestamp );
+        }
+
+        @Override
+        protected HfrSample read( int slot, long seq ) {
+            return new HfrSample( seq, ts[ slot ], hfr[ slot ], position[ slot ] );
+        }
+
+        public Downsampler.Series hfr( long fromTs, long toTs ) {
+            return slice( fromTs, toTs, slot -> hfr[ slot ] );
+        }
+    }
+
     // Bumped from 300 — a full night's worth of autofocus runs (dozens of runs, ~10 points each)
     // easily exceeds that, truncating the session timeline's Focus lane to only the last few
-    // hours. HfrSample is a handful of primitives (~24 bytes); even this cap is a trivial amount
-    // of memory.
+    // hours. Stored column-wise (20 bytes per sample, preallocated once per train), so even this
+    // cap is a trivial amount of memory.
     private static final int HFR_HISTORY_CAP = 2000;
-    public final ConcurrentHashMap<String, Deque<HfrSample>> hfrHistory = new ConcurrentHashMap<>();
+    public final ConcurrentHashMap<String, HfrSeries> hfrHistory = new ConcurrentHashMap<>();
 
     public void recordHfr( String train, double hfr, int position ) {
         recordHfr( train, System.currentTimeMillis(), hfr, position );
@@ -54,32 +137,71 @@ public class SessionHistory {
     /** ts-taking overload — lets the startup analyze-log replay backfill history with the
      *  original recorded times instead of "now". */
     public void recordHfr( String train, long ts, double hfr, int position ) {
-        Deque<HfrSample> history = hfrHistory.computeIfAbsent( train, t -> new ConcurrentLinkedDeque<>() );
-        history.addLast( new HfrSample( ts, hfr, position ) );
-        while( history.size() > HFR_HISTORY_CAP ) {
-            history.pollFirst();
-        }
+        hfrHistory.computeIfAbsent( train, t -> new HfrSeries( HFR_HISTORY_CAP ) ).append( ts, hfr, position );
+        writeThrough( "HFR sample", s -> s.appendHfr( ts, train, hfr, position ) );
+        changed( StatusSnapshot.HFR );
     }
 
     /** One Guide.newAxisDelta signal per guide frame — RA/DEC guiding error, in arcsec. */
     public static class GuideDeltaSample {
+        /** See HfrSample.seq. */
+        public final long seq;
         public final long ts;
         public final double ra;
         public final double de;
 
         public GuideDeltaSample( long ts, double ra, double de ) {
+            this( -1, ts, ra, de );
+        }
+
+        public GuideDeltaSample( long seq, long ts, double ra, double de ) {
+            this.seq = seq;
             this.ts = ts;
             this.ra = ra;
             this.de = de;
         }
     }
 
+    /** guideDeltaHistory's storage: ts/ra/de columns, a GuideDeltaSample only gets built when read. */
+    public static class GuideDeltaSeries extends RingBufferSeries<GuideDeltaSample> {
+        private final double[] ra;
+        private final double[] de;
+
+        public GuideDeltaSeries( int capacity ) {
+            super( capacity );
+            this.ra = new double[ capacity ];
+            this.de = new double[ capacity ];
+        }
+
+        public long append( long timestamp, double ra, double de ) {
+            long stamp = beginAppend();
+            int slot = appendSlot();
+            this.ra[ slot ] = ra;
+            this.de[ slot ] = de;
+            return commitAppend( stamp, timestamp );
+        }
+
+        @Override
+        protected GuideDeltaSample read( int slot, long seq ) {
+            return new GuideDeltaSample( seq, ts[ slot ], ra[ slot ], de[ slot ] );
+        }
+
+        public Downsampler.Series ra( long fromTs, long toTs ) {
+            return slice( fromTs, toTs, slot -> ra[ slot ] );
+        }
+
+        public Downsampler.Series de( long fromTs, long toTs ) {
+            return slice( fromTs, toTs, slot -> de[ slot ] );
+        }
+    }
+
     // Bumped from 300 — guiding samples land every few seconds while active, so a single night
     // easily produces thousands (one real analyze log had 5544). 300 only ever showed the last
-    // few minutes. GuideDeltaSample is ~24 bytes; even 20000 of them is under 500KB.
+    // few minutes. Three primitive columns at 24 bytes per sample — 20000 of them is under 500KB,
+    // allocated once up front instead of an object plus deque node per guide frame.
     private static final int GUIDE_HISTORY_CAP = 20_000;
     /** Guiding is one mount/one guide camera — unlike HFR/capture, never per-train. */
-    public final Deque<GuideDeltaSample> guideDeltaHistory = new ConcurrentLinkedDeque<>();
+    public final GuideDeltaSeries guideDeltaHistory = new GuideDeltaSeries( GUIDE_HISTORY_CAP );
     public final AtomicReference<double[]> guideSigma = new AtomicReference<>();
 
     public void recordGuideDelta( double ra, double de ) {
@@ -88,14 +210,149 @@ public class SessionHistory {
 
     /** ts-taking overload — see recordHfr(train, ts, hfr, position). */
     public void recordGuideDelta( long ts, double ra, double de ) {
-        guideDeltaHistory.addLast( new GuideDeltaSample( ts, ra, de ) );
-        while( guideDeltaHistory.size() > GUIDE_HISTORY_CAP ) {
-            guideDeltaHistory.pollFirst();
-        }
+        guideDeltaHistory.append( ts, ra, de );
+        writeThrough( "guide sample", s -> s.appendGuide( ts, ra, de ) );
+        changed( StatusSnapshot.GUIDE );
     }
 
     public void recordGuideSigma( double ra, double de ) {
         guideSigma.set( new double[]{ ra, de } );
+        changed( StatusSnapshot.GUIDE );
+    }
+
+    /** One Temperature row of the Ekos analyze log — the focuser's temperature probe, in °C.
+     *  Not something any D-Bus signal we subscribe to carries; only AnalyzeLogFollower records it. */
+    public static class TemperatureSample {
+        public final long seq;
+        public final long ts;
+        public final double temperature;
+
+        public TemperatureSample( long ts, double temperature ) {
+            this( -1, ts, temperature );
+        }
+
+        public TemperatureSample( long seq, long ts, double temperature ) {
+            this.seq = seq;
+            this.ts = ts;
+            this.temperature = temperature;
+        }
+    }
+
+    public static class TemperatureSeries extends RingBufferSeries<TemperatureSample> {
+        private final double[] temperature;
+
+        public TemperatureSeries( int capacity ) {
+            super( capacity );
+            this.temperature = new double[ capacity ];
+        }
+
+        public long append( long timestamp, double temperature ) {
+            long stamp = beginAppend();
+            int slot = appendSlot();
+            this.temperature[ slot ] = temperature;
+            return commitAppend( stamp, timestamp );
+        }
+
+        @Override
+        protected TemperatureSample read( int slot, long seq ) {
+            return new TemperatureSample( seq, ts[ slot ], temperature[ slot ] );
+        }
+
+        public Downsampler.Series temperature( long fromTs, long toTs ) {
+            return slice( fromTs, toTs, slot -> temperature[ slot ] );
+        }
+    }
+
+    /** One MountCoords row of the Ekos analyze log — RA/DEC/AZ/ALT in degrees. Our own
+     *  mountCoords status only ever holds the latest position; this is the track over the night. */
+    public static class MountCoordsSample {
+        public final long seq;
+        public final long ts;
+        public final double ra;
+        public final double dec;
+        public final double az;
+        public final double alt;
+
+        public MountCoordsSample( long ts, double ra, double dec, double az, double alt ) {
+            this( -1, ts, ra, dec, az, alt );
+        }
+
+        public MountCoordsSample( long seq, long ts, double ra, double dec, double az, double alt ) {
+            this.seq = seq;
+            this.ts = ts;
+            this.ra = ra;
+            this.dec = dec;
+            this.az = az;
+            this.alt = alt;
+        }
+    }
+
+    public static class MountCoordsSeries extends RingBufferSeries<MountCoordsSample> {
+        private final double[] ra;
+        private final double[] dec;
+        private final double[] az;
+        private final double[] alt;
+
+        public MountCoordsSeries( int capacity ) {
+            super( capacity );
+            this.ra = new double[ capacity ];
+            this.dec = new double[ capacity ];
+            this.az = new double[ capacity ];
+            this.alt = new double[ capacity ];
+        }
+
+        public long append( long timestamp, double ra, double dec, double az, double alt ) {
+            long stamp = beginAppend();
+            int slot = appendSlot();
+            this.ra[ slot ] = ra;
+            this.dec[ slot ] = dec;
+            this.az[ slot ] = az;
+            this.alt[ slot ] = alt;
+            return commitAppend( stamp, timestamp );
+        }
+
+        @Override
+        protected MountCoordsSample read( int slot, long seq ) {
+            return new MountCoordsSample( seq, ts[ slot ], ra[ slot ], dec[ slot ], az[ slot ], alt[ slot ] );
+        }
+
+        /** "ra", "dec", "az" or "alt" — null for anything else. */
+        public Downsampler.Series axis( String axis, long fromTs, long toTs ) {
+            double[] column = switch( axis ) {
+                case "ra" -> ra;
+                case "dec" -> dec;
+                case "az" -> az;
+                case "alt" -> alt;
+                default -> null;
+            };
+            return column == null ? null : slice( fromTs, toTs, slot -> column[ slot ] );
+        }
+    }
+
+    // Ekos logs both every few seconds while connected; same sizing rationale as the guide history.
+    private static final int TEMPERATURE_CAP = 5000;
+    private static final int MOUNT_COORDS_CAP = 20_000;
+    public final TemperatureSeries temperatureHistory = new TemperatureSeries( TEMPERATURE_CAP );
+    public final MountCoordsSeries mountCoordsHistory = new MountCoordsSeries( MOUNT_COORDS_CAP );
+
+    public void recordTemperature( long ts, double temperature ) {
+        temperatureHistory.append( ts, temperature );
+    }
+
+    public void recordMountCoords( long ts, double ra, double dec, double az, double alt ) {
+        mountCoordsHistory.append( ts, ra, dec, az, alt );
+    }
+
+    /** Lines AnalyzeLogFollower read off the live analyze log. Only takes the row types no D-Bus
+     *  signal delivers — everything else in there already arrived live (or through
+     *  restoreFromAnalyzeLog at startup), recording it again would just duplicate it. */
+    public void recordFromAnalyzeLog( EkosAnalyzeLog.ParsedHistory appended ) {
+        for( TemperatureSample s : appended.temperatures ) {
+            recordTemperature( s.ts, s.temperature );
+        }
+        for( MountCoordsSample s : appended.mountCoords ) {
+            recordMountCoords( s.ts, s.ra, s.dec, s.az, s.alt );
+        }
     }
 
     /** One entry per state change on a "lane" (guide/mount/align/scheduler) — the web UI's
@@ -103,21 +360,78 @@ public class SessionHistory {
      *  same-lane events, so this only needs a row when something actually changed, not a sample
      *  every tick. */
     public static class TimelineEvent {
+        /** See HfrSample.seq. */
+        public final long seq;
         public final long ts;
         public final String lane;
         public final String label;
 
         public TimelineEvent( long ts, String lane, String label ) {
+            this( -1, ts, lane, label );
+        }
+
+        public TimelineEvent( long seq, long ts, String lane, String label ) {
+            this.seq = seq;
             this.ts = ts;
             this.lane = lane;
             this.label = label;
         }
     }
 
+    /** timelineEvents' storage. Lanes and labels come from a small, fixed-ish vocabulary (a
+     *  handful of lanes, each with a handful of Ekos states), so they're stored as int indexes
+     *  into a per-series string dictionary rather than a reference per event. The dictionary
+     *  only ever grows (under the append lock) and is republished copy-on-write, so a reader
+     *  never sees an index its copy doesn't cover. */
+    public static class TimelineSeries extends RingBufferSeries<TimelineEvent> {
+        private final int[] lane;
+        private final int[] label;
+
+        private final Map<String,Integer> dictIndex = new ConcurrentHashMap<>();
+        private volatile String[] dict = new String[ 0 ];
+
+        public TimelineSeries( int capacity ) {
+            super( capacity );
+            this.lane = new int[ capacity ];
+            this.label = new int[ capacity ];
+        }
+
+        public long append( long timestamp, String lane, String label ) {
+            long stamp = beginAppend();
+            int slot = appendSlot();
+            this.lane[ slot ] = intern( lane );
+            this.label[ slot ] = intern( label );
+            return commitAppend( stamp, timestamp );
+        }
+
+        /** Only called under the append lock. */
+        private int intern( String value ) {
+            Integer idx = dictIndex.get( value );
+            if( idx == null ) {
+                String[] grown = Arrays.copyOf( dict, dict.length + 1 );
+                idx = grown.length - 1;
+                grown[ idx ] = value;
+                dict = grown;
+                dictIndex.put( value, idx );
+            }
+            return idx;
+        }
+
+        @Override
+        protected TimelineEvent read( int slot, long seq ) {
+            String[] d = dict;
+            int ln = lane[ slot ];
+            int lb = label[ slot ];
+            //a torn optimistic read may see a slot being overwritten — range() discards that result anyway
+            return new TimelineEvent( seq, ts[ slot ], ln < d.length ? d[ ln ] : null, lb < d.length ? d[ lb ] : null );
+        }
+    }
+
     // Bumped from 1000 for the same reason as the other history caps below — one full night
-    // across guide/mount/align/scheduler state changes can add up, and TimelineEvent is cheap.
+    // across guide/mount/align/scheduler state changes can add up, and a TimelineSeries slot is
+    // just 16 bytes.
     private static final int TIMELINE_CAP = 5000;
-    public final Deque<TimelineEvent> timelineEvents = new ConcurrentLinkedDeque<>();
+    public final TimelineSeries timelineEvents = new TimelineSeries( TIMELINE_CAP );
     /** Last recorded label per lane — recordTimelineEvent no-ops on a repeat of the same label
      *  (some Ekos status signals refire with an unchanged value) so the timeline doesn't fill up
      *  with zero-duration segments. */
@@ -135,10 +449,8 @@ public class SessionHistory {
             return;
         }
 
-        timelineEvents.addLast( new TimelineEvent( ts, lane, label ) );
-        while( timelineEvents.size() > TIMELINE_CAP ) {
-            timelineEvents.pollFirst();
-        }
+        timelineEvents.append( ts, lane, label );
+        changed( StatusSnapshot.TIMELINE );
     }
 
     /**
@@ -222,6 +534,9 @@ public class SessionHistory {
     // memory.
     private static final int CAPTURED_IMAGES_CAP = 2000;
     public final ConcurrentHashMap<String, Deque<CapturedImage>> capturedImages = new ConcurrentHashMap<>();
+    /** Where each recorded image's file lives now — kept current by a directory watch, so
+     *  neither the status broadcast nor a thumbnail request has to touch the filesystem. */
+    private final CaptureFileIndex captureFiles = new CaptureFileIndex( () -> changed( StatusSnapshot.IMAGES ) );
 
     public void recordCapturedImage( String train, Map<String,Object> metadata ) {
         recordCapturedImage( train, System.currentTimeMillis(), metadata );
@@ -230,21 +545,29 @@ public class SessionHistory {
     /** ts-taking overload — see recordHfr(train, ts, hfr, position). */
     public void recordCapturedImage( String train, long ts, Map<String,Object> metadata ) {
         Deque<CapturedImage> history = capturedImages.computeIfAbsent( train, t -> new ConcurrentLinkedDeque<>() );
-        history.addLast( new CapturedImage( ts, metadata ) );
+        CapturedImage img = new CapturedImage( ts, metadata );
+        captureFiles.register( img.filename );
+        history.addLast( img );
         while( history.size() > CAPTURED_IMAGES_CAP ) {
-            history.pollFirst();
+            CapturedImage evicted = history.pollFirst();
+            if( evicted != null ) {
+                captureFiles.unregister( evicted.filename );
+            }
         }
+        writeThrough( "capture", s -> s.appendCapture( ts, train, img.filename, img.target, img.filter, img.exposure,
+            img.hfr, img.eccentricity, img.median, img.snr, img.starCount, img.width, img.height, img.type ) );
+        changed( StatusSnapshot.IMAGES );
     }
 
     /** Recent captures for one train, newest first — sourced from Capture.captureComplete, not
-     *  filesystem scanning. Skips any entry whose file is gone for good (see
-     *  {@link #resolveRenamedCapture}) — no point showing a preview that 404s. */
+     *  filesystem scanning. Skips any entry whose file is gone (see {@link CaptureFileIndex}) —
+     *  no point showing a preview that 404s. */
     public List<Map<String,Object>> listRecentImages( String train ) {
         Deque<CapturedImage> history = capturedImages.getOrDefault( train, new ConcurrentLinkedDeque<>() );
 
         List<Map<String,Object>> res = new ArrayList<>();
         for( CapturedImage img : history ) {
-            if( resolveRenamedCapture( img.filename ) == null ) {
+            if( captureFiles.lookup( img.filename ) == null ) {
                 continue;
             }
 
@@ -267,61 +590,51 @@ public class SessionHistory {
         return res;
     }
 
+    /** The CapturedImage fields the history query can chart, see captureMetric(). */
+    public static final List<String> CAPTURE_METRICS = List.of( "hfr", "eccentricity", "median", "snr", "starCount" );
+
+    /** One metric of a train's captures with fromTs &lt;= ts &lt; toTs, for the history query's
+     *  downsampling — null for a metric not in CAPTURE_METRICS. */
+    public Downsampler.Series captureMetric( String train, String metric, long fromTs, long toTs ) {
+        ToDoubleFunction<CapturedImage> value = switch( metric ) {
+            case "hfr" -> img -> img.hfr;
+            case "eccentricity" -> img -> img.eccentricity;
+            case "median" -> img -> img.median;
+            case "snr" -> img -> img.snr;
+            case "starCount" -> img -> img.starCount;
+            default -> null;
+        };
+        if( value == null ) {
+            return null;
+        }
+
+        CapturedImage[] images = capturedImages.getOrDefault( train, new ConcurrentLinkedDeque<>() ).toArray( new CapturedImage[0] );
+        long[] t = new long[ images.length ];
+        double[] v = new double[ images.length ];
+        int size = 0;
+        for( CapturedImage img : images ) {
+            if( img.ts >= fromTs && img.ts < toTs ) {
+                t[ size ] = img.ts;
+                v[ size ] = value.applyAsDouble( img );
+                size++;
+            }
+        }
+
+        long retainedFrom = images.length > 0 ? images[0].ts : Long.MAX_VALUE;
+        long retainedTo = images.length > 0 ? images[ images.length - 1 ].ts : Long.MIN_VALUE;
+        return new Downsampler.Series( t, v, size, retainedFrom, retainedTo );
+    }
+
     /**
      * Refuses to render anything that wasn't actually reported by a captureComplete signal —
      * the "file" query param on ImageServlet's thumb/autostretch actions is client-supplied, so
      * this is the only thing standing between it and an arbitrary local file read. The identity
      * check is always against the original recorded filename (img.filename), matching what
-     * listRecentImages() hands the client; resolveRenamedCapture then finds wherever that file
+     * listRecentImages() hands the client; the capture index then knows wherever that file
      * actually lives now.
      */
     public File resolveKnownCapturedFile( String filename ) {
-        for( Deque<CapturedImage> history : capturedImages.values() ) {
-            for( CapturedImage img : history ) {
-                if( filename.equals( img.filename ) ) {
-                    return resolveRenamedCapture( img.filename );
-                }
-            }
-        }
-        return null;
-    }
-
-    /** Some external process renames capture files after the fact, tagging them with the imaging
-     *  train and rotator angle they were captured at — e.g.
-     *  ".../NGC_1333_Light_L_180_secs__005.fits" becomes "..._005_T-ED100B2_ROT_160.0.fits"
-     *  (confirmed against real files on disk: renamed and still-plain files coexist in the same
-     *  folder, so this evidently runs as a periodic batch job, not immediately after capture).
-     *  Without this, every renamed file would silently 404 forever — captureComplete/the analyze
-     *  log only ever recorded the original name.
-     *
-     *  Only the not-found fallback (a directory listing) is cached, keyed by the original
-     *  filename: the exact-path case is a cheap stat, freshly re-checked every call, so a file
-     *  that's still plain today keeps resolving correctly right up until it actually gets
-     *  renamed. Once that happens the answer is stable forever (files don't get un-renamed),
-     *  which is what makes caching *that* case safe — otherwise every second's status broadcast
-     *  would re-list the directory for every renamed-away image, forever. */
-    private final Map<String, Optional<File>> renamedCaptureCache = new ConcurrentHashMap<>();
-
-    private File resolveRenamedCapture( String originalFilename ) {
-        File original = new File( originalFilename );
-        if( original.isFile() ) {
-            return original;
-        }
-
-        return renamedCaptureCache.computeIfAbsent( originalFilename, f -> {
-            File dir = original.getParentFile();
-            if( dir == null ) {
-                return Optional.empty();
-            }
-
-            String name = original.getName();
-            int dot = name.lastIndexOf( '.' );
-            String stem = dot >= 0 ? name.substring( 0, dot ) : name;
-            String ext = dot >= 0 ? name.substring( dot ) : "";
-
-            File[] renamed = dir.listFiles( ( d, n ) -> n.startsWith( stem + "_T-" ) && n.endsWith( ext ) );
-            return renamed != null && renamed.length > 0 ? Optional.of( renamed[0] ) : Optional.empty();
-        } ).orElse( null );
+        return captureFiles.lookup( filename );
     }
 
     /** Summary of what got replayed, for the caller to log — kept separate from actually logging
@@ -336,10 +649,12 @@ public class SessionHistory {
      * restart.
      */
     public RestoreSummary restoreFromAnalyzeLog( File analyzeDir ) throws IOException {
-        // Same caps as the ring buffers these feed (50 images, 300 HFR/guide samples) — the
-        // most recent file alone is often a short guiding-only test with zero captures, so
-        // this walks backward through up to 10 files merging history until met.
-        EkosAnalyzeLog.ParsedHistory parsed = EkosAnalyzeLog.parseRecent( analyzeDir, 50, 300, 300, 10 );
+        // As much as the buffers these feed can hold — images and HFR are capped per train, so
+        // with several trains each gets its share of those totals. The most recent file alone is
+        // often a short guiding-only test with zero captures, so this walks backward through up
+        // to 10 files merging history until met.
+        EkosAnalyzeLog.ParsedHistory parsed = EkosAnalyzeLog.parseRecent( analyzeDir,
+            CAPTURED_IMAGES_CAP, HFR_HISTORY_CAP, GUIDE_HISTORY_CAP, TIMELINE_CAP, 10 );
 
         // Recent KStars versions tag CaptureComplete/AutofocusComplete rows with the train
         // they belong to; older rows (and thus older log files) come back keyed under
@@ -374,25 +689,39 @@ public class SessionHistory {
     }
 
     /** Folded into the status push instead of separate polling loops for the HFR chart and image
-     *  strip — one WebSocket, not several independently-polled REST endpoints. */
-    public Map<String, Object> fillStatus( Map<String, Object> res ) {
-        res.put( "hfrHistory", hfrHistory );
+     *  strip — one WebSocket, not several independently-polled REST endpoints. The three history
+     *  series go in as-is (AppendOnlySeries), so StatusBroadcaster can stream them as appends to
+     *  delta clients while still serializing them as plain arrays for everyone else. Each one only
+     *  if some client is subscribed to its topic (see StatusSnapshot). */
+    public StatusSnapshot fillStatus( StatusSnapshot res ) {
+        if( res.wants( StatusSnapshot.HFR ) ) {
+            res.put( StatusSnapshot.HFR, "hfrHistory", hfrHistory );
+        }
 
-        Map<String, List<Map<String,Object>>> images = new LinkedHashMap<>();
-        for( String train : capturedImages.keySet() ) {
-            images.put( train, listRecentImages( train ) );
+        if( res.wants( StatusSnapshot.IMAGES ) ) {
+            Map<String, List<Map<String,Object>>> images = new LinkedHashMap<>();
+            for( String train : capturedImages.keySet() ) {
+                if( res.wantsImages( train ) ) {
+                    images.put( train, listRecentImages( train ) );
+                }
+            }
+            res.put( StatusSnapshot.IMAGES, "images", images );
         }
-        res.put( "images", images );
 
-        res.put( "guideDeltaHistory", guideDeltaHistory );
-        res.put( "timelineEvents", timelineEvents );
+        if( res.wants( StatusSnapshot.GUIDE ) ) {
+            res.put( StatusSnapshot.GUIDE, "guideDeltaHistory", guideDeltaHistory );
+
+            double[] sigma = guideSigma.get();
+            if( sigma != null ) {
+                Map<String,Object> guideSigmaMap = new LinkedHashMap<>();
+                guideSigmaMap.put( "ra", sigma[0] );
+                guideSigmaMap.put( "de", sigma[1] );
+                res.put( StatusSnapshot.GUIDE, "guideSigma", guideSigmaMap );
+            }
+        }
 
-        double[] sigma = guideSigma.get();
-        if( sigma != null ) {
-            Map<String,Object> guideSigmaMap = new LinkedHashMap<>();
-            guideSigmaMap.put( "ra", sigma[0] );
-            guideSigmaMap.put( "de", sigma[1] );
-            res.put( "guideSigma", guideSigmaMap );
+        if( res.wants( StatusSnapshot.TIMELINE ) ) {
+            res.put( StatusSnapshot.TIMELINE, "timelineEvents", timelineEvents );
         }
 
         return res;
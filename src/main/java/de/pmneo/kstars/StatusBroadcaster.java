@@ -1,8 +1,39 @@
 package de.pmneo.kstars;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-/** Pub/sub for the web UI's live status WebSocket — mirrors {@link SimpleLogger}'s listener pattern. */
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import de.pmneo.kstars.utils.AppendOnlySeries;
+
+/**
+ * Pub/sub for the web UI's live status WebSocket — mirrors {@link SimpleLogger}'s listener pattern.
+ *
+ * Every publish is diffed against the previous one per top-level snapshot key (each key is
+ * serialized on its own) and tagged with a monotonically increasing revision. Listeners get the
+ * whole {@link StatusUpdate} and pick what to send: a legacy client still gets the full snapshot
+ * string every time, a delta client only gets the keys that actually changed since the revision
+ * it last saw — one new guide sample no longer re-sends every other history to every open tab.
+ *
+ * History series ({@link AppendOnlySeries}, or a map of them per train) aren't diffed by value at
+ * all: only their sequence cursors are remembered, and a delta client gets just the samples
+ * appended since the previous revision, plus where the ring buffer's head currently is.
+ *
+ * Every key also carries its topic (see {@link StatusSnapshot}); a listener that subscribed to
+ * only some topics gets messages containing only those topics' keys, and the publisher asks
+ * {@link #subscribedTopics()} so it doesn't compute topics nobody listens to in the first place.
+ */
 public class StatusBroadcaster {
 
     private static final StatusBroadcaster instance = new StatusBroadcaster();
@@ -12,38 +43,448 @@ public class StatusBroadcaster {
     }
 
     public static interface StatusListener {
-        public void statusChanged( String json );
+        public void statusChanged( StatusUpdate update );
+
+        /** Topic subscriptions as sent by the client (e.g. "images:Primary"), null for everything. */
+        public default Set<String> topics() {
+            return null;
+        }
     }
 
-    private final LinkedList<StatusListener> listeners = new LinkedList<>();
-    private String lastPayload = null;
+    /** Where a series stood at publish time — the samples themselves are only read when a message is actually built. */
+    private static class SeriesCursor {
+        final AppendOnlySeries<?> series;
+        final long firstSeq;
+        final long nextSeq;
 
-    public void addListener( StatusListener l ) {
-        synchronized( listeners ) {
-            if( listeners.contains( l ) ) {
-                return;
+        SeriesCursor( AppendOnlySeries<?> series ) {
+            this.series = series;
+            this.nextSeq = series.nextSeq();
+            this.firstSeq = Math.min( series.firstSeq(), nextSeq );
+        }
+
+        boolean sameAs( SeriesCursor other ) {
+            return other.firstSeq == firstSeq && other.nextSeq == nextSeq;
+        }
+
+        String json() {
+            return GSON.toJson( series.range( firstSeq, nextSeq ) );
+        }
+
+        /** {"from":F,"dropBefore":D,"samples":[...]} — the client keeps what it has with D &lt;= seq &lt; F, then appends the samples. */
+        String appendJson( long fromSeq ) {
+            long from = fromSeq < firstSeq || fromSeq > nextSeq ? firstSeq : fromSeq;
+            return "{\"from\":" + from + ",\"dropBefore\":" + firstSeq + ",\"samples\":" + GSON.toJson( series.range( from, nextSeq ) ) + "}";
+        }
+    }
+
+    /**
+     * One published revision. Holds the complete state at that revision (so a client that fell
+     * behind can always be resynced from whatever is current) plus what changed relative to the
+     * previous revision. Both wire formats are built lazily and at most once per revision — every
+     * listener on the same protocol shares the same string.
+     */
+    public static class StatusUpdate {
+        public final long rev;
+        public final long baseRev;
+
+        /** key -> serialized json value (String), SeriesCursor or a per-train Map of SeriesCursor, in snapshot order */
+        private final Map<String,Object> sections;
+        private final Map<String,String> changed;
+        /** key -> append json (String), or a per-train Map of append json */
+        private final Map<String,Object> appended;
+        private final List<String> removed;
+        /** key -> topic, for every key in sections and removed */
+        private final Map<String,String> keyTopics;
+
+        /** Built messages per topic set (null key = every topic) — every listener with the same subscriptions shares the same string. */
+        private final Map<Set<String>,String> fullJson = new HashMap<>();
+        private final Map<Set<String>,String> fullMessage = new HashMap<>();
+        private final Map<Set<String>,Optional<String>> patchBody = new HashMap<>();
+
+        private StatusUpdate( long rev, long baseRev, Map<String,Object> sections, Map<String,String> changed, Map<String,Object> appended, List<String> removed, Map<String,String> keyTopics ) {
+            this.rev = rev;
+            this.baseRev = baseRev;
+            this.sections = sections;
+            this.changed = changed;
+            this.appended = appended;
+            this.removed = removed;
+            this.keyTopics = keyTopics;
+        }
+
+        private boolean subscribed( String key, Set<String> topics ) {
+            String topic = keyTopics.getOrDefault( key, StatusSnapshot.CORE );
+            return topics == null || StatusSnapshot.CORE.equals( topic ) || topics.contains( topic );
+        }
+
+        /** The plain snapshot object — exactly what the legacy (non-delta) protocol always sent. */
+        public String fullJson() {
+            return fullJson( null );
+        }
+
+        /** @param topics base topic names (see StatusSnapshot.baseTopic), null for everything */
+        public synchronized String fullJson( Set<String> topics ) {
+            return fullJson.computeIfAbsent( topics, t -> {
+                Map<String,String> values = new LinkedHashMap<>();
+                for( Map.Entry<String,Object> e : sections.entrySet() ) {
+                    if( subscribed( e.getKey(), t ) ) {
+                        values.put( e.getKey(), sectionJson( e.getValue() ) );
+                    }
+                }
+                return writeObject( new StringBuilder(), values ).toString();
+            } );
+        }
+
+        /** {"type":"full","rev":N,"status":{...}} — sent on connect, on resync, and whenever a delta client is behind. */
+        public synchronized String fullMessage( Set<String> topics ) {
+            return fullMessage.computeIfAbsent( topics, t -> "{\"type\":\"full\",\"rev\":" + rev + ",\"status\":" + fullJson( t ) + "}" );
+        }
+
+        /**
+         * {"type":"patch","rev":N,"base":B,"set":{...},"append":{...},"remove":[...]} — only valid
+         * for a client that is at base. That's usually baseRev, but a client that skipped the
+         * revisions that didn't touch any of its topics is still at whatever it was last sent, and
+         * this patch applies on top of that just the same. Null if nothing under these topics changed.
+         */
+        public String patchMessage( long base, Set<String> topics ) {
+            String body = patchBody( topics );
+            return body == null ? null : "{\"type\":\"patch\",\"rev\":" + rev + ",\"base\":" + base + "," + body + "}";
+        }
+
+        private synchronized String patchBody( Set<String> topics ) {
+            return patchBody.computeIfAbsent( topics, t -> {
+                Map<String,String> set = new LinkedHashMap<>();
+                changed.forEach( ( key, json ) -> {
+                    if( subscribed( key, t ) ) {
+                        set.put( key, json );
+                    }
+                } );
+
+                Map<String,String> appends = new LinkedHashMap<>();
+                appended.forEach( ( key, append ) -> {
+                    if( subscribed( key, t ) ) {
+                        appends.put( key, append instanceof Map
+                            ? writeObject( new StringBuilder(), stringMap( append ) ).toString()
+                            : (String) append );
+                    }
+                } );
+
+                List<String> remove = new ArrayList<>();
+                for( String key : removed ) {
+                    if( subscribed( key, t ) ) {
+                        remove.add( key );
+                    }
+                }
+
+                if( set.isEmpty() && appends.isEmpty() && remove.isEmpty() ) {
+                    return Optional.empty();
+                }
+
+                StringBuilder b = new StringBuilder( "\"set\":" );
+                writeObject( b, set );
+                b.append( ",\"append\":" );
+                writeObject( b, appends );
+                b.append( ",\"remove\":" ).append( GSON.toJson( remove ) );
+                return Optional.of( b.toString() );
+            } ).orElse( null );
+        }
+
+        /**
+         * A full envelope for a client that already holds some of the series — cursors is the
+         * {"key": nextSeq} / {"key": {"train": nextSeq}} map the client sent with its resync
+         * request. Series it has a cursor for are left out of "status" and sent as appends from
+         * that cursor instead; everything else is the same as {@link #fullMessage(Set)}. Built per
+         * request, never cached — every client's cursors are its own.
+         */
+        public String resyncMessage( JsonObject cursors, Set<String> topics ) {
+            Map<String,String> status = new LinkedHashMap<>();
+            Map<String,String> appends = new LinkedHashMap<>();
+
+            for( Map.Entry<String,Object> e : sections.entrySet() ) {
+                String key = e.getKey();
+                if( !subscribed( key, topics ) ) {
+                    continue;
+                }
+
+                Object section = e.getValue();
+                JsonElement cursor = cursors == null ? null : cursors.get( key );
+
+                if( section instanceof SeriesCursor && cursor != null && cursor.isJsonPrimitive() ) {
+                    appends.put( key, ((SeriesCursor) section).appendJson( cursor.getAsLong() ) );
+                }
+                else if( section instanceof Map && cursor != null && cursor.isJsonObject() ) {
+                    Map<String,String> perTrain = new LinkedHashMap<>();
+                    seriesGroup( section ).forEach( ( train, s ) -> {
+                        JsonElement c = cursor.getAsJsonObject().get( train );
+                        perTrain.put( train, s.appendJson( c != null && c.isJsonPrimitive() ? c.getAsLong() : -1 ) );
+                    } );
+                    appends.put( key, writeObject( new StringBuilder(), perTrain ).toString() );
+                }
+                else {
+                    status.put( key, sectionJson( section ) );
+                }
             }
-            listeners.add( l );
+
+            StringBuilder b = new StringBuilder();
+            b.append( "{\"type\":\"full\",\"rev\":" ).append( rev ).append( ",\"status\":" );
+            writeObject( b, status );
+            b.append( ",\"append\":" );
+            writeObject( b, appends );
+            return b.append( '}' ).toString();
+        }
+    }
+
+    private static final Gson GSON = StatusJson.GSON;
+
+    /** Every plain key is serialized into this one buffer — publish() is synchronized, so it's
+     *  never shared — and only copied out into a String if it actually changed. */
+    private final StringBuilder buffer = new StringBuilder( 64 * 1024 );
+    /** Hash of each plain key's json in the current revision. */
+    private Map<String,Long> hashes = new HashMap<>();
+
+    /** Copy-on-write: publish() walks it without a lock — each listener only drops the update into
+     *  its own mailbox (see OutboundMailbox), so one slow client can't hold up the others. */
+    private final CopyOnWriteArrayList<StatusListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile StatusUpdate current = null;
+    private long rev = 0;
+
+    /** Told whenever the set of listeners or their topics changed — lets the publisher compute a
+     *  newly subscribed topic right away instead of on its next periodic tick. */
+    private volatile Runnable subscriptionListener = () -> {};
+
+    public void setSubscriptionListener( Runnable subscriptionListener ) {
+        this.subscriptionListener = subscriptionListener;
+    }
+
+    /** For a listener whose topics() just changed. */
+    public void subscriptionsChanged() {
+        subscriptionListener.run();
+    }
+
+    public void addListener( StatusListener l ) {
+        if( !listeners.addIfAbsent( l ) ) {
+            return;
         }
+        subscriptionsChanged();
 
-        if( lastPayload != null ) {
-            l.statusChanged( lastPayload );
+        StatusUpdate update = current;
+        if( update != null ) {
+            l.statusChanged( update );
         }
     }
 
     public void removeListener( StatusListener l ) {
-        synchronized( listeners ) {
-            listeners.remove( l );
+        if( listeners.remove( l ) ) {
+            subscriptionsChanged();
         }
     }
 
-    public void broadcast( String json ) {
-        lastPayload = json;
+    /** Union of every listener's topics — null (everything) as soon as one listener wants
+     *  everything, just core (an empty set) while nobody is listening. */
+    public Set<String> subscribedTopics() {
+        Set<String> res = new HashSet<>();
+        for( StatusListener l : listeners ) {
+            Set<String> topics = l.topics();
+            if( topics == null ) {
+                return null;
+            }
+            res.addAll( topics );
+        }
+        return res;
+    }
+
+    /** The latest published revision, or null before the first publish — what a resync request gets answered with. */
+    public StatusUpdate current() {
+        return current;
+    }
+
+    /**
+     * Serializes every top-level key of the snapshot on its own and only notifies listeners if at
+     * least one of them differs from the previous publish — same "nothing changed, nothing sent"
+     * rule the single whole-snapshot string comparison used to implement. A key that is missing
+     * because its topic lost its last subscriber is a plain "remove", same as any other.
+     */
+    public void publish( Map<String,Object> snapshot ) {
+        publish( snapshot, Set.of() );
+    }
+
+    /**
+     * Same, for a snapshot that only computed some topics: the previous revision's keys of the
+     * carryOver topics are kept exactly as they were (so they're neither re-serialized nor
+     * removed), anything else missing from the snapshot is removed as usual.
+     */
+    public synchronized void publish( Map<String,Object> snapshot, Set<String> carryOver ) {
+        Map<String,Object> previous = current == null ? Collections.emptyMap() : current.sections;
+
+        Map<String,Object> sections = new LinkedHashMap<>();
+        Map<String,String> changed = new LinkedHashMap<>();
+        Map<String,Object> appended = new LinkedHashMap<>();
+        Map<String,String> keyTopics = new HashMap<>();
+        Map<String,Long> newHashes = new HashMap<>();
+
+        if( current != null && !carryOver.isEmpty() ) {
+            for( Map.Entry<String,Object> e : previous.entrySet() ) {
+                String topic = current.keyTopics.getOrDefault( e.getKey(), StatusSnapshot.CORE );
+                if( carryOver.contains( topic ) && !snapshot.containsKey( e.getKey() ) ) {
+                    sections.put( e.getKey(), e.getValue() );
+                    keyTopics.put( e.getKey(), topic );
+                    Long hash = hashes.get( e.getKey() );
+                    if( hash != null ) {
+                        newHashes.put( e.getKey(), hash );
+                    }
+                }
+            }
+        }
+
+        for( Map.Entry<String,Object> e : snapshot.entrySet() ) {
+            String key = e.getKey();
+            Object value = e.getValue();
+            Object prev = previous.get( key );
+
+            // Whole-snapshot serialization used to drop null-valued keys (Gson's default) —
+            // skipped here too, so the full json stays the same and the key becomes a "remove".
+            if( value == null ) {
+                continue;
+            }
+            if( snapshot instanceof StatusSnapshot ) {
+                keyTopics.put( key, ((StatusSnapshot) snapshot).topicOf( key ) );
+            }
+
+            if( value instanceof AppendOnlySeries ) {
+                SeriesCursor cursor = new SeriesCursor( (AppendOnlySeries<?>) value );
+                sections.put( key, cursor );
+
+                if( !(prev instanceof SeriesCursor) ) {
+                    changed.put( key, cursor.json() );
+                }
+                else if( !cursor.sameAs( (SeriesCursor) prev ) ) {
+                    appended.put( key, cursor.appendJson( ((SeriesCursor) prev).nextSeq ) );
+                }
+            }
+            else if( isSeriesGroup( value ) ) {
+                Map<String,SeriesCursor> group = new LinkedHashMap<>();
+                ((Map<?,?>) value).forEach( ( train, series ) -> group.put( String.valueOf( train ), new SeriesCursor( (AppendOnlySeries<?>) series ) ) );
+                sections.put( key, group );
+
+                // A train that went away (never happens in practice) can't be expressed as an
+                // append — just replace the whole map, same as the very first time it shows up.
+                Map<String,SeriesCursor> prevGroup = prev instanceof Map ? seriesGroup( prev ) : null;
+                if( prevGroup == null || !group.keySet().containsAll( prevGroup.keySet() ) ) {
+                    changed.put( key, sectionJson( group ) );
+                }
+                else {
+                    Map<String,String> perTrain = new LinkedHashMap<>();
+                    group.forEach( ( train, cursor ) -> {
+                        SeriesCursor p = prevGroup.get( train );
+                        if( p == null || !cursor.sameAs( p ) ) {
+                            perTrain.put( train, cursor.appendJson( p == null ? -1 : p.nextSeq ) );
+                        }
+                    } );
+                    if( !perTrain.isEmpty() ) {
+                        appended.put( key, perTrain );
+                    }
+                }
+            }
+            else {
+                // Unchanged (same hash and length as last time): keep the previous revision's very
+                // same String, nothing gets copied or compared char by char. A 64-bit collision
+                // on same-length output would have to happen between two consecutive values of
+                // the same key to go unnoticed.
+                buffer.setLength( 0 );
+                GSON.toJson( value, buffer );
+                long hash = hash( buffer );
+                newHashes.put( key, hash );
+
+                Long prevHash = hashes.get( key );
+                if( prev instanceof String && prevHash != null && prevHash == hash && ((String) prev).length() == buffer.length() ) {
+                    sections.put( key, prev );
+                }
+                else {
+                    String json = buffer.toString();
+                    sections.put( key, json );
+                    changed.put( key, json );
+                }
+            }
+        }
+
+        List<String> removed = new ArrayList<>();
+        for( String key : previous.keySet() ) {
+            if( !sections.containsKey( key ) ) {
+                removed.add( key );
+                keyTopics.put( key, current.keyTopics.getOrDefault( key, StatusSnapshot.CORE ) );
+            }
+        }
+
+        hashes = newHashes;
+
+        if( current != null && changed.isEmpty() && appended.isEmpty() && removed.isEmpty() ) {
+            return;
+        }
+
+        StatusUpdate update = new StatusUpdate( rev + 1, rev, sections, changed, appended, removed, keyTopics );
+        rev = update.rev;
+        current = update;
+
+        for( StatusListener l : listeners ) {
+            l.statusChanged( update );
+        }
+    }
+
+    /** 64-bit FNV-1a over the buffer's chars. */
+    private static long hash( CharSequence s ) {
+        long h = 0xcbf29ce484222325L;
+        for( int i = 0, n = s.length(); i < n; i++ ) {
+            h ^= s.charAt( i );
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** A per-train map of series (e.g. hfrHistory) — an empty map stays a plain "{}" section until its first train shows up. */
+    private static boolean isSeriesGroup( Object value ) {
+        if( !(value instanceof Map) || ((Map<?,?>) value).isEmpty() ) {
+            return false;
+        }
+        for( Object v : ((Map<?,?>) value).values() ) {
+            if( !(v instanceof AppendOnlySeries) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String sectionJson( Object section ) {
+        if( section instanceof SeriesCursor ) {
+            return ((SeriesCursor) section).json();
+        }
+        if( section instanceof Map ) {
+            Map<String,String> perTrain = new LinkedHashMap<>();
+            seriesGroup( section ).forEach( ( train, cursor ) -> perTrain.put( train, cursor.json() ) );
+            return writeObject( new StringBuilder(), perTrain ).toString();
+        }
+        return (String) section;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String,SeriesCursor> seriesGroup( Object section ) {
+        return (Map<String,SeriesCursor>) section;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String,String> stringMap( Object value ) {
+        return (Map<String,String>) value;
+    }
 
-        synchronized( listeners ) {
-            for( StatusListener l : listeners ) {
-                l.statusChanged( json );
+    private static StringBuilder writeObject( StringBuilder b, Map<String,String> values ) {
+        b.append( '{' );
+        boolean first = true;
+        for( Map.Entry<String,String> e : values.entrySet() ) {
+            if( !first ) {
+                b.append( ',' );
             }
+            first = false;
+            b.append( GSON.toJson( e.getKey() ) ).append( ':' ).append( e.getValue() );
         }
+        return b.append( '}' );
     }
 }
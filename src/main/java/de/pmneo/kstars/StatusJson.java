@@ -0,0 +1,106 @@
+package de.pmneo.kstars;
+
+import java.io.IOException;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import de.pmneo.kstars.SessionHistory.GuideDeltaSample;
+import de.pmneo.kstars.SessionHistory.HfrSample;
+import de.pmneo.kstars.SessionHistory.TimelineEvent;
+
+/**
+ * The Gson instances the status snapshot goes through — built once instead of a fresh
+ * GsonBuilder().create() per broadcast/request, with hand-written streaming adapters for the
+ * per-sample history types the snapshot is full of — tens of thousands of them at full caps.
+ * Reflective serialization of those meant a field lookup and a boxed value per field per sample;
+ * these write straight to the JsonWriter. Everything else (e.g. the scheduler jobs, a few dozen
+ * at most) stays reflective, so a field added there can't be forgotten in a hand-kept copy.
+ *
+ * The output is byte-for-byte what the reflective adapters produced (declaration order, nulls
+ * omitted), so nothing on the client side changes. Reading still goes through the reflective
+ * adapter.
+ */
+public class StatusJson {
+
+    /** How one type is written — reading is left to whatever adapter Gson would otherwise use. */
+    private interface Writer<T> {
+        void write( JsonWriter out, T value ) throws IOException;
+    }
+
+    /** Writes T by hand, reads it through the adapter next in line (Gson's reflective one), so
+     *  fromJson on these Gson instances still works for every type. */
+    private static <T> TypeAdapterFactory writer( Class<T> cls, Writer<T> writer ) {
+        return new TypeAdapterFactory() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <R> TypeAdapter<R> create( Gson gson, TypeToken<R> type ) {
+                if( type.getRawType() != cls ) {
+                    return null;
+                }
+
+                TypeAdapter<T> delegate = gson.getDelegateAdapter( this, TypeToken.get( cls ) );
+                return (TypeAdapter<R>) new TypeAdapter<T>() {
+                    @Override
+                    public void write( JsonWriter out, T value ) throws IOException {
+                        if( value == null ) {
+                            out.nullValue();
+                            return;
+                        }
+                        writer.write( out, value );
+                    }
+
+                    @Override
+                    public T read( JsonReader in ) throws IOException {
+                        return delegate.read( in );
+                    }
+                };
+            }
+        };
+    }
+
+    private static final TypeAdapterFactory HFR_SAMPLE = writer( HfrSample.class, ( out, s ) -> {
+        out.beginObject();
+        out.name( "seq" ).value( s.seq );
+        out.name( "ts" ).value( s.ts );
+        out.name( "hfr" ).value( s.hfr );
+        out.name( "position" ).value( s.position );
+        out.endObject();
+    } );
+
+    private static final TypeAdapterFactory GUIDE_DELTA_SAMPLE = writer( GuideDeltaSample.class, ( out, s ) -> {
+        out.beginObject();
+        out.name( "seq" ).value( s.seq );
+        out.name( "ts" ).value( s.ts );
+        out.name( "ra" ).value( s.ra );
+        out.name( "de" ).value( s.de );
+        out.endObject();
+    } );
+
+    private static final TypeAdapterFactory TIMELINE_EVENT = writer( TimelineEvent.class, ( out, e ) -> {
+        out.beginObject();
+        out.name( "seq" ).value( e.seq );
+        out.name( "ts" ).value( e.ts );
+        out.name( "lane" ).value( e.lane );
+        out.name( "label" ).value( e.label );
+        out.endObject();
+    } );
+
+    private static GsonBuilder builder() {
+        return new GsonBuilder()
+            .registerTypeAdapterFactory( HFR_SAMPLE )
+            .registerTypeAdapterFactory( GUIDE_DELTA_SAMPLE )
+            .registerTypeAdapterFactory( TIMELINE_EVENT );
+    }
+
+    /** What StatusBroadcaster serializes every snapshot key with. */
+    public static final Gson GSON = builder().create();
+
+    /** Same, pretty-printed — CommandServlet's responses (e.g. /cmd/status). */
+    public static final Gson PRETTY = builder().setPrettyPrinting().create();
+}
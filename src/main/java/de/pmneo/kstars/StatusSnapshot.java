@@ -0,0 +1,95 @@
+package de.pmneo.kstars;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The status payload (still just a Map to everyone serializing it — Gson writes it out like any
+ * other map) that additionally knows which topic each top-level key belongs to, and which topics
+ * were asked for in the first place.
+ *
+ * Topics are what a status WebSocket client subscribes to (see StatusSocket): a tab that only
+ * shows the image strip has no use for INDI device temperatures, and the Sky Map doesn't need
+ * twenty thousand guide samples. buildStatusSnapshot() only computes the topics at least one
+ * client is subscribed to, and StatusBroadcaster only sends each client its own topics' keys.
+ *
+ * "images" covers every train's image strip; "images:&lt;train&gt;" just that one train's. The
+ * "images" key is still one object keyed by train, so it carries every train some client asked
+ * for — a client subscribed to one train may see others too, it just never costs a train nobody
+ * asked for.
+ */
+public class StatusSnapshot extends LinkedHashMap<String,Object> {
+
+    /** Always sent, never needs a subscription: connection/process state, the KStarsState flags and whatever subclasses add with a plain put(). */
+    public static final String CORE = "core";
+    public static final String DEVICES = "devices";
+    public static final String SCHEDULER = "scheduler";
+    public static final String GUIDE = "guide";
+    public static final String HFR = "hfr";
+    public static final String IMAGES = "images";
+    public static final String TIMELINE = "timeline";
+    public static final String ALIGNMENT = "alignment";
+    public static final String MOUNT = "mount";
+
+    public static final Set<String> ALL_TOPICS = Set.of( CORE, DEVICES, SCHEDULER, GUIDE, HFR, IMAGES, TIMELINE, ALIGNMENT, MOUNT );
+
+    /** null = every topic, every train. */
+    private final Set<String> topics;
+    private final Set<String> imageTrains;
+    private final boolean allImageTrains;
+
+    private final Map<String,String> keyTopics = new LinkedHashMap<>();
+
+    /** A snapshot of everything — what /cmd/status and legacy (unsubscribed) clients get. */
+    public StatusSnapshot() {
+        this( null );
+    }
+
+    /** @param subscriptions topic names as clients send them ("images:Primary" included), null for everything */
+    public StatusSnapshot( Set<String> subscriptions ) {
+        if( subscriptions == null ) {
+            this.topics = null;
+            this.imageTrains = Set.of();
+            this.allImageTrains = true;
+        }
+        else {
+            this.topics = new HashSet<>();
+            this.imageTrains = new HashSet<>();
+            for( String s : subscriptions ) {
+                String topic = baseTopic( s );
+                topics.add( topic );
+                if( IMAGES.equals( topic ) && !topic.equals( s ) ) {
+                    imageTrains.add( s.substring( topic.length() + 1 ) );
+                }
+            }
+            this.allImageTrains = subscriptions.contains( IMAGES );
+        }
+    }
+
+    /** "images:Primary" -> "images" */
+    public static String baseTopic( String subscription ) {
+        int idx = subscription.indexOf( ':' );
+        return idx < 0 ? subscription : subscription.substring( 0, idx );
+    }
+
+    public boolean wants( String topic ) {
+        return CORE.equals( topic ) || topics == null || topics.contains( topic );
+    }
+
+    public boolean wantsImages( String train ) {
+        return allImageTrains || imageTrains.contains( train );
+    }
+
+    /** put() under a topic other than core. */
+    public Object put( String topic, String key, Object value ) {
+        keyTopics.put( key, topic );
+        return super.put( key, value );
+    }
+
+    /** Topic the key was put under — core for anything added with a plain put(). */
+    public String topicOf( String key ) {
+        return keyTopics.getOrDefault( key, CORE );
+    }
+}
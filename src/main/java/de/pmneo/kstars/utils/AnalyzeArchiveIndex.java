@@ -0,0 +1,382 @@
+package de.pmneo.kstars.utils;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import de.pmneo.kstars.SessionHistory.CapturedImage;
+import de.pmneo.kstars.SessionHistory.GuideDeltaSample;
+import de.pmneo.kstars.SessionHistory.HfrSample;
+import de.pmneo.kstars.SessionHistory.TimelineEvent;
+import de.pmneo.kstars.SimpleLogger;
+
+/**
+ * Per-night summaries of every Ekos analyze log on disk — not just the handful of newest files
+ * restoreFromAnalyzeLog() looks at. Each file is boiled down to a FileSummary (frames per
+ * target/filter, integration time, median HFR, guide RMS, focus runs, weather aborts) and the
+ * summaries are kept in a small JSON index next to our other data, keyed by file name and
+ * stamped with the file's mtime/size.
+ *
+ * refresh() only parses files whose mtime or size differ from what the index recorded (new
+ * files, and the one Ekos is still appending to); files that are gone are dropped. The files to
+ * parse are split across a fork-join pool, one file per leaf task — a first run over a few
+ * years of logs is a few hundred files of up to tens of MB each. Meant to be called from a
+ * background thread; the summaries being read meanwhile are the previous refresh's.
+ *
+ * Nights start at local noon, same as HistoryStore, so a session crossing midnight is one night
+ * and several files (Ekos restarts) in the same night add up.
+ */
+public class AnalyzeArchiveIndex {
+
+    private static final Gson GSON = new Gson();
+
+    /** Leaves a core for the live D-Bus/servlet threads — the whole point is to run in the background. */
+    private static final int PARALLELISM = Math.max( 1, Runtime.getRuntime().availableProcessors() - 1 );
+
+    /** Light frames counted per target and filter when the path doesn't tell. */
+    private static final String UNKNOWN = "unknown";
+
+    public static class FileSummary {
+        public String file;
+        public long mtime;
+        public long size;
+        /** Set instead of the numbers below if the file couldn't be parsed — it's not retried
+         *  until it changes. */
+        public String error;
+
+        public long start;
+        public long end;
+        public String night;
+
+        /** Light frames: target -&gt; filter -&gt; count */
+        public Map<String, Map<String, Integer>> frames = new TreeMap<>();
+        public int lightFrames;
+        public double integrationSeconds;
+
+        /** Over the light frames that reported one; 0 if none did. */
+        public double medianHfr;
+        public int hfrFrames;
+
+        public int guideSamples;
+        public double guideRmsRa;
+        public double guideRmsDe;
+        public double guideRmsTotal;
+
+        public int focusRuns;
+        public int jobEnds;
+        public int weatherAborts;
+    }
+
+    public static class NightSummary {
+        public String night;
+        public long start;
+        public long end;
+        public List<String> files = new ArrayList<>();
+        public Map<String, Map<String, Integer>> frames = new TreeMap<>();
+        public int lightFrames;
+        public double integrationSeconds;
+        /** The files' medians, weighted by their frame counts — the index doesn't keep every
+         *  frame's HFR, so across files this is an approximation. */
+        public double medianHfr;
+        public int guideSamples;
+        public double guideRmsRa;
+        public double guideRmsDe;
+        public double guideRmsTotal;
+        public int focusRuns;
+        public int jobEnds;
+        public int weatherAborts;
+    }
+
+    private final File analyzeDir;
+    private final File indexFile;
+
+    private final Map<String, FileSummary> summaries = new ConcurrentHashMap<>();
+
+    public AnalyzeArchiveIndex( File analyzeDir, File indexFile ) {
+        this.analyzeDir = analyzeDir;
+        this.indexFile = indexFile;
+
+        if( indexFile.isFile() ) {
+            try( Reader r = new FileReader( indexFile ) ) {
+                List<FileSummary> loaded = GSON.fromJson( r, new TypeToken<List<FileSummary>>(){}.getType() );
+                if( loaded != null ) {
+                    for( FileSummary s : loaded ) {
+                        summaries.put( s.file, s );
+                    }
+                }
+            }
+            catch( Throwable t ) {
+                //start over — worst case every file gets parsed once more
+                summaries.clear();
+            }
+        }
+    }
+
+    /** Re-indexes new and changed files, forgets deleted ones. Returns the number of files parsed. */
+    public synchronized int refresh() throws IOException {
+        File[] files = analyzeDir.listFiles( ( d, n ) -> n.endsWith( ".analyze" ) );
+        if( files == null ) {
+            files = new File[0];
+        }
+
+        List<File> stale = new ArrayList<>();
+        for( File f : files ) {
+            FileSummary known = summaries.get( f.getName() );
+            if( known == null || known.mtime != f.lastModified() || known.size != f.length() ) {
+                stale.add( f );
+            }
+        }
+
+        Set<String> present = Arrays.stream( files ).map( File::getName ).collect( Collectors.toSet() );
+        boolean removed = summaries.keySet().removeIf( name -> !present.contains( name ) );
+
+        if( stale.isEmpty() ) {
+            if( removed ) {
+                save();
+            }
+            return 0;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool( PARALLELISM );
+        try {
+            for( FileSummary s : pool.invoke( new IndexTask( stale, 0, stale.size() ) ) ) {
+                summaries.put( s.file, s );
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        save();
+        return stale.size();
+    }
+
+    /** Halves the file list until each task holds a single file. */
+    private static class IndexTask extends RecursiveTask<List<FileSummary>> {
+        private final List<File> files;
+        private final int from;
+        private final int to;
+
+        IndexTask( List<File> files, int from, int to ) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<FileSummary> compute() {
+            if( to - from == 1 ) {
+                List<FileSummary> res = new ArrayList<>( 1 );
+                res.add( summarize( files.get( from ) ) );
+                return res;
+            }
+
+            int mid = ( from + to ) >>> 1;
+            IndexTask left = new IndexTask( files, from, mid );
+            left.fork();
+            List<FileSummary> res = new IndexTask( files, mid, to ).compute();
+            res.addAll( left.join() );
+            return res;
+        }
+    }
+
+    /** mtime/size are taken before parsing — if Ekos appends meanwhile, the next refresh sees a
+     *  changed file again rather than believing the summary covers the new rows. */
+    static FileSummary summarize( File file ) {
+        FileSummary s = new FileSummary();
+        s.file = file.getName();
+        s.mtime = file.lastModified();
+        s.size = file.length();
+
+        EkosAnalyzeLog.ParsedHistory parsed;
+        try {
+            // no minimums to stop at — the whole file, through the same mapped parser as restore
+            parsed = EkosAnalyzeLog.parseTail( file, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE );
+        }
+        catch( Throwable t ) {
+            SimpleLogger.getLogger().logError( "Failed to index analyze log " + file, t );
+            s.error = String.valueOf( t.getMessage() );
+            return s;
+        }
+
+        s.start = parsed.startEpochMillis >= 0 ? parsed.startEpochMillis : s.mtime;
+        s.end = s.start;
+        s.night = HistoryStore.nightOf( s.start ).toString();
+
+        List<Double> hfrs = new ArrayList<>();
+        for( List<CapturedImage> images : parsed.images.values() ) {
+            for( CapturedImage img : images ) {
+                s.end = Math.max( s.end, img.ts );
+                if( img.type != 0 ) {
+                    continue;
+                }
+                String target = img.target != null ? img.target : UNKNOWN;
+                String filter = img.filter != null && !img.filter.isBlank() ? img.filter : UNKNOWN;
+                s.frames.computeIfAbsent( target, t -> new TreeMap<>() ).merge( filter, 1, Integer::sum );
+                s.lightFrames++;
+                s.integrationSeconds += img.exposure;
+                if( img.hfr > 0 ) {
+                    hfrs.add( img.hfr );
+                }
+            }
+        }
+        Collections.sort( hfrs );
+        s.hfrFrames = hfrs.size();
+        s.medianHfr = median( hfrs );
+
+        double sumRa = 0;
+        double sumDe = 0;
+        for( GuideDeltaSample g : parsed.guideSamples ) {
+            sumRa += g.ra * g.ra;
+            sumDe += g.de * g.de;
+            s.end = Math.max( s.end, g.ts );
+        }
+        s.guideSamples = parsed.guideSamples.size();
+        if( s.guideSamples > 0 ) {
+            s.guideRmsRa = Math.sqrt( sumRa / s.guideSamples );
+            s.guideRmsDe = Math.sqrt( sumDe / s.guideSamples );
+            s.guideRmsTotal = Math.sqrt( ( sumRa + sumDe ) / s.guideSamples );
+        }
+
+        // one AutofocusComplete row per run, all of its samples share the row's timestamp
+        for( List<HfrSample> samples : parsed.hfrSamples.values() ) {
+            s.focusRuns += (int) samples.stream().mapToLong( h -> h.ts ).distinct().count();
+        }
+
+        for( TimelineEvent e : parsed.timelineEvents ) {
+            s.end = Math.max( s.end, e.ts );
+        }
+        for( TimelineEvent e : parsed.jobEnds ) {
+            s.jobEnds++;
+            String reason = e.label.toLowerCase();
+            // KStars writes the reason localized, like the state rows (see ALIGN_STATE_LABELS)
+            if( reason.contains( "weather" ) || reason.contains( "wetter" ) ) {
+                s.weatherAborts++;
+            }
+        }
+        return s;
+    }
+
+    private static double median( List<Double> sorted ) {
+        int n = sorted.size();
+        if( n == 0 ) {
+            return 0;
+        }
+        return n % 2 == 1 ? sorted.get( n / 2 ) : ( sorted.get( n / 2 - 1 ) + sorted.get( n / 2 ) ) / 2;
+    }
+
+    /** Every indexed night, newest first. */
+    public List<NightSummary> nights() {
+        Map<String, List<FileSummary>> byNight = new TreeMap<>( Comparator.reverseOrder() );
+        for( FileSummary s : summaries.values() ) {
+            if( s.error == null ) {
+                byNight.computeIfAbsent( s.night, n -> new ArrayList<>() ).add( s );
+            }
+        }
+
+        List<NightSummary> res = new ArrayList<>( byNight.size() );
+        byNight.forEach( ( night, files ) -> res.add( merge( night, files ) ) );
+        return res;
+    }
+
+    /** One night's summary plus the files it was built from, null if nothing's indexed for it. */
+    public Map<String, Object> night( String night ) {
+        List<FileSummary> files = summaries.values().stream()
+            .filter( s -> s.error == null && night.equals( s.night ) )
+            .sorted( Comparator.comparingLong( s -> s.start ) )
+            .collect( Collectors.toList() );
+        if( files.isEmpty() ) {
+            return null;
+        }
+
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put( "summary", merge( night, files ) );
+        res.put( "files", files );
+        return res;
+    }
+
+    private static NightSummary merge( String night, List<FileSummary> files ) {
+        files.sort( Comparator.comparingLong( s -> s.start ) );
+
+        NightSummary n = new NightSummary();
+        n.night = night;
+        n.start = Long.MAX_VALUE;
+        n.end = Long.MIN_VALUE;
+
+        double sqRa = 0;
+        double sqDe = 0;
+        for( FileSummary s : files ) {
+            n.files.add( s.file );
+            n.start = Math.min( n.start, s.start );
+            n.end = Math.max( n.end, s.end );
+            s.frames.forEach( ( target, filters ) -> filters.forEach( ( filter, count ) ->
+                n.frames.computeIfAbsent( target, t -> new TreeMap<>() ).merge( filter, count, Integer::sum ) ) );
+            n.lightFrames += s.lightFrames;
+            n.integrationSeconds += s.integrationSeconds;
+            n.focusRuns += s.focusRuns;
+            n.jobEnds += s.jobEnds;
+            n.weatherAborts += s.weatherAborts;
+
+            // RMS combines exactly through the sums of squares
+            n.guideSamples += s.guideSamples;
+            sqRa += s.guideRmsRa * s.guideRmsRa * s.guideSamples;
+            sqDe += s.guideRmsDe * s.guideRmsDe * s.guideSamples;
+        }
+        if( n.guideSamples > 0 ) {
+            n.guideRmsRa = Math.sqrt( sqRa / n.guideSamples );
+            n.guideRmsDe = Math.sqrt( sqDe / n.guideSamples );
+            n.guideRmsTotal = Math.sqrt( ( sqRa + sqDe ) / n.guideSamples );
+        }
+
+        List<FileSummary> withHfr = files.stream()
+            .filter( s -> s.hfrFrames > 0 )
+            .sorted( Comparator.comparingDouble( s -> s.medianHfr ) )
+            .collect( Collectors.toList() );
+        int total = withHfr.stream().mapToInt( s -> s.hfrFrames ).sum();
+        int seen = 0;
+        for( FileSummary s : withHfr ) {
+            seen += s.hfrFrames;
+            if( seen * 2 >= total ) {
+                n.medianHfr = s.medianHfr;
+                break;
+            }
+        }
+        return n;
+    }
+
+    private void save() throws IOException {
+        File parent = indexFile.getAbsoluteFile().getParentFile();
+        if( parent != null ) {
+            Files.createDirectories( parent.toPath() );
+        }
+        List<FileSummary> all = new ArrayList<>( summaries.values() );
+        all.sort( Comparator.comparing( s -> s.file ) );
+
+        File tmp = new File( indexFile.getPath() + ".tmp" );
+        try( Writer w = new FileWriter( tmp ) ) {
+            GSON.toJson( all, w );
+        }
+        Files.move( tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+}
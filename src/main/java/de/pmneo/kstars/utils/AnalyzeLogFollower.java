@@ -0,0 +1,141 @@
+package de.pmneo.kstars.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Keeps reading the Ekos analyze log after startup. restoreFromAnalyzeLog() replays it once;
+ * Ekos keeps appending to the current session's file all night though, and some of what it
+ * writes there — the focuser's Temperature, the MountCoords track — isn't carried by any D-Bus
+ * signal we subscribe to at all.
+ *
+ * Every poll() is a cheap size check of the newest .analyze file (plus any older one that's still
+ * behind its checkpoint); only the bytes appended since the last poll get read, and only up to the
+ * last complete line. The byte offset reached per file is checkpointed to disk, so a restart
+ * resumes where it left off instead of re-reading whole files — a file without a checkpoint is
+ * read from the start once, in chunks of at most MAX_BYTES_PER_POLL.
+ *
+ * Only feeds the row types the D-Bus handlers don't already see (see
+ * SessionHistory.recordFromAnalyzeLog) — captures, autofocus, guiding and state changes arrive
+ * live, and at startup via the replay.
+ */
+public class AnalyzeLogFollower {
+
+    private static final int MAX_BYTES_PER_POLL = 4 * 1024 * 1024;
+
+    private final File analyzeDir;
+    private final File checkpointFile;
+    private final Consumer<EkosAnalyzeLog.ParsedHistory> sink;
+
+    /** file name -&gt; byte offset of the first line not yet read */
+    private final Properties checkpoints = new Properties();
+
+    public AnalyzeLogFollower( File analyzeDir, File checkpointFile, Consumer<EkosAnalyzeLog.ParsedHistory> sink ) {
+        this.analyzeDir = analyzeDir;
+        this.checkpointFile = checkpointFile;
+        this.sink = sink;
+
+        if( checkpointFile.isFile() ) {
+            try( InputStream in = new FileInputStream( checkpointFile ) ) {
+                checkpoints.load( in );
+            }
+            catch( IOException e ) {
+                //start over — worst case each file gets read once more
+                checkpoints.clear();
+            }
+        }
+    }
+
+    /** Reads whatever got appended since the last call. Returns the number of bytes consumed. */
+    public synchronized long poll() throws IOException {
+        File[] files = analyzeDir.listFiles( ( d, n ) -> n.endsWith( ".analyze" ) );
+        if( files == null || files.length == 0 ) {
+            return 0;
+        }
+        Arrays.sort( files, Comparator.comparingLong( File::lastModified ) );
+
+        long consumed = 0;
+        for( int i = 0; i < files.length; i++ ) {
+            boolean newest = i == files.length - 1;
+            // older files only if we're already following them — a file never checkpointed
+            // before this follower existed is the startup replay's business
+            if( newest || checkpoints.containsKey( files[i].getName() ) ) {
+                consumed += follow( files[i] );
+            }
+        }
+
+        if( consumed > 0 ) {
+            prune( files );
+            save();
+        }
+        return consumed;
+    }
+
+    private long follow( File file ) throws IOException {
+        long size = file.length();
+        long offset = Long.parseLong( checkpoints.getProperty( file.getName(), "0" ) );
+        if( size < offset ) {
+            // truncated or replaced under the same name
+            offset = 0;
+        }
+        if( size == offset ) {
+            return 0;
+        }
+
+        byte[] chunk = new byte[ (int) Math.min( size - offset, MAX_BYTES_PER_POLL ) ];
+        try( RandomAccessFile raf = new RandomAccessFile( file, "r" ) ) {
+            raf.seek( offset );
+            raf.readFully( chunk );
+        }
+
+        // a line Ekos is still in the middle of writing waits for the next poll
+        int end = chunk.length;
+        while( end > 0 && chunk[ end - 1 ] != '\n' ) {
+            end--;
+        }
+        if( end == 0 ) {
+            return 0;
+        }
+
+        EkosAnalyzeLog.LineParser parser = new EkosAnalyzeLog.LineParser();
+        if( offset > 0 ) {
+            EkosAnalyzeLog.readStartTime( file, parser );
+        }
+        for( String line : new String( chunk, 0, end, StandardCharsets.UTF_8 ).split( "\n" ) ) {
+            parser.accept( line );
+        }
+
+        checkpoints.setProperty( file.getName(), Long.toString( offset + end ) );
+        sink.accept( parser.result );
+        return end;
+    }
+
+    /** Forget files that are gone (Ekos' own cleanup, or the user's). */
+    private void prune( File[] files ) {
+        checkpoints.keySet().removeIf( name -> Arrays.stream( files ).noneMatch( f -> f.getName().equals( name ) ) );
+    }
+
+    private void save() throws IOException {
+        File parent = checkpointFile.getAbsoluteFile().getParentFile();
+        if( parent != null ) {
+            Files.createDirectories( parent.toPath() );
+        }
+        File tmp = new File( checkpointFile.getPath() + ".tmp" );
+        try( OutputStream out = new FileOutputStream( tmp ) ) {
+            checkpoints.store( out, "Ekos analyze log byte offsets read so far" );
+        }
+        Files.move( tmp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+    }
+}
@@ -0,0 +1,27 @@
+package de.pmneo.kstars.utils;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A history series that only ever grows at the tail and drops at the head (a ring buffer) —
+ * every sample gets a sequence number from a per-series counter that never repeats, so a reader
+ * that remembers "I've seen everything before seq N" can ask for just what came after. Used by
+ * the status broadcast to stream the guide/HFR/timeline histories as appends instead of
+ * re-sending them whole every time one sample is added.
+ *
+ * Implementations are also a Collection of their currently retained samples (oldest first), so
+ * anything that just serializes them with Gson (the /cmd/status REST action, the legacy full
+ * snapshot) still gets a plain JSON array.
+ */
+public interface AppendOnlySeries<T> extends Collection<T> {
+
+    /** Sequence number of the oldest sample still retained (== nextSeq() while empty). */
+    long firstSeq();
+
+    /** Sequence number the next appended sample will get — i.e. how many were ever appended. */
+    long nextSeq();
+
+    /** Retained samples with fromSeq &lt;= seq &lt; toSeq, oldest first. */
+    List<T> range( long fromSeq, long toSeq );
+}
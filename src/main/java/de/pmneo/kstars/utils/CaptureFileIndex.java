@@ -0,0 +1,302 @@
+package de.pmneo.kstars.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.pmneo.kstars.SimpleLogger;
+
+/**
+ * Where every recorded capture file (keyed by the filename captureComplete/the analyze log
+ * reported) actually lives right now — or that it's gone. Used to be answered by stat'ing each
+ * file (plus a directory listing for renamed ones) on every single lookup, i.e. for every image of
+ * every train on every 1s status broadcast, and a linear scan over all recorded images for every
+ * thumbnail request.
+ *
+ * Now each file is resolved once when it's registered and then kept current by a WatchService
+ * on its directory: the only things that ever change the answer are the external batch job
+ * renaming "X.fits" to "X_T-&lt;train&gt;_ROT_&lt;angle&gt;.fits" (a delete of the old name plus a
+ * create of the new one, as far as the watcher is concerned), or someone deleting/moving the
+ * file. Such an event just re-resolves the few entries it can affect, so lookups are a map get
+ * with no filesystem I/O at all.
+ *
+ * If the platform can't give us a WatchService (or a directory can't be watched), the affected
+ * lookups fall back to resolving again once the last answer is UNWATCHED_TTL_MILLIS old — a
+ * rename then shows up a few seconds late instead of costing a stat and a directory listing per
+ * image per broadcast.
+ */
+public class CaptureFileIndex {
+
+    private static final String RENAME_MARKER = "_T-";
+
+    private static final long UNWATCHED_TTL_MILLIS = 5000;
+
+    private static class Entry {
+        final File original;
+        /** null while the file is gone. */
+        volatile File resolved;
+        /** Directory this entry's watch is registered on — false means resolve on lookup, at
+         *  most every UNWATCHED_TTL_MILLIS. */
+        volatile boolean watched;
+        volatile long resolvedAt;
+        int refs;
+
+        Entry( File original ) {
+            this.original = original;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    /** Recorded filenames per watched directory — what an event in that directory may affect. */
+    private final Map<Path, Set<String>> byDirectory = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> watchKeys = new ConcurrentHashMap<>();
+
+    private WatchService watcher;
+    private boolean watcherFailed = false;
+
+    /** Run whenever a watch event changed where (or whether) a registered file resolves. */
+    private final Runnable onChange;
+
+    public CaptureFileIndex( Runnable onChange ) {
+        this.onChange = onChange;
+    }
+
+    /** Starts tracking a recorded capture. Registering the same filename again (e.g. the live
+     *  signal and the analyze log replay both reporting it) just bumps a reference count. */
+    public void register( String filename ) {
+        if( filename == null ) {
+            return;
+        }
+
+        Entry entry;
+        synchronized( this ) {
+            entry = entries.computeIfAbsent( filename, f -> new Entry( new File( f ) ) );
+            if( entry.refs++ > 0 ) {
+                return;
+            }
+
+            // watch first, resolve second — a rename landing in between then still gets an event
+            File dir = entry.original.getAbsoluteFile().getParentFile();
+            if( dir != null ) {
+                Path dirPath = dir.toPath();
+                byDirectory.computeIfAbsent( dirPath, d -> ConcurrentHashMap.newKeySet() ).add( filename );
+                entry.watched = watch( dirPath );
+            }
+        }
+        refresh( entry );
+    }
+
+    /** Counterpart to register() — called once the capture ring buffer evicts the image. */
+    public synchronized void unregister( String filename ) {
+        if( filename == null ) {
+            return;
+        }
+
+        Entry entry = entries.get( filename );
+        if( entry != null && --entry.refs <= 0 ) {
+            entries.remove( filename );
+            File dir = entry.original.getAbsoluteFile().getParentFile();
+            if( dir != null ) {
+                Path dirPath = dir.toPath();
+                Set<String> names = byDirectory.get( dirPath );
+                if( names != null ) {
+                    names.remove( filename );
+                    if( names.isEmpty() ) {
+                        // nothing recorded there anymore (e.g. last night's folder) — stop watching
+                        byDirectory.remove( dirPath );
+                        WatchKey key = watchKeys.remove( dirPath );
+                        if( key != null ) {
+                            key.cancel();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public boolean isKnown( String filename ) {
+        return filename != null && entries.containsKey( filename );
+    }
+
+    /** Current location of a registered capture, or null if it isn't registered or is gone. */
+    public File lookup( String filename ) {
+        Entry entry = filename == null ? null : entries.get( filename );
+        if( entry == null ) {
+            return null;
+        }
+        if( !entry.watched && System.currentTimeMillis() - entry.resolvedAt >= UNWATCHED_TTL_MILLIS ) {
+            refresh( entry );
+        }
+        return entry.resolved;
+    }
+
+    private static void refresh( Entry entry ) {
+        entry.resolved = resolve( entry.original );
+        entry.resolvedAt = System.currentTimeMillis();
+    }
+
+    private synchronized boolean watch( Path dir ) {
+        WatchKey key = watchKeys.get( dir );
+        if( key != null && key.isValid() ) {
+            return true;
+        }
+
+        try {
+            if( watcher == null ) {
+                if( watcherFailed ) {
+                    return false;
+                }
+                watcher = FileSystems.getDefault().newWatchService();
+
+                Thread t = new Thread( this::watchLoop, "Capture File Index Watcher" );
+                t.setDaemon( true );
+                t.start();
+            }
+
+            watchKeys.put( dir, dir.register( watcher,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE ) );
+            return true;
+        }
+        catch( IOException | UnsupportedOperationException e ) {
+            if( watcher == null ) {
+                watcherFailed = true;
+                SimpleLogger.getLogger().logError( "No file watcher available, capture files will be re-resolved on lookup", e );
+            }
+            //directory doesn't exist (yet), or isn't watchable — resolve on every lookup instead
+            return false;
+        }
+    }
+
+    private void watchLoop() {
+        while( true ) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            }
+            catch( InterruptedException | ClosedWatchServiceException e ) {
+                return;
+            }
+
+            try {
+                Path dir = (Path) key.watchable();
+                for( WatchEvent<?> event : key.pollEvents() ) {
+                    if( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+                        reresolveDirectory( dir );
+                    }
+                    else {
+                        reresolve( dir, ((Path) event.context()).getFileName().toString() );
+                    }
+                }
+
+                if( !key.reset() ) {
+                    // directory itself deleted or moved — nothing in it resolves anymore, and
+                    // anything still registered there falls back to per-lookup resolving
+                    watchKeys.remove( dir, key );
+                    markUnwatched( dir );
+                    reresolveDirectory( dir );
+                }
+            }
+            catch( Throwable t ) {
+                SimpleLogger.getLogger().logError( "Failed to process capture directory change", t );
+            }
+        }
+    }
+
+    /** A file named `name` appeared in or vanished from `dir` — re-resolve every entry that
+     *  either is that file, was resolved to it, or is the original it's a rename of. */
+    private void reresolve( Path dir, String name ) {
+        Set<String> names = byDirectory.get( dir );
+        if( names == null ) {
+            return;
+        }
+
+        for( String filename : names ) {
+            Entry entry = entries.get( filename );
+            if( entry == null ) {
+                continue;
+            }
+
+            String original = entry.original.getName();
+            File resolved = entry.resolved;
+            if( name.equals( original ) || ( resolved != null && name.equals( resolved.getName() ) ) || isRenameOf( name, original ) ) {
+                update( entry );
+            }
+        }
+    }
+
+    private void update( Entry entry ) {
+        File before = entry.resolved;
+        refresh( entry );
+        File after = entry.resolved;
+        if( !Objects.equals( before, after ) ) {
+            onChange.run();
+        }
+    }
+
+    private void reresolveDirectory( Path dir ) {
+        Set<String> names = byDirectory.get( dir );
+        if( names == null ) {
+            return;
+        }
+        for( String filename : names ) {
+            Entry entry = entries.get( filename );
+            if( entry != null ) {
+                update( entry );
+            }
+        }
+    }
+
+    private void markUnwatched( Path dir ) {
+        Set<String> names = byDirectory.get( dir );
+        if( names == null ) {
+            return;
+        }
+        for( String filename : names ) {
+            Entry entry = entries.get( filename );
+            if( entry != null ) {
+                entry.watched = false;
+            }
+        }
+    }
+
+    private static boolean isRenameOf( String name, String original ) {
+        int dot = original.lastIndexOf( '.' );
+        String stem = dot >= 0 ? original.substring( 0, dot ) : original;
+        String ext = dot >= 0 ? original.substring( dot ) : "";
+        return name.startsWith( stem + RENAME_MARKER ) && name.endsWith( ext );
+    }
+
+    /** Some external process renames capture files after the fact, tagging them with the imaging
+     *  train and rotator angle they were captured at — e.g.
+     *  ".../NGC_1333_Light_L_180_secs__005.fits" becomes "..._005_T-ED100B2_ROT_160.0.fits"
+     *  (confirmed against real files on disk: renamed and still-plain files coexist in the same
+     *  folder, so this evidently runs as a periodic batch job, not immediately after capture).
+     *  Without this, every renamed file would silently 404 forever — captureComplete/the analyze
+     *  log only ever recorded the original name. Only ever called on register and on a watch
+     *  event that may concern the file, never per lookup (unless unwatched, and then at most
+     *  every UNWATCHED_TTL_MILLIS). */
+    private static File resolve( File original ) {
+        if( original.isFile() ) {
+            return original;
+        }
+
+        File dir = original.getParentFile();
+        if( dir == null ) {
+            return null;
+        }
+
+        String name = original.getName();
+        File[] renamed = dir.listFiles( ( d, n ) -> isRenameOf( n, name ) );
+        return renamed != null && renamed.length > 0 ? renamed[0] : null;
+    }
+}
@@ -0,0 +1,211 @@
+package de.pmneo.kstars.utils;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a time series to roughly as many points as a chart is pixels wide, for the history
+ * query endpoint (see HistoryQuery) — a full night of guiding is up to 20k samples, drawn into a
+ * few hundred pixels.
+ *
+ * Buckets are aligned to an absolute grid (bucket b covers [b*width, (b+1)*width)) rather than to
+ * the requested range, so the same sample always lands in the same bucket no matter which window
+ * a chart asks for; that's what makes a closed bucket's result cacheable at all.
+ *
+ * Two modes:
+ * <ul>
+ * <li>LTTB (Largest-Triangle-Three-Buckets): one point per bucket, the one spanning the largest
+ *     triangle with the previously picked point and the next bucket's average — keeps the visual
+ *     shape (spikes included) far better than averaging.</li>
+ * <li>min/max: each bucket's lowest and highest sample, in time order — an exact envelope, and
+ *     independent of the neighbouring buckets.</li>
+ * </ul>
+ */
+public class Downsampler {
+
+    /** A slice of a series: timestamps and one value column, oldest first. */
+    public static class Series {
+        public final long[] ts;
+        public final double[] values;
+        public final int size;
+        /** Oldest/newest timestamp still retained by the source — not just of this slice. */
+        public final long retainedFrom;
+        public final long retainedTo;
+
+        public Series( long[] ts, double[] values, int size, long retainedFrom, long retainedTo ) {
+            this.ts = ts;
+            this.values = values;
+            this.size = size;
+            this.retainedFrom = retainedFrom;
+            this.retainedTo = retainedTo;
+        }
+
+        /**
+         * Whether nothing can be appended to or evicted from bucket [start, end) anymore: the
+         * source has samples past its end (samples arrive in time order) and hasn't evicted
+         * anything from within it yet — though it will eventually, the result stays valid for
+         * the samples it was computed from and charts never ask for evicted ranges.
+         */
+        public boolean isClosed( long start, long end ) {
+            return end <= retainedTo && start >= retainedFrom;
+        }
+    }
+
+    /** Downsampled output — serialized as two parallel arrays, far smaller than one object per point. */
+    public static class Points {
+        public long[] ts;
+        public double[] values;
+        transient int size;
+
+        public Points( int capacity ) {
+            this.ts = new long[ Math.max( 1, capacity ) ];
+            this.values = new double[ Math.max( 1, capacity ) ];
+        }
+
+        public void add( long t, double v ) {
+            if( size == ts.length ) {
+                ts = Arrays.copyOf( ts, size * 2 );
+                values = Arrays.copyOf( values, size * 2 );
+            }
+            ts[ size ] = t;
+            values[ size ] = v;
+            size++;
+        }
+
+        public void addAll( Points p ) {
+            for( int i=0; i<p.size; i++ ) {
+                add( p.ts[ i ], p.values[ i ] );
+            }
+        }
+
+        public Points trim() {
+            ts = Arrays.copyOf( ts, size );
+            values = Arrays.copyOf( values, size );
+            return this;
+        }
+    }
+
+    /** Bucket width for at most `buckets` buckets across [from, to), rounded up to 1/2/5 x 10^n
+     *  milliseconds — a handful of distinct widths, so charts at similar zoom levels share cache. */
+    public static long bucketWidth( long from, long to, int buckets ) {
+        long raw = Math.max( 1, ( to - from + buckets - 1 ) / Math.max( 1, buckets ) );
+        long magnitude = 1;
+        while( true ) {
+            for( long step : new long[]{ 1, 2, 5 } ) {
+                if( step * magnitude >= raw ) {
+                    return step * magnitude;
+                }
+            }
+            magnitude *= 10;
+        }
+    }
+
+    /** Index ranges [start[i], start[i+1]) of the series' samples grouped by grid bucket. Returns the bucket count. */
+    public static int group( Series s, long width, int[] starts, long[] bucketIds ) {
+        int n = 0;
+        long current = Long.MIN_VALUE;
+        for( int i=0; i<s.size; i++ ) {
+            long b = Math.floorDiv( s.ts[ i ], width );
+            if( b != current ) {
+                starts[ n ] = i;
+                bucketIds[ n ] = b;
+                n++;
+                current = b;
+            }
+        }
+        starts[ n ] = s.size;
+        return n;
+    }
+
+    /** One bucket's min and max sample, in time order (once if they're the same sample). */
+    public static Points minMax( Series s, int from, int to ) {
+        Points res = new Points( 2 );
+        if( from >= to ) {
+            return res;
+        }
+
+        int min = from;
+        int max = from;
+        for( int i=from+1; i<to; i++ ) {
+            if( s.values[ i ] < s.values[ min ] ) {
+                min = i;
+            }
+            if( s.values[ i ] > s.values[ max ] ) {
+                max = i;
+            }
+        }
+
+        int first = Math.min( min, max );
+        int second = Math.max( min, max );
+        res.add( s.ts[ first ], s.values[ first ] );
+        if( second != first ) {
+            res.add( s.ts[ second ], s.values[ second ] );
+        }
+        return res;
+    }
+
+    /**
+     * LTTB over the grid buckets given by group(): the first and last sample are always kept,
+     * every bucket in between contributes the one sample forming the largest triangle with the
+     * previous pick and the average of the next bucket. A series with no more samples than
+     * buckets is returned as is.
+     */
+    public static Points lttb( Series s, int[] starts, int buckets ) {
+        Points res = new Points( buckets + 2 );
+        if( s.size <= buckets + 2 ) {
+            for( int i=0; i<s.size; i++ ) {
+                res.add( s.ts[ i ], s.values[ i ] );
+            }
+            return res;
+        }
+
+        int last = s.size - 1;
+        res.add( s.ts[ 0 ], s.values[ 0 ] );
+        int a = 0;
+
+        for( int b=0; b<buckets; b++ ) {
+            // the first/last sample are their own buckets
+            int from = Math.max( starts[ b ], 1 );
+            int to = Math.min( starts[ b + 1 ], last );
+            if( from >= to ) {
+                continue;
+            }
+
+            double avgT;
+            double avgV;
+            int nextFrom = b + 1 < buckets ? Math.max( starts[ b + 1 ], 1 ) : last;
+            int nextTo = b + 1 < buckets ? Math.min( starts[ b + 2 ], last ) : last;
+            if( nextFrom >= nextTo ) {
+                avgT = s.ts[ last ];
+                avgV = s.values[ last ];
+            }
+            else {
+                avgT = 0;
+                avgV = 0;
+                for( int i=nextFrom; i<nextTo; i++ ) {
+                    avgT += s.ts[ i ];
+                    avgV += s.values[ i ];
+                }
+                avgT /= nextTo - nextFrom;
+                avgV /= nextTo - nextFrom;
+            }
+
+            double aT = s.ts[ a ];
+            double aV = s.values[ a ];
+            double maxArea = -1;
+            int picked = from;
+            for( int i=from; i<to; i++ ) {
+                double area = Math.abs( ( aT - avgT ) * ( s.values[ i ] - aV ) - ( aT - s.ts[ i ] ) * ( avgV - aV ) );
+                if( area > maxArea ) {
+                    maxArea = area;
+                    picked = i;
+                }
+            }
+
+            res.add( s.ts[ picked ], s.values[ picked ] );
+            a = picked;
+        }
+
+        res.add( s.ts[ last ], s.values[ last ] );
+        return res;
+    }
+}
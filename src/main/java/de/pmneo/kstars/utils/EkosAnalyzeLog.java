@@ -4,6 +4,10 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -17,6 +21,8 @@ import java.util.Map;
 import de.pmneo.kstars.SessionHistory.CapturedImage;
 import de.pmneo.kstars.SessionHistory.GuideDeltaSample;
 import de.pmneo.kstars.SessionHistory.HfrSample;
+import de.pmneo.kstars.SessionHistory.MountCoordsSample;
+import de.pmneo.kstars.SessionHistory.TemperatureSample;
 import de.pmneo.kstars.SessionHistory.TimelineEvent;
 
 /**
@@ -50,6 +56,15 @@ public class EkosAnalyzeLog {
          *  images/hfrSamples/guideSamples already do, instead of only starting to fill in from
          *  whenever live D-Bus signals resume. */
         public final List<TimelineEvent> timelineEvents = new ArrayList<>();
+        /** Temperature and MountCoords rows — nothing our D-Bus signal handlers receive, only
+         *  ever consumed by AnalyzeLogFollower (see there for why restore doesn't replay them). */
+        public final List<TemperatureSample> temperatures = new ArrayList<>();
+        public final List<MountCoordsSample> mountCoords = new ArrayList<>();
+        /** SchedulerJobEnd rows, labelled with the row's end reason rather than "idle" — for
+         *  AnalyzeArchiveIndex's abort counting; the timeline gets its own "idle" event. */
+        public final List<TimelineEvent> jobEnds = new ArrayList<>();
+        /** The file's AnalyzeStartTime, -1 until its header row has been seen. */
+        public long startEpochMillis = -1;
 
         private void addImage( String train, CapturedImage img ) {
             images.computeIfAbsent( train, t -> new ArrayList<>() ).add( img );
@@ -79,17 +94,23 @@ public class EkosAnalyzeLog {
             older.hfrSamples.forEach( ( train, samples ) -> hfrSamples.computeIfAbsent( train, t -> new ArrayList<>() ).addAll( 0, samples ) );
             guideSamples.addAll( 0, older.guideSamples );
             timelineEvents.addAll( 0, older.timelineEvents );
+            temperatures.addAll( 0, older.temperatures );
+            mountCoords.addAll( 0, older.mountCoords );
+            jobEnds.addAll( 0, older.jobEnds );
         }
     }
 
     /**
      * The single most recent file is often a short guiding-only test session with zero captures
      * — walks newest-to-oldest instead, merging in each file's history (oldest-first, so the
-     * result stays chronological) until all three minimums are met or maxFiles is hit, whichever
+     * result stays chronological) until all four minimums are met or maxFiles is hit, whichever
      * comes first. Bounds the worst case (some ancient file being huge) without giving up early
      * just because the very latest session happened to be short.
+     *
+     * Each file is only read as far back from its end as needed for what's still missing (see
+     * parseTail), so a multi-megabyte night costs about the same as a short one.
      */
-    public static ParsedHistory parseRecent( File analyzeDir, int minImages, int minHfr, int minGuide, int maxFiles ) throws IOException {
+    public static ParsedHistory parseRecent( File analyzeDir, int minImages, int minHfr, int minGuide, int minTimeline, int maxFiles ) throws IOException {
         ParsedHistory result = new ParsedHistory();
 
         File[] files = analyzeDir.listFiles( ( d, n ) -> n.endsWith( ".analyze" ) );
@@ -99,10 +120,15 @@ public class EkosAnalyzeLog {
         Arrays.sort( files, Comparator.comparingLong( File::lastModified ).reversed() );
 
         for( int i = 0; i < files.length && i < maxFiles; i++ ) {
-            ParsedHistory fromFile = parse( files[i] );
+            ParsedHistory fromFile = parseTail( files[i],
+                Math.max( 0, minImages - result.totalImages() ),
+                Math.max( 0, minHfr - result.totalHfrSamples() ),
+                Math.max( 0, minGuide - result.guideSamples.size() ),
+                Math.max( 0, minTimeline - result.timelineEvents.size() ) );
             result.prependAll( fromFile );
 
-            if( result.totalImages() >= minImages && result.totalHfrSamples() >= minHfr && result.guideSamples.size() >= minGuide ) {
+            if( result.totalImages() >= minImages && result.totalHfrSamples() >= minHfr && result.guideSamples.size() >= minGuide
+                    && result.timelineEvents.size() >= minTimeline ) {
                 break;
             }
         }
@@ -111,74 +137,437 @@ public class EkosAnalyzeLog {
     }
 
     public static ParsedHistory parse( File file ) throws IOException {
-        ParsedHistory result = new ParsedHistory();
-        long startEpochMillis = -1;
-
+        LineParser parser = new LineParser();
         try( BufferedReader r = new BufferedReader( new FileReader( file ) ) ) {
             String line;
             while( (line = r.readLine()) != null ) {
-                if( line.isBlank() || line.startsWith( "#" ) ) {
-                    continue;
+                parser.accept( line );
+            }
+        }
+        return parser.result;
+    }
+
+    /** Row types parseTail() recognizes straight from the bytes, no String built per row. */
+    private static final String[] ROW_TYPES = {
+        "AnalyzeStartTime", "CaptureComplete", "AutofocusComplete", "GuideStats", "AlignState", "GuideState",
+        "MountState", "SchedulerJobStart", "SchedulerJobEnd", "Temperature", "MountCoords"
+    };
+    private static final byte[][] ROW_TYPE_BYTES = new byte[ ROW_TYPES.length ][];
+    static {
+        for( int i = 0; i < ROW_TYPES.length; i++ ) {
+            ROW_TYPE_BYTES[i] = ROW_TYPES[i].getBytes( StandardCharsets.US_ASCII );
+        }
+    }
+    private static final int ANALYZE_START_TIME = 0;
+    private static final int CAPTURE_COMPLETE = 1;
+    private static final int AUTOFOCUS_COMPLETE = 2;
+    private static final int GUIDE_STATS = 3;
+    /** AlignState up to SchedulerJobEnd — the rows that become timeline events. */
+    private static final int FIRST_TIMELINE_ROW = 4;
+    private static final int LAST_TIMELINE_ROW = 8;
+
+    /**
+     * parse(), but only of as much of the file's end as it takes to get (at least) minImages
+     * images, minHfr HFR samples, minGuide guide samples and minTimeline timeline events — pass
+     * the sizes of the buffers the result ends up in, and anything further back would only be
+     * evicted again.
+     *
+     * The file is memory mapped; the AnalyzeStartTime header is read off the top, then rows are
+     * scanned backwards from the end, only classified and counted (no Strings, no number parsing
+     * beyond what the counting needs), until the minimums are met. Only from there on forward is
+     * anything actually parsed, by the same row parsers as parse() so the result is identical to
+     * parse()'s tail. Temperature/mount coordinate rows in that tail come along, they just don't
+     * count towards anything.
+     */
+    public static ParsedHistory parseTail( File file, int minImages, int minHfr, int minGuide, int minTimeline ) throws IOException {
+        ParsedHistory result = new ParsedHistory();
+
+        try( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+            long fileSize = channel.size();
+            if( fileSize > Integer.MAX_VALUE ) {
+                return parse( file );
+            }
+            int size = (int) fileSize;
+            if( size == 0 ) {
+                return result;
+            }
+
+            MappedFields row = new MappedFields( channel.map( FileChannel.MapMode.READ_ONLY, 0, size ) );
+            ByteBuffer buf = row.buf;
+
+            long startEpochMillis = -1;
+            for( int pos = 0, lines = 0; pos < size && lines < 20 && startEpochMillis < 0; lines++ ) {
+                int end = pos;
+                while( end < size && buf.get( end ) != '\n' ) {
+                    end++;
+                }
+                row.tokenize( pos, end );
+                if( row.typeIndex() == ANALYZE_START_TIME && row.size() > 1 ) {
+                    startEpochMillis = parseStartTime( row.str( 1 ) );
+                }
+                pos = end + 1;
+            }
+            if( startEpochMillis < 0 ) {
+                return result;
+            }
+            result.startEpochMillis = startEpochMillis;
+
+            int images = 0;
+            int hfr = 0;
+            int guide = 0;
+            int timeline = 0;
+            int cursor = size;
+            while( cursor > 0 && ( images < minImages || hfr < minHfr || guide < minGuide || timeline < minTimeline ) ) {
+                int lineEnd = buf.get( cursor - 1 ) == '\n' ? cursor - 1 : cursor;
+                int lineStart = lineEnd;
+                while( lineStart > 0 && buf.get( lineStart - 1 ) != '\n' ) {
+                    lineStart--;
                 }
 
-                String[] parts = line.split( ",", -1 );
-                String type = parts[0];
+                row.tokenize( lineStart, lineEnd );
+                int type = row.typeIndex();
+                switch( type ) {
+                    case CAPTURE_COMPLETE:
+                        if( row.size() >= 6 && !row.isBlank( 5 ) ) {
+                            images++;
+                        }
+                        break;
+                    case AUTOFOCUS_COMPLETE:
+                        if( row.size() >= 7 ) {
+                            int points = row.count( 6, (byte) '|' ) + 1;
+                            hfr += points >= 2 ? ( points - 2 ) / 4 + 1 : 0;
+                        }
+                        break;
+                    case GUIDE_STATS:
+                        if( row.size() >= 4 ) {
+                            guide++;
+                        }
+                        break;
+                    default:
+                        if( type >= FIRST_TIMELINE_ROW && type <= LAST_TIMELINE_ROW ) {
+                            timeline++;
+                        }
+                }
+                cursor = lineStart;
+            }
 
-                if( "AnalyzeStartTime".equals( type ) ) {
-                    try {
-                        LocalDateTime ldt = LocalDateTime.parse( parts[1], START_TIME_FORMAT );
-                        startEpochMillis = ldt.atZone( ZoneId.systemDefault() ).toInstant().toEpochMilli();
-                    }
-                    catch( Throwable t ) {
-                        //leave startEpochMillis unset — every later row is skipped without it
-                    }
-                    continue;
+            for( int pos = cursor; pos < size; ) {
+                int end = pos;
+                while( end < size && buf.get( end ) != '\n' ) {
+                    end++;
                 }
+                row.tokenize( pos, end );
+                pos = end + 1;
 
-                if( startEpochMillis < 0 || parts.length < 2 ) {
+                int type = row.typeIndex();
+                if( type <= ANALYZE_START_TIME || row.size() < 2 ) {
                     continue;
                 }
-
                 long ts;
                 try {
-                    ts = startEpochMillis + Math.round( Double.parseDouble( parts[1] ) * 1000 );
+                    ts = startEpochMillis + Math.round( row.num( 1 ) * 1000 );
                 }
                 catch( NumberFormatException e ) {
                     continue;
                 }
+                parseRow( result, ROW_TYPES[ type ], ts, row );
+            }
+        }
 
-                switch( type ) {
-                    case "CaptureComplete":
-                        parseCaptureComplete( result, ts, parts );
-                        break;
-                    case "AutofocusComplete":
-                        parseAutofocusComplete( result, ts, parts );
-                        break;
-                    case "GuideStats":
-                        parseGuideStats( result, ts, parts );
-                        break;
-                    case "AlignState":
-                        parseAlignState( result, ts, parts );
-                        break;
-                    case "GuideState":
-                        parseGuideState( result, ts, parts );
-                        break;
-                    case "MountState":
-                        parseMountState( result, ts, parts );
-                        break;
-                    case "SchedulerJobStart":
-                        parseSchedulerJobStart( result, ts, parts );
-                        break;
-                    case "SchedulerJobEnd":
-                        parseSchedulerJobEnd( result, ts, parts );
-                        break;
-                    default:
-                        //other event types (Temperature, MountCoords, ...) aren't needed for this replay
+        return result;
+    }
+
+    /** A row's fields as offsets into the mapped file — re-tokenized in place for every row. */
+    private static class MappedFields implements Fields {
+        private static final double[] POW10 = new double[ 23 ];
+        static {
+            POW10[0] = 1;
+            for( int i = 1; i < POW10.length; i++ ) {
+                POW10[i] = POW10[i - 1] * 10;
+            }
+        }
+
+        final ByteBuffer buf;
+        private int[] starts = new int[ 16 ];
+        private int[] ends = new int[ 16 ];
+        private int count;
+
+        MappedFields( ByteBuffer buf ) {
+            this.buf = buf;
+        }
+
+        void tokenize( int from, int to ) {
+            if( to > from && buf.get( to - 1 ) == '\r' ) {
+                to--;
+            }
+            count = 0;
+            int start = from;
+            for( int i = from; i <= to; i++ ) {
+                if( i == to || buf.get( i ) == ',' ) {
+                    if( count == starts.length ) {
+                        starts = Arrays.copyOf( starts, count * 2 );
+                        ends = Arrays.copyOf( ends, count * 2 );
+                    }
+                    starts[ count ] = start;
+                    ends[ count ] = i;
+                    count++;
+                    start = i + 1;
                 }
             }
         }
 
-        return result;
+        /** Index into ROW_TYPES, -1 for a row type we don't care about. */
+        int typeIndex() {
+            int len = ends[0] - starts[0];
+            for( int t = 0; t < ROW_TYPE_BYTES.length; t++ ) {
+                byte[] name = ROW_TYPE_BYTES[t];
+                if( name.length != len ) {
+                    continue;
+                }
+                int i = 0;
+                while( i < len && buf.get( starts[0] + i ) == name[i] ) {
+                    i++;
+                }
+                if( i == len ) {
+                    return t;
+                }
+            }
+            return -1;
+        }
+
+        int count( int field, byte b ) {
+            int n = 0;
+            for( int i = starts[ field ]; i < ends[ field ]; i++ ) {
+                if( buf.get( i ) == b ) {
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public String str( int i ) {
+            byte[] bytes = new byte[ ends[i] - starts[i] ];
+            buf.get( starts[i], bytes );
+            return new String( bytes, StandardCharsets.UTF_8 );
+        }
+
+        @Override
+        public boolean isBlank( int i ) {
+            for( int p = starts[i]; p < ends[i]; p++ ) {
+                if( buf.get( p ) > ' ' ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Plain decimals ("-0.3512", "1234") straight from the bytes — exact, since an at most
+         *  15 digit mantissa and a power of ten up to 1e22 are both exactly representable, so the
+         *  single division rounds correctly. Anything else (exponents, NaN, overlong) goes
+         *  through Double.parseDouble. */
+        @Override
+        public double num( int i ) {
+            int p = starts[i];
+            int e = ends[i];
+            while( p < e && buf.get( p ) <= ' ' ) {
+                p++;
+            }
+            while( e > p && buf.get( e - 1 ) <= ' ' ) {
+                e--;
+            }
+
+            boolean negative = false;
+            if( p < e && ( buf.get( p ) == '-' || buf.get( p ) == '+' ) ) {
+                negative = buf.get( p ) == '-';
+                p++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int scale = -1;
+            for( int q = p; q < e; q++ ) {
+                byte b = buf.get( q );
+                if( b >= '0' && b <= '9' ) {
+                    mantissa = mantissa * 10 + ( b - '0' );
+                    digits++;
+                    if( scale >= 0 ) {
+                        scale++;
+                    }
+                }
+                else if( b == '.' && scale < 0 ) {
+                    scale = 0;
+                }
+                else {
+                    return Double.parseDouble( str( i ) );
+                }
+            }
+            if( digits == 0 || digits > 15 ) {
+                return Double.parseDouble( str( i ) );
+            }
+
+            double value = scale > 0 ? mantissa / POW10[ scale ] : mantissa;
+            return negative ? -value : value;
+        }
+    }
+
+    /**
+     * Parses one row at a time into {@link #result} — parse() feeds it a whole file,
+     * AnalyzeLogFollower just the lines appended since its last check (after priming it with the
+     * file's AnalyzeStartTime row, see readStartTime()).
+     */
+    public static class LineParser {
+        public final ParsedHistory result;
+        private long startEpochMillis = -1;
+
+        public LineParser() {
+            this( new ParsedHistory() );
+        }
+
+        public LineParser( ParsedHistory result ) {
+            this.result = result;
+        }
+
+        public boolean hasStartTime() {
+            return startEpochMillis >= 0;
+        }
+
+        public void accept( String line ) {
+            if( line.isBlank() || line.startsWith( "#" ) ) {
+                return;
+            }
+
+            String[] parts = line.split( ",", -1 );
+            String type = parts[0];
+
+            if( "AnalyzeStartTime".equals( type ) ) {
+                if( parts.length > 1 ) {
+                    startEpochMillis = parseStartTime( parts[1] );
+                    if( result.startEpochMillis < 0 ) {
+                        result.startEpochMillis = startEpochMillis;
+                    }
+                }
+                return;
+            }
+
+            if( startEpochMillis < 0 || parts.length < 2 ) {
+                return;
+            }
+
+            StringFields fields = new StringFields( parts );
+            long ts;
+            try {
+                ts = startEpochMillis + Math.round( fields.num( 1 ) * 1000 );
+            }
+            catch( NumberFormatException e ) {
+                return;
+            }
+            parseRow( result, type, ts, fields );
+        }
+    }
+
+    /** -1 if unparseable — every later row is then skipped. */
+    private static long parseStartTime( String value ) {
+        try {
+            LocalDateTime ldt = LocalDateTime.parse( value, START_TIME_FORMAT );
+            return ldt.atZone( ZoneId.systemDefault() ).toInstant().toEpochMilli();
+        }
+        catch( Throwable t ) {
+            return -1;
+        }
+    }
+
+    private static void parseRow( ParsedHistory result, String type, long ts, Fields f ) {
+        switch( type ) {
+            case "CaptureComplete":
+                parseCaptureComplete( result, ts, f );
+                break;
+            case "AutofocusComplete":
+                parseAutofocusComplete( result, ts, f );
+                break;
+            case "GuideStats":
+                parseGuideStats( result, ts, f );
+                break;
+            case "AlignState":
+                parseAlignState( result, ts, f );
+                break;
+            case "GuideState":
+                parseGuideState( result, ts, f );
+                break;
+            case "MountState":
+                parseMountState( result, ts, f );
+                break;
+            case "SchedulerJobStart":
+                parseSchedulerJobStart( result, ts, f );
+                break;
+            case "SchedulerJobEnd":
+                parseSchedulerJobEnd( result, ts, f );
+                break;
+            case "Temperature":
+                parseTemperature( result, ts, f );
+                break;
+            case "MountCoords":
+                parseMountCoords( result, ts, f );
+                break;
+            default:
+                //other event types aren't needed
+        }
+    }
+
+    /** One row's fields — a String[] for the forward LineParser, the mapped bytes themselves for
+     *  parseTail. The row parsers below only ever go through this. */
+    private interface Fields {
+        int size();
+        String str( int i );
+        /** NumberFormatException for anything that isn't a number, same as Double.parseDouble. */
+        double num( int i );
+        boolean isBlank( int i );
+    }
+
+    private static class StringFields implements Fields {
+        private final String[] parts;
+
+        StringFields( String[] parts ) {
+            this.parts = parts;
+        }
+
+        @Override
+        public int size() {
+            return parts.length;
+        }
+
+        @Override
+        public String str( int i ) {
+            return parts[i];
+        }
+
+        @Override
+        public double num( int i ) {
+            return Double.parseDouble( parts[i] );
+        }
+
+        @Override
+        public boolean isBlank( int i ) {
+            return parts[i].isBlank();
+        }
+    }
+
+    /** Primes a LineParser with the file's AnalyzeStartTime row — always among the first few
+     *  lines, so resuming mid-file only costs reading the head, not the whole file. */
+    public static void readStartTime( File file, LineParser parser ) throws IOException {
+        try( BufferedReader r = new BufferedReader( new FileReader( file ) ) ) {
+            String line;
+            for( int i = 0; i < 20 && !parser.hasStartTime() && (line = r.readLine()) != null; i++ ) {
+                if( line.startsWith( "AnalyzeStartTime" ) ) {
+                    parser.accept( line );
+                }
+            }
+        }
     }
 
     /** Old rows have exactly 9 fields (0-8, ending at eccentricity); a train name got appended
@@ -188,41 +577,41 @@ public class EkosAnalyzeLog {
     private static final int CAPTURE_COMPLETE_FIELDS_BEFORE_TRAIN = 9;
     private static final int AUTOFOCUS_COMPLETE_FIELDS_BEFORE_TRAIN = 10;
 
-    private static void parseCaptureComplete( ParsedHistory result, long ts, String[] parts ) {
+    private static void parseCaptureComplete( ParsedHistory result, long ts, Fields f ) {
         // CaptureComplete,<offsetSec>,<exposure>,<filter>,<hfr>,<filepath>,<binx>,<biny>,<eccentricity>[,<train>]
-        if( parts.length < 6 || parts[5].isBlank() ) {
+        if( f.size() < 6 || f.isBlank( 5 ) ) {
             return; //no file was actually saved (e.g. an aborted/preview capture)
         }
 
-        String filepath = parts[5];
-        String train = parts.length > CAPTURE_COMPLETE_FIELDS_BEFORE_TRAIN ? parts[parts.length - 1] : DEFAULT_TRAIN;
+        String filepath = f.str( 5 );
+        String train = f.size() > CAPTURE_COMPLETE_FIELDS_BEFORE_TRAIN ? f.str( f.size() - 1 ) : DEFAULT_TRAIN;
 
         Map<String,Object> m = new LinkedHashMap<>();
         // CapturedImage.filename is actually the full path by convention (same as the real
         // captureComplete signal's metadata) — resolveKnownCapturedFile() does `new File(filename)`
         // directly, so trimming this to a basename would make the thumbnail endpoint 404 forever.
         m.put( "filename", filepath );
-        m.put( "filter", parts[3] );
-        m.put( "exposure", parseD( parts[2] ) );
-        m.put( "hfr", parseD( parts[4] ) );
+        m.put( "filter", f.str( 3 ) );
+        m.put( "exposure", parseD( f, 2 ) );
+        m.put( "hfr", parseD( f, 4 ) );
         m.put( "type", inferFrameType( filepath ) );
 
         result.addImage( train, new CapturedImage( ts, m ) );
     }
 
-    private static void parseAutofocusComplete( ParsedHistory result, long ts, String[] parts ) {
+    private static void parseAutofocusComplete( ParsedHistory result, long ts, Fields f ) {
         // AutofocusComplete,<offsetSec>,<temperature>,<pointCount>,<?>,<filter>,<pos>|<hfr>|<weight>|<flag>|...,...,<solutionDescription>[,<train>]
         // Confirmed against a real KStars 3.8.4 analyze log (Analyze log version 1.0) — the
         // points list is index 6, not 3, and each sample is a 4-tuple, not a pair (position,
         // HFR, weight, flag). Getting either wrong used to silently yield zero HFR samples,
         // since parts[3] alone (just the point count, e.g. "9") has nothing to pair up.
-        if( parts.length < 7 ) {
+        if( f.size() < 7 ) {
             return;
         }
 
-        String train = parts.length > AUTOFOCUS_COMPLETE_FIELDS_BEFORE_TRAIN ? parts[parts.length - 1] : DEFAULT_TRAIN;
+        String train = f.size() > AUTOFOCUS_COMPLETE_FIELDS_BEFORE_TRAIN ? f.str( f.size() - 1 ) : DEFAULT_TRAIN;
 
-        String[] points = parts[6].split( "\\|" );
+        String[] points = f.str( 6 ).split( "\\|" );
         for( int i = 0; i + 1 < points.length; i += 4 ) {
             try {
                 int position = (int) Double.parseDouble( points[i] );
@@ -235,14 +624,40 @@ public class EkosAnalyzeLog {
         }
     }
 
-    private static void parseGuideStats( ParsedHistory result, long ts, String[] parts ) {
+    private static void parseGuideStats( ParsedHistory result, long ts, Fields f ) {
         // GuideStats,<offsetSec>,<raError>,<decError>,... — no train field; guiding is tracked
         // app-wide regardless of which train is currently capturing (see SessionHistory.guideDeltaHistory).
-        if( parts.length < 4 ) {
+        if( f.size() < 4 ) {
+            return;
+        }
+        try {
+            result.guideSamples.add( new GuideDeltaSample( ts, f.num( 2 ), f.num( 3 ) ) );
+        }
+        catch( NumberFormatException e ) {
+            //skip malformed row
+        }
+    }
+
+    private static void parseTemperature( ParsedHistory result, long ts, Fields f ) {
+        // Temperature,<offsetSec>,<celsius> — the focuser's temperature probe
+        if( f.size() < 3 ) {
             return;
         }
         try {
-            result.guideSamples.add( new GuideDeltaSample( ts, Double.parseDouble( parts[2] ), Double.parseDouble( parts[3] ) ) );
+            result.temperatures.add( new TemperatureSample( ts, f.num( 2 ) ) );
+        }
+        catch( NumberFormatException e ) {
+            //skip malformed row
+        }
+    }
+
+    private static void parseMountCoords( ParsedHistory result, long ts, Fields f ) {
+        // MountCoords,<offsetSec>,<raDeg>,<decDeg>,<azDeg>,<altDeg>,<pierSide>,<haHours>
+        if( f.size() < 6 ) {
+            return;
+        }
+        try {
+            result.mountCoords.add( new MountCoordsSample( ts, f.num( 2 ), f.num( 3 ), f.num( 4 ), f.num( 5 ) ) );
         }
         catch( NumberFormatException e ) {
             //skip malformed row
@@ -297,42 +712,48 @@ public class EkosAnalyzeLog {
         Map.entry( "Fehler", "MOUNT_ERROR" ), Map.entry( "Error", "MOUNT_ERROR" )
     );
 
-    private static void parseAlignState( ParsedHistory result, long ts, String[] parts ) {
-        if( parts.length < 3 ) {
+    private static void parseAlignState( ParsedHistory result, long ts, Fields f ) {
+        if( f.size() < 3 ) {
             return;
         }
-        result.addTimelineEvent( ts, "align", ALIGN_STATE_LABELS.getOrDefault( parts[2], parts[2] ) );
+        String state = f.str( 2 );
+        result.addTimelineEvent( ts, "align", ALIGN_STATE_LABELS.getOrDefault( state, state ) );
     }
 
-    private static void parseGuideState( ParsedHistory result, long ts, String[] parts ) {
-        if( parts.length < 3 ) {
+    private static void parseGuideState( ParsedHistory result, long ts, Fields f ) {
+        if( f.size() < 3 ) {
             return;
         }
-        result.addTimelineEvent( ts, "guide", GUIDE_STATE_LABELS.getOrDefault( parts[2], parts[2] ) );
+        String state = f.str( 2 );
+        result.addTimelineEvent( ts, "guide", GUIDE_STATE_LABELS.getOrDefault( state, state ) );
     }
 
-    private static void parseMountState( ParsedHistory result, long ts, String[] parts ) {
-        if( parts.length < 3 ) {
+    private static void parseMountState( ParsedHistory result, long ts, Fields f ) {
+        if( f.size() < 3 ) {
             return;
         }
-        result.addTimelineEvent( ts, "mount", MOUNT_STATE_LABELS.getOrDefault( parts[2], parts[2] ) );
+        String state = f.str( 2 );
+        result.addTimelineEvent( ts, "mount", MOUNT_STATE_LABELS.getOrDefault( state, state ) );
     }
 
     /** SchedulerJobStart,<offsetSec>,<jobName> — a job starting in the analyze log means it's
      *  actually executing, same as the live "scheduler" lane's JOB_BUSY state, so the label is
      *  built the same way (job name + "(JOB_BUSY)") for the frontend's opacity/name handling to
      *  treat both sources identically. */
-    private static void parseSchedulerJobStart( ParsedHistory result, long ts, String[] parts ) {
-        if( parts.length < 3 ) {
+    private static void parseSchedulerJobStart( ParsedHistory result, long ts, Fields f ) {
+        if( f.size() < 3 ) {
             return;
         }
-        result.addTimelineEvent( ts, "scheduler", parts[2] + " (JOB_BUSY)" );
+        result.addTimelineEvent( ts, "scheduler", f.str( 2 ) + " (JOB_BUSY)" );
     }
 
-    /** SchedulerJobEnd,<offsetSec>,<jobName>,<reason> — the reason (e.g. "twilight") isn't needed
-     *  here, just that the scheduler goes back to idle. */
-    private static void parseSchedulerJobEnd( ParsedHistory result, long ts, String[] parts ) {
+    /** SchedulerJobEnd,<offsetSec>,<jobName>,<reason> — the timeline only needs to know the
+     *  scheduler goes back to idle; the reason (e.g. "twilight") is kept separately in jobEnds. */
+    private static void parseSchedulerJobEnd( ParsedHistory result, long ts, Fields f ) {
         result.addTimelineEvent( ts, "scheduler", "idle" );
+        if( f.size() > 3 ) {
+            result.jobEnds.add( new TimelineEvent( ts, "scheduler", f.str( 3 ) ) );
+        }
     }
 
     private static int inferFrameType( String filepath ) {
@@ -345,9 +766,9 @@ public class EkosAnalyzeLog {
         return 0; //Light — also the default when the type can't be inferred from the path
     }
 
-    private static double parseD( String s ) {
+    private static double parseD( Fields f, int i ) {
         try {
-            return Double.parseDouble( s );
+            return f.num( i );
         }
         catch( Throwable t ) {
             return -1;
@@ -1,11 +1,13 @@
 package de.pmneo.kstars.utils;
 
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.imageio.ImageIO;
 
@@ -22,31 +24,97 @@ import nom.tam.fits.header.Standard;
  */
 public class FitsThumbnail {
 
+    /** Physical pixel values (BZERO/BSCALE applied) of a frame, row y counted from the file's first row. */
+    private abstract static class Source {
+        abstract int width();
+        abstract int height();
+        abstract int bitpix();
+        abstract double get( int y, int x );
+        abstract void readColumns( int y, int[] xs, double[] out );
+        /** Heap it holds — what FRAMES budgets by. */
+        abstract long bytes();
+        /** The mapping behind it, null for the nom-tam-fits fallback. */
+        abstract MappedFits mapped();
+
+        private double[] range;
+
+        /** normalizationRange(), once per frame — a float frame's sampled min/max would
+         *  otherwise be scanned again for every one of its deep-zoom tiles. */
+        synchronized double[] range() {
+            if( range == null ) {
+                range = normalizationRange( this );
+            }
+            return range;
+        }
+    }
+
+    /** A memory-mapped frame holds no pixel heap at all, its pages are the OS' page cache — it's
+     *  FRAMES' entry limit that keeps the number of mappings bounded. */
+    private static final long MAPPED_SOURCE_WEIGHT = 1024 * 1024;
+
+    /** Mappings are only released by the GC, and each pins its file's blocks even once the file
+     *  is deleted or moved — a screenful of the image strip plus the viewer, not a thousand. */
+    private static final int MAX_FRAMES = 32;
+
+    private static Source mapped( MappedFits fits ) {
+        return new Source() {
+            @Override int width() { return fits.width; }
+            @Override int height() { return fits.height; }
+            @Override int bitpix() { return fits.bitpix; }
+            @Override double get( int y, int x ) { return fits.get( y, x ); }
+            @Override void readColumns( int y, int[] xs, double[] out ) { fits.readColumns( y, xs, out ); }
+            @Override long bytes() { return MAPPED_SOURCE_WEIGHT; }
+            @Override MappedFits mapped() { return fits; }
+        };
+    }
+
     private interface ValueAt {
         double get( int y, int x );
     }
 
-    private static class Image {
-        final ValueAt valueAt;
-        final int width;
-        final int height;
-        final double normMin;
-        final double normMax;
+    /** nom-tam-fits' fully decoded kernel — only for what MappedFits doesn't read. */
+    private static Source kernel( ValueAt valueAt, int width, int height, int bitpix, int bytesPerPixel ) {
+        return new Source() {
+            @Override int width() { return width; }
+            @Override int height() { return height; }
+            @Override int bitpix() { return bitpix; }
+            @Override double get( int y, int x ) { return valueAt.get( y, x ); }
+            @Override void readColumns( int y, int[] xs, double[] out ) {
+                for( int i = 0; i < xs.length; i++ ) {
+                    out[i] = valueAt.get( y, xs[i] );
+                }
+            }
+            @Override long bytes() { return (long) width * height * bytesPerPixel + 16L * height; }
+            @Override MappedFits mapped() { return null; }
+        };
+    }
 
-        Image( ValueAt valueAt, int width, int height, double normMin, double normMax ) {
-            this.valueAt = valueAt;
-            this.width = width;
-            this.height = height;
-            this.normMin = normMin;
-            this.normMax = normMax;
-        }
+    /**
+     * Frames shared by render() and computeAutoStretch() — the image strip asks for a new
+     * frame's auto-stretch and then its thumbnail. Keyed by path+mtime, so a rewritten file is
+     * opened again; concurrent requests for the same frame share one open/decode. A quarter of
+     * the heap at most, 1 GB on a big one — only the nom-tam-fits fallback actually holds
+     * decoded pixels (a 60 MP frame is 120 MB of short[][]) — and MAX_FRAMES frames.
+     */
+    private static final MemoryBudgetCache<Source> FRAMES = new MemoryBudgetCache<>(
+        Math.min( 1024L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4 ), MAX_FRAMES, Source::bytes );
 
-        double normalized( int y, int x ) {
-            return clamp( (valueAt.get( y, x ) - normMin) / (normMax - normMin), 0, 1 );
-        }
+    private static Source frame( File fitsFile ) throws Exception {
+        return FRAMES.get( fitsFile.getAbsolutePath() + "_" + fitsFile.lastModified(), () -> open( fitsFile ) );
+    }
+
+    /** Hit/miss/eviction counters of the decoded-frame cache. */
+    public static Map<String,Object> frameCacheStats() {
+        return FRAMES.stats();
     }
 
-    private static Image load( File fitsFile ) throws Exception {
+    /** Memory-mapped whenever possible (see MappedFits), nom-tam-fits otherwise. */
+    private static Source open( File fitsFile ) throws Exception {
+        MappedFits mapped = MappedFits.open( fitsFile );
+        if( mapped != null ) {
+            return mapped( mapped );
+        }
+
         try( Fits fits = new Fits( fitsFile ) ) {
             BasicHDU<?> hdu = fits.getHDU( 0 );
             if( !(hdu instanceof ImageHDU) ) {
@@ -56,37 +124,27 @@ public class FitsThumbnail {
             Object kernel = ((ImageHDU) hdu).getKernel();
             final double bzero = hdu.getHeader().getDoubleValue( Standard.BZERO, 0.0 );
             final double bscale = hdu.getHeader().getDoubleValue( Standard.BSCALE, 1.0 );
-
-            int height;
-            int width;
-            ValueAt valueAt;
+            int bitpix = hdu.getBitpix().getHeaderValue();
 
             if( kernel instanceof short[][] ) {
                 short[][] arr = (short[][]) kernel;
-                height = arr.length; width = arr[0].length;
-                valueAt = (y, x) -> arr[y][x] * bscale + bzero;
+                return kernel( (y, x) -> arr[y][x] * bscale + bzero, arr[0].length, arr.length, bitpix, 2 );
             }
             else if( kernel instanceof int[][] ) {
                 int[][] arr = (int[][]) kernel;
-                height = arr.length; width = arr[0].length;
-                valueAt = (y, x) -> arr[y][x] * bscale + bzero;
+                return kernel( (y, x) -> arr[y][x] * bscale + bzero, arr[0].length, arr.length, bitpix, 4 );
             }
             else if( kernel instanceof float[][] ) {
                 float[][] arr = (float[][]) kernel;
-                height = arr.length; width = arr[0].length;
-                valueAt = (y, x) -> arr[y][x] * bscale + bzero;
+                return kernel( (y, x) -> arr[y][x] * bscale + bzero, arr[0].length, arr.length, bitpix, 4 );
             }
             else if( kernel instanceof double[][] ) {
                 double[][] arr = (double[][]) kernel;
-                height = arr.length; width = arr[0].length;
-                valueAt = (y, x) -> arr[y][x] * bscale + bzero;
+                return kernel( (y, x) -> arr[y][x] * bscale + bzero, arr[0].length, arr.length, bitpix, 8 );
             }
             else {
                 throw new IllegalArgumentException( "Unsupported FITS pixel type: " + kernel.getClass() );
             }
-
-            double[] range = normalizationRange( hdu.getBitpix().getHeaderValue(), valueAt, width, height );
-            return new Image( valueAt, width, height, range[0], range[1] );
         }
     }
 
@@ -95,18 +153,18 @@ public class FitsThumbnail {
      * PixInsight's convention for integer images) — floating point data has no fixed depth,
      * so its actual sampled min/max is used instead.
      */
-    private static double[] normalizationRange( int bitpix, ValueAt valueAt, int width, int height ) {
-        switch( bitpix ) {
+    private static double[] normalizationRange( Source src ) {
+        switch( src.bitpix() ) {
             case 8:  return new double[]{ 0, 255 };
             case 16: return new double[]{ 0, 65535 };
             case 32: return new double[]{ 0, 4294967295.0 };
             default: {
                 double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
-                int strideX = Math.max( 1, width / 400 );
-                int strideY = Math.max( 1, height / 400 );
-                for( int y = 0; y < height; y += strideY ) {
-                    for( int x = 0; x < width; x += strideX ) {
-                        double v = valueAt.get( y, x );
+                int strideX = Math.max( 1, src.width() / 400 );
+                int strideY = Math.max( 1, src.height() / 400 );
+                for( int y = 0; y < src.height(); y += strideY ) {
+                    for( int x = 0; x < src.width(); x += strideX ) {
+                        double v = src.get( y, x );
                         if( v < min ) min = v;
                         if( v > max ) max = v;
                     }
@@ -116,70 +174,491 @@ public class FitsThumbnail {
         }
     }
 
-    private static List<Double> sampleNormalized( Image img ) {
-        int strideX = Math.max( 1, img.width / 400 );
-        int strideY = Math.max( 1, img.height / 400 );
+    private static double normalize( double v, double[] range ) {
+        return clamp( (v - range[0]) / (range[1] - range[0]), 0, 1 );
+    }
+
+    /** With allPixels, frames that don't go into a histogram (anything but 16-bit) are still
+     *  strided down to about this many samples — those are held as one double each. */
+    private static final int MAX_ARRAY_SAMPLES = 4 * 1024 * 1024;
+
+    /**
+     * Statistics of the frame's normalized values, see FrameStatistics — over point samples on a
+     * ~400x400 grid, or with allPixels over every pixel. 16-bit frames are counted into a
+     * 65,536-bin histogram straight from the mapping's rows (exact median/MAD, and all pixels of
+     * a 60 MP frame cost one pass); anything else is collected into a double[], leaving out
+     * non-finite (blank) pixels.
+     */
+    public static FrameStatistics statistics( File fitsFile, boolean allPixels ) throws Exception {
+        Source src = frame( fitsFile );
+        double[] range = src.range();
+        int width = src.width();
+        int height = src.height();
+
+        MappedFits fits = src.mapped();
+        boolean histogram = fits != null && fits.bitpix == 16 && fits.bscale > 0;
+
+        int strideX = Math.max( 1, width / 400 );
+        int strideY = Math.max( 1, height / 400 );
+        if( allPixels ) {
+            strideX = 1;
+            strideY = 1;
+            if( !histogram && (long) width * height > MAX_ARRAY_SAMPLES ) {
+                strideX = (int) Math.ceil( Math.sqrt( (double) width * height / MAX_ARRAY_SAMPLES ) );
+                strideY = strideX;
+            }
+        }
+
+        if( histogram ) {
+            long[] counts = new long[ 65536 ];
+            short[] row = new short[ width ];
+            for( int y = 0; y < height; y += strideY ) {
+                fits.readRow( y, row );
+                for( int x = 0; x < width; x += strideX ) {
+                    counts[ row[x] + 32768 ]++;
+                }
+            }
+            double[] binValue = new double[ 65536 ];
+            for( int i = 0; i < binValue.length; i++ ) {
+                binValue[i] = normalize( (i - 32768) * fits.bscale + fits.bzero, range );
+            }
+            return FrameStatistics.ofHistogram( counts, binValue );
+        }
+
+        double[] values = new double[ ((height + strideY - 1) / strideY) * ((width + strideX - 1) / strideX) ];
+        int n = 0;
+        for( int y = 0; y < height; y += strideY ) {
+            for( int x = 0; x < width; x += strideX ) {
+                double v = src.get( y, x );
+                // a float frame's blank (NaN) pixels aren't values — one in the array would make
+                // a quickselect pivot nothing compares against
+                if( Double.isFinite( v ) ) {
+                    values[ n++ ] = normalize( v, range );
+                }
+            }
+        }
+        return FrameStatistics.of( values, n );
+    }
+
+    /** At most this many source rows, and as many columns, are averaged per output pixel. */
+    private static final int MAX_BOX_SAMPLES = 4;
+
+    /**
+     * Which source pixels each output pixel averages.
+     *
+     * Box-average the source pixels a thumbnail's output pixel covers (in linear, pre-stretch
+     * space) instead of picking one nearest source pixel — nearest-neighbor downscaling of a
+     * 6000px+ FITS to a ~200px thumbnail looks noisy/aliased; averaging first and stretching
+     * once is correct (MTF is nonlinear, so it must run after the average, not before).
+     *
+     * A 320px thumbnail of a 6000x4000 frame has ~19x19 source pixels per box, though, and
+     * averaging all of them means touching every byte of the file — instead up to
+     * MAX_BOX_SAMPLES x MAX_BOX_SAMPLES pixels spread evenly over each box are averaged, so only
+     * those rows' pages and those columns' bytes are ever read. At full resolution (scale == 1)
+     * the box is always exactly 1x1.
+     */
+    private static class Geometry {
+        final int width;
+        final int height;
+        final double scale;
+        final int outW;
+        final int outH;
+        /** Where this output starts within the whole frame scaled by scale — non-zero for a
+         *  deep-zoom tile, which is just a window into that. */
+        final int x0;
+        final int y0;
+        /** the sampled columns of every output column, flattened: output column ox averages
+         *  xs[ colStart[ox] .. colStart[ox+1] ) */
+        final int[] colStart;
+        final int[] xs;
+
+        /** The whole frame, fit into maxDim. */
+        Geometry( int width, int height, int maxDim ) {
+            this( width, height, Math.min( 1.0, (double) maxDim / Math.max( width, height ) ), 0, 0, -1, -1 );
+        }
+
+        /** outW/outH of -1: the whole frame at that scale. */
+        Geometry( int width, int height, double scale, int x0, int y0, int outW, int outH ) {
+            this.width = width;
+            this.height = height;
+            this.scale = scale;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.outW = outW >= 0 ? outW : Math.max( 1, Math.round( (float) (width * scale) ) );
+            this.outH = outH >= 0 ? outH : Math.max( 1, Math.round( (float) (height * scale) ) );
+
+            colStart = new int[ this.outW + 1 ];
+            int[] cols = new int[ this.outW * MAX_BOX_SAMPLES ];
+            int n = 0;
+            for( int ox = 0; ox < this.outW; ox++ ) {
+                int sx0 = Math.min( width - 1, (int) ((x0 + ox) / scale) );
+                int sx1 = Math.min( width, Math.max( sx0 + 1, (int) ((x0 + ox + 1) / scale) ) );
+                colStart[ox] = n;
+                n = spread( sx0, sx1, cols, n );
+            }
+            colStart[this.outW] = n;
+            xs = Arrays.copyOf( cols, n );
+        }
+
+        /** The source rows output row oy averages, into ys. Returns how many. */
+        int rows( int oy, int[] ys ) {
+            int sy0 = Math.min( height - 1, (int) ((y0 + oy) / scale) );
+            int sy1 = Math.min( height, Math.max( sy0 + 1, (int) ((y0 + oy + 1) / scale) ) );
+            return spread( sy0, sy1, ys, 0 );
+        }
+
+        /** One source pixel per output pixel: output (ox, oy) is source (x0 + ox, y0 + oy). */
+        boolean identity() {
+            return scale == 1;
+        }
+    }
+
+    /** Up to MAX_BOX_SAMPLES indexes spread evenly over [from, to), into out starting at pos.
+     *  Returns the position after the last one written. */
+    private static int spread( int from, int to, int[] out, int pos ) {
+        int span = to - from;
+        int count = Math.min( MAX_BOX_SAMPLES, span );
+        for( int i = 0; i < count; i++ ) {
+            out[ pos++ ] = from + (int) ((i + 0.5) * span / count);
+        }
+        return pos;
+    }
+
+    /** Output rows [from, to) of one render. */
+    private interface RowKernel {
+        void rows( int from, int to );
+    }
+
+    /** Renders of at least this many output pixels are split into row ranges across RENDER_POOL. */
+    private static final int PARALLEL_MIN_PIXELS = 512 * 512;
+    private static final ForkJoinPool RENDER_POOL = new ForkJoinPool( Runtime.getRuntime().availableProcessors() );
+
+    private static void runRows( Geometry g, RowKernel kernel ) {
+        if( (long) g.outW * g.outH < PARALLEL_MIN_PIXELS ) {
+            kernel.rows( 0, g.outH );
+            return;
+        }
+        int grain = Math.max( 16, g.outH / ( 4 * RENDER_POOL.getParallelism() ) );
+        RENDER_POOL.invoke( new RowsTask( kernel, 0, g.outH, grain ) );
+    }
+
+    private static class RowsTask extends RecursiveAction {
+        private final RowKernel kernel;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        RowsTask( RowKernel kernel, int from, int to, int grain ) {
+            this.kernel = kernel;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if( to - from <= grain ) {
+                kernel.rows( from, to );
+                return;
+            }
+            int mid = ( from + to ) >>> 1;
+            invokeAll( new RowsTask( kernel, from, mid, grain ), new RowsTask( kernel, mid, to, grain ) );
+        }
+    }
+
+    private static int stretch( double normalized, double s, double m, double h ) {
+        return (int) Math.round( 255 * mtf( m, clamp( (normalized - s) / (h - s), 0, 1 ) ) );
+    }
+
+    /**
+     * The kernels below don't produce gray values, they produce one 16-bit level per output
+     * pixel, a row at a time — the raw value + 32768 for a 16-bit frame (levels16()), the
+     * normalized value quantized to 16 bits for anything else (levelsGeneric()). What a level
+     * turns into is up to the sink: render() looks it up in a stretch table, preview() in a
+     * normalization table.
+     */
+    private interface RowSink {
+        void row( int oy, char[] levels );
+    }
+
+    /** Whether the levels of this frame are raw 16-bit values (see RowSink). */
+    private static boolean rawLevels( Source src ) {
+        MappedFits fits = src.mapped();
+        return fits != null && fits.bitpix == 16;
+    }
+
+    private static void levels( Source src, double[] range, Geometry g, RowSink sink ) {
+        if( rawLevels( src ) ) {
+            runRows( g, ( from, to ) -> levels16( src.mapped(), g, sink, from, to ) );
+        }
+        else {
+            runRows( g, ( from, to ) -> levelsGeneric( src, range, g, sink, from, to ) );
+        }
+    }
+
+    /**
+     * Gray value of every possible raw 16-bit pixel — BZERO/BSCALE, normalization, the
+     * shadows/highlights clip and the MTF folded into one 64 KB table, built once per render
+     * (65,536 MTF evaluations instead of one per output pixel). Indexed by raw + 32768.
+     */
+    private static byte[] lut16( MappedFits fits, double[] range, double s, double m, double h ) {
+        byte[] lut = new byte[ 65536 ];
+        for( int i = 0; i < lut.length; i++ ) {
+            lut[i] = (byte) stretch( normalize( (i - 32768) * fits.bscale + fits.bzero, range ), s, m, h );
+        }
+        return lut;
+    }
+
+    /** Same for any other pixel type, over the normalized value quantized to 16 bits. */
+    private static byte[] normalizedLut( double s, double m, double h ) {
+        byte[] lut = new byte[ 65536 ];
+        for( int i = 0; i < lut.length; i++ ) {
+            lut[i] = (byte) stretch( i / 65535.0, s, m, h );
+        }
+        return lut;
+    }
+
+    /**
+     * 16-bit frames straight off the mapping: whole rows bulk-read into a short[], box sums in
+     * integer math. Averaging raw instead of normalized values is the same thing, normalization
+     * is linear (only the clip at the range's ends isn't, and 16-bit data never leaves its range).
+     */
+    private static void levels16( MappedFits fits, Geometry g, RowSink sink, int from, int to ) {
+        short[] row = new short[ g.width ];
+        int[] ys = new int[ MAX_BOX_SAMPLES ];
+        long[] sums = new long[ g.outW ];
+        char[] levels = new char[ g.outW ];
+        boolean identity = g.identity();
+        int[] colStart = g.colStart;
+        int[] xs = g.xs;
+
+        for( int oy = from; oy < to; oy++ ) {
+            if( identity ) {
+                fits.readRow( g.y0 + oy, row );
+                for( int x = 0; x < g.outW; x++ ) {
+                    levels[x] = (char) ( row[ g.x0 + x ] + 32768 );
+                }
+                sink.row( oy, levels );
+                continue;
+            }
+
+            int rows = g.rows( oy, ys );
+            Arrays.fill( sums, 0 );
+            for( int r = 0; r < rows; r++ ) {
+                fits.readRow( ys[r], row );
+                for( int ox = 0; ox < g.outW; ox++ ) {
+                    long sum = 0;
+                    for( int i = colStart[ox]; i < colStart[ox + 1]; i++ ) {
+                        sum += row[ xs[i] ];
+                    }
+                    sums[ox] += sum;
+                }
+            }
+            for( int ox = 0; ox < g.outW; ox++ ) {
+                long count = (long) rows * ( colStart[ox + 1] - colStart[ox] );
+                long avg = Math.floorDiv( 2 * sums[ox] + count, 2 * count );
+                levels[ox] = (char) ( avg + 32768 );
+            }
+            sink.row( oy, levels );
+        }
+    }
+
+    /** Every other pixel type (and the nom-tam-fits fallback): the sampled columns' physical
+     *  values, normalized and averaged in double, quantized to 16 bits. */
+    private static void levelsGeneric( Source src, double[] range, Geometry g, RowSink sink, int from, int to ) {
+        int[] ys = new int[ MAX_BOX_SAMPLES ];
+        int[] colStart = g.colStart;
+        double[] values = new double[ g.xs.length ];
+        double[] sums = new double[ g.outW ];
+        char[] levels = new char[ g.outW ];
+        double offset = -range[0];
+        double factor = 1 / ( range[1] - range[0] );
 
-        List<Double> samples = new ArrayList<>();
-        for( int y = 0; y < img.height; y += strideY ) {
-            for( int x = 0; x < img.width; x += strideX ) {
-                samples.add( img.normalized( y, x ) );
+        for( int oy = from; oy < to; oy++ ) {
+            int rows = g.rows( oy, ys );
+            Arrays.fill( sums, 0 );
+            for( int r = 0; r < rows; r++ ) {
+                src.readColumns( ys[r], g.xs, values );
+                for( int ox = 0; ox < g.outW; ox++ ) {
+                    double sum = 0;
+                    for( int i = colStart[ox]; i < colStart[ox + 1]; i++ ) {
+                        double v = ( values[i] + offset ) * factor;
+                        sum += v < 0 ? 0 : v > 1 ? 1 : v;
+                    }
+                    sums[ox] += sum;
+                }
+            }
+
+            for( int ox = 0; ox < g.outW; ox++ ) {
+                double avg = sums[ox] / ( rows * ( colStart[ox + 1] - colStart[ox] ) );
+                levels[ox] = (char) ( avg * 65535 + 0.5 );
             }
+            sink.row( oy, levels );
         }
-        Collections.sort( samples );
-        return samples;
     }
 
     /** shadows/midtones/highlights are all in [0,1] — exactly PixInsight's ScreenTransferFunction sliders. */
     public static byte[] render( File fitsFile, int maxDim, double shadows, double midtones, double highlights ) throws Exception {
-        Image img = load( fitsFile );
+        return jpeg( renderGray( fitsFile, maxDim, shadows, midtones, highlights ) );
+    }
+
+    /** render() before the JPEG encode — for whoever composes several into one image (ThumbnailSprite). */
+    public static BufferedImage renderGray( File fitsFile, int maxDim, double shadows, double midtones, double highlights ) throws Exception {
+        Source src = frame( fitsFile );
+        return gray( src, new Geometry( src.width(), src.height(), maxDim ), shadows, midtones, highlights );
+    }
+
+    /** The encode render() ends with. */
+    public static byte[] jpeg( BufferedImage image ) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write( image, "jpg", bytes );
+        return bytes.toByteArray();
+    }
+
+    private static BufferedImage gray( Source src, Geometry g, double shadows, double midtones, double highlights ) throws Exception {
+        double[] range = src.range();
 
         double s = clamp( shadows, 0, 1 );
         double h = Math.max( s + 1e-6, clamp( highlights, 0, 1 ) );
         double m = clamp( midtones, 0.00001, 0.99999 );
 
-        double scale = Math.min( 1.0, (double) maxDim / Math.max( img.width, img.height ) );
-        int outW = Math.max( 1, Math.round( (float) (img.width * scale) ) );
-        int outH = Math.max( 1, Math.round( (float) (img.height * scale) ) );
-
-        BufferedImage out = new BufferedImage( outW, outH, BufferedImage.TYPE_BYTE_GRAY );
+        BufferedImage out = new BufferedImage( g.outW, g.outH, BufferedImage.TYPE_BYTE_GRAY );
         // Writing via setRGB() on a TYPE_BYTE_GRAY image runs the packed sRGB value through
-        // that image's (linear) gray ColorSpace, silently darkening it even though R=G=B —
-        // setSample() on the raster writes the byte value directly, no color conversion.
-        java.awt.image.WritableRaster raster = out.getRaster();
-        for( int oy = 0; oy < outH; oy++ ) {
-            int sy0 = (int) (oy / scale);
-            int sy1 = Math.min( img.height, Math.max( sy0 + 1, (int) ((oy + 1) / scale) ) );
-            for( int ox = 0; ox < outW; ox++ ) {
-                int sx0 = (int) (ox / scale);
-                int sx1 = Math.min( img.width, Math.max( sx0 + 1, (int) ((ox + 1) / scale) ) );
-
-                // Box-average the source pixels a thumbnail's output pixel covers (in linear,
-                // pre-stretch space) instead of picking one nearest source pixel — nearest-
-                // neighbor downscaling of a 6000px+ FITS to a ~200px thumbnail looks noisy/
-                // aliased; averaging first and stretching once is both correct (MTF is
-                // nonlinear, so it must run after the average, not before) and cheap, since at
-                // full resolution (scale == 1) the box is always exactly 1x1 — unchanged cost.
-                double sum = 0;
-                int count = 0;
-                for( int sy = sy0; sy < sy1; sy++ ) {
-                    for( int sx = sx0; sx < sx1; sx++ ) {
-                        sum += img.normalized( sy, sx );
-                        count++;
-                    }
-                }
-                double avgNorm = count > 0 ? sum / count
-                        : img.normalized( Math.min( img.height - 1, sy0 ), Math.min( img.width - 1, sx0 ) );
+        // that image's (linear) gray ColorSpace, silently darkening it even though R=G=B — the
+        // gray values go straight into the raster's backing byte[] instead, no color conversion.
+        byte[] gray = ((DataBufferByte) out.getRaster().getDataBuffer()).getData();
+
+        byte[] lut = rawLevels( src ) ? lut16( src.mapped(), range, s, m, h ) : normalizedLut( s, m, h );
+        levels( src, range, g, ( oy, levels ) -> {
+            int base = oy * g.outW;
+            for( int x = 0; x < levels.length; x++ ) {
+                gray[ base + x ] = lut[ levels[x] ];
+            }
+        } );
+        return out;
+    }
+
+    public static final int TILE_SIZE = 256;
+
+    /**
+     * A frame's deep-zoom pyramid, Deep Zoom Image numbering: level maxLevel is full resolution,
+     * every level below halves it (rounding up), down to 1x1 at level 0. Each level is cut into
+     * TILE_SIZE tiles from the top left, the last row/column of tiles smaller.
+     */
+    public static class Pyramid {
+        public final int width;
+        public final int height;
+        public final int tileSize = TILE_SIZE;
+        public final int maxLevel;
+
+        Pyramid( int width, int height ) {
+            this.width = width;
+            this.height = height;
+            this.maxLevel = 32 - Integer.numberOfLeadingZeros( Math.max( width, height ) - 1 );
+        }
+
+        int factor( int level ) {
+            return 1 << ( maxLevel - level );
+        }
+
+        public int levelWidth( int level ) {
+            return ( width + factor( level ) - 1 ) / factor( level );
+        }
+
+        public int levelHeight( int level ) {
+            return ( height + factor( level ) - 1 ) / factor( level );
+        }
+    }
+
+    public static Pyramid pyramid( File fitsFile ) throws Exception {
+        Source src = frame( fitsFile );
+        return new Pyramid( src.width(), src.height() );
+    }
+
+    /**
+     * One TILE_SIZE tile of the pyramid, stretched like render() — null if there's no such tile.
+     * Rendered straight from the shared frame (FRAMES), box-averaged over the source pixels it
+     * covers, so a tile costs its own pixels' rows and nothing else; at maxLevel it's a plain
+     * copy of a 256x256 window.
+     */
+    public static byte[] renderTile( File fitsFile, int level, int tx, int ty, double shadows, double midtones, double highlights ) throws Exception {
+        Source src = frame( fitsFile );
+        Pyramid pyramid = new Pyramid( src.width(), src.height() );
+        if( level < 0 || level > pyramid.maxLevel || tx < 0 || ty < 0 ) {
+            return null;
+        }
+        int x0 = tx * TILE_SIZE;
+        int y0 = ty * TILE_SIZE;
+        int levelW = pyramid.levelWidth( level );
+        int levelH = pyramid.levelHeight( level );
+        if( x0 >= levelW || y0 >= levelH ) {
+            return null;
+        }
 
-                double t = clamp( (avgNorm - s) / (h - s), 0, 1 );
-                int gray = (int) Math.round( 255 * mtf( m, t ) );
-                raster.setSample( ox, oy, 0, gray );
+        Geometry g = new Geometry( src.width(), src.height(), 1.0 / pyramid.factor( level ), x0, y0,
+            Math.min( TILE_SIZE, levelW - x0 ), Math.min( TILE_SIZE, levelH - y0 ) );
+        return jpeg( gray( src, g, shadows, midtones, highlights ) );
+    }
+
+    /**
+     * A frame downsampled (box-averaged exactly like render()) but not stretched: every pixel's
+     * normalized value in [0,1] as a 16-bit level, 65535 = 1. Enough for the browser to apply
+     * any STF itself with the same MTF — the same 16-bit quantization render() works on, so the
+     * result matches a server-side render of the same size.
+     */
+    public static class Preview {
+        public final int width;
+        public final int height;
+        public final int sourceWidth;
+        public final int sourceHeight;
+        /** row-major, width * height */
+        public final char[] levels;
+
+        Preview( int width, int height, int sourceWidth, int sourceHeight, char[] levels ) {
+            this.width = width;
+            this.height = height;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.levels = levels;
+        }
+
+        /** Pixel counts over `bins` equal-width bins of [0,1]. */
+        public long[] histogram( int bins ) {
+            long[] counts = new long[ bins ];
+            for( char level : levels ) {
+                counts[ level * bins / 65536 ]++;
             }
+            return counts;
         }
+    }
 
-        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-        ImageIO.write( out, "jpg", bytes );
-        return bytes.toByteArray();
+    public static Preview preview( File fitsFile, int maxDim ) throws Exception {
+        Source src = frame( fitsFile );
+        double[] range = src.range();
+        Geometry g = new Geometry( src.width(), src.height(), maxDim );
+
+        char[] table = null;
+        if( rawLevels( src ) ) {
+            MappedFits fits = src.mapped();
+            table = new char[ 65536 ];
+            for( int i = 0; i < table.length; i++ ) {
+                table[i] = (char) Math.round( normalize( (i - 32768) * fits.bscale + fits.bzero, range ) * 65535 );
+            }
+        }
+
+        char[] out = new char[ g.outW * g.outH ];
+        char[] normalized = table;
+        levels( src, range, g, ( oy, levels ) -> {
+            int base = oy * g.outW;
+            if( normalized == null ) {
+                System.arraycopy( levels, 0, out, base, levels.length );
+                return;
+            }
+            for( int x = 0; x < levels.length; x++ ) {
+                out[ base + x ] = normalized[ levels[x] ];
+            }
+        } );
+        return new Preview( g.outW, g.outH, src.width(), src.height(), out );
     }
 
     /**
@@ -206,18 +685,17 @@ public class FitsThumbnail {
      * matched to 5 significant figures on both derived values.
      */
     public static double[] computeAutoStretch( File fitsFile, boolean strong ) throws Exception {
-        Image img = load( fitsFile );
-        List<Double> samples = sampleNormalized( img );
-
-        double median = samples.get( samples.size() / 2 );
+        return computeAutoStretch( fitsFile, strong, false );
+    }
 
-        List<Double> deviations = new ArrayList<>( samples.size() );
-        for( double v : samples ) {
-            deviations.add( Math.abs( v - median ) );
-        }
-        Collections.sort( deviations );
-        double mad = deviations.get( deviations.size() / 2 ) * 1.4826;
+    /** allPixels: median/MAD over the whole frame instead of a ~400x400 grid, see statistics(). */
+    public static double[] computeAutoStretch( File fitsFile, boolean strong, boolean allPixels ) throws Exception {
+        FrameStatistics stats = statistics( fitsFile, allPixels );
+        return autoStretch( stats.median(), stats.sigmaMad(), strong );
+    }
 
+    /** The AutoSTF formula above, from a median and MAD (already scaled to sigma) of normalized values. */
+    public static double[] autoStretch( double median, double mad, boolean strong ) {
         double shadowsClipping = strong ? -2.1 : -2.8;
         double targetBackground = strong ? 0.5 : 0.25;
 
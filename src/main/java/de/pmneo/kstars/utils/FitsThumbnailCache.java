@@ -1,9 +1,20 @@
 package de.pmneo.kstars.utils;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import de.pmneo.kstars.SimpleLogger;
 
@@ -15,53 +26,278 @@ import de.pmneo.kstars.SimpleLogger;
  * ImageServlet's own "is this filename something we actually captured" security check
  * (SessionHistory.resolveKnownCapturedFile) is a completely separate concern from actually
  * rendering the file it resolves to.
+ *
+ * Both caches are bounded and least-recently-used first out: the JPEGs (and the sprite cells'
+ * raw rasters, see renderCell) on disk by a byte budget (setMaxDiskBytes), tracked by an
+ * in-memory index that's rebuilt from the directory at startup — file mtimes double as the
+ * last-access time, so the order survives a restart; the auto-stretch results in memory by a
+ * MemoryBudgetCache.
+ *
+ * Stretch parameters are quantized before they become part of a key (see quantizeClip/
+ * quantizeMidtones) and the render uses the quantized values, so dragging an STF slider across
+ * values that look the same reuses one file instead of writing dozens. Auto-stretch results are
+ * handed out already quantized, so the thumbnail request the browser builds from them hits the
+ * same key as the pre-rendered one.
  */
 public class FitsThumbnailCache {
 
-    /** The result is a handful of doubles, so a plain in-memory map is enough — no need for the
-     *  disk cache renderThumbnail below uses. */
-    private final Map<String,double[]> autoStretchCache = new ConcurrentHashMap<>();
+    private static final long DEFAULT_MAX_DISK_BYTES = 512L * 1024 * 1024;
+
+    /** Three doubles plus the key and the map entry. */
+    private static final long AUTO_STRETCH_ENTRY_BYTES = 256;
+    private static final long AUTO_STRETCH_BUDGET_BYTES = 4L * 1024 * 1024;
+
+    /** The result is a handful of doubles, so memory is enough — no need for the disk cache
+     *  renderThumbnail below uses. Bounded all the same: one entry per frame ever looked at. */
+    private final MemoryBudgetCache<double[]> autoStretchCache = new MemoryBudgetCache<>( AUTO_STRETCH_BUDGET_BYTES, v -> AUTO_STRETCH_ENTRY_BYTES );
 
     /** Every thumbnail in the image strip auto-fetches its own auto-stretch, so the same
      *  file+strong combo gets requested repeatedly (re-renders, multiple tabs, polling). */
     public double[] computeAutoStretch( File fitsFile, boolean strong ) throws Exception {
-        String cacheKey = fitsFile.getAbsolutePath() + "_" + fitsFile.lastModified() + "_" + strong;
+        return computeAutoStretch( fitsFile, strong, false );
+    }
 
-        double[] cached = autoStretchCache.get( cacheKey );
-        if( cached != null ) {
-            return cached;
-        }
+    /** allPixels: see FitsThumbnail.statistics(). */
+    public double[] computeAutoStretch( File fitsFile, boolean strong, boolean allPixels ) throws Exception {
+        return autoStretchCache.get( autoStretchKey( fitsFile, strong, allPixels ), () -> {
+            double[] shmh = FitsThumbnail.computeAutoStretch( fitsFile, strong, allPixels );
+            return new double[]{ quantizeClip( shmh[0] ), quantizeMidtones( shmh[1] ), quantizeClip( shmh[2] ) };
+        } );
+    }
+
+    /** computeAutoStretch( fitsFile, strong ) if that's cached already, otherwise null. */
+    public double[] cachedAutoStretch( File fitsFile, boolean strong ) {
+        return autoStretchCache.peek( autoStretchKey( fitsFile, strong, false ) );
+    }
 
-        double[] shmh = FitsThumbnail.computeAutoStretch( fitsFile, strong );
-        autoStretchCache.put( cacheKey, shmh );
-        return shmh;
+    private static String autoStretchKey( File fitsFile, boolean strong, boolean allPixels ) {
+        return fitsFile.getAbsolutePath() + "_" + fitsFile.lastModified() + "_" + strong + ( allPixels ? "_all" : "" );
+    }
+
+    /** Shadows/highlights clip points on a 1e-4 grid — well below what the eye tells apart, and
+     *  below a typical light frame's background noise (~1e-3 normalized). */
+    static double quantizeClip( double v ) {
+        return Double.isFinite( v ) ? BigDecimal.valueOf( v ).setScale( 4, RoundingMode.HALF_UP ).doubleValue() : v;
+    }
+
+    /** Midtones to 3 significant digits — an auto-stretch lands anywhere down to ~0.005, where an
+     *  absolute grid would either be far too coarse or pointlessly fine at the top. */
+    static double quantizeMidtones( double v ) {
+        if( !Double.isFinite( v ) ) {
+            return v;
+        }
+        return v <= 0 ? 0 : new BigDecimal( v ).round( new MathContext( 3, RoundingMode.HALF_UP ) ).doubleValue();
     }
 
     private static final File THUMBNAIL_CACHE_DIR = new File( "./thumb-cache" );
 
+    private volatile long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+
+    /** cache file name -&gt; size, access-ordered: eldest is least recently used */
+    private final LinkedHashMap<String, Long> diskIndex = new LinkedHashMap<>( 256, 0.75f, true );
+    private long diskBytes = 0;
+    private boolean diskIndexLoaded = false;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public void setMaxDiskBytes( long maxDiskBytes ) {
+        this.maxDiskBytes = maxDiskBytes;
+        synchronized( this ) {
+            if( diskIndexLoaded ) {
+                evict();
+            }
+        }
+    }
+
     /** Serves a cached render if present, otherwise renders and caches one keyed by path+mtime+size+stretch. */
     public byte[] renderThumbnail( File fitsFile, int maxDim, double shadows, double midtones, double highlights ) throws Exception {
-        THUMBNAIL_CACHE_DIR.mkdirs();
+        double s = quantizeClip( shadows );
+        double m = quantizeMidtones( midtones );
+        double h = quantizeClip( highlights );
+
+        String cacheKey = fileKey( fitsFile ) + "_" + maxDim + "_" + s + "_" + m + "_" + h + ".jpg";
+        if( maxDim > MAX_CELL_DIM ) {
+            return cached( fitsFile, cacheKey, () -> FitsThumbnail.render( fitsFile, maxDim, s, m, h ) );
+        }
+        return cached( fitsFile, cacheKey, () -> FitsThumbnail.jpeg( renderCell( fitsFile, maxDim, s, m, h ) ) );
+    }
+
+    /** Largest thumbnail whose gray raster is kept as well — what the sprite sheet's cells go up to. */
+    public static final int MAX_CELL_DIM = 400;
+
+    /**
+     * A thumbnail before the JPEG encode (FitsThumbnail.renderGray), for composing several into
+     * one sprite sheet (ThumbnailSprite). Cached on disk as the raw raster next to the JPEGs, and
+     * written by renderThumbnail's own renders too — so the thumbnails the prerenderer made for
+     * the image strip are the sheet's cells as well, without decoding and re-encoding a JPEG.
+     */
+    public BufferedImage renderCell( File fitsFile, int maxDim, double shadows, double midtones, double highlights ) throws Exception {
+        double s = quantizeClip( shadows );
+        double m = quantizeMidtones( midtones );
+        double h = quantizeClip( highlights );
+
+        return fromRaster( cached( fitsFile, cellKey( fitsFile, maxDim, s, m, h ), () -> toRaster( FitsThumbnail.renderGray( fitsFile, maxDim, s, m, h ) ) ) );
+    }
+
+    /** renderCell() if that's on disk already, otherwise null — never renders. */
+    public BufferedImage cachedCell( File fitsFile, int maxDim, double shadows, double midtones, double highlights ) throws IOException {
+        String cacheKey = cellKey( fitsFile, maxDim, quantizeClip( shadows ), quantizeMidtones( midtones ), quantizeClip( highlights ) );
+        byte[] raster = readCached( cacheKey, new File( THUMBNAIL_CACHE_DIR, cacheKey ) );
+        return raster != null ? fromRaster( raster ) : null;
+    }
+
+    private static String cellKey( File fitsFile, int maxDim, double s, double m, double h ) {
+        return fileKey( fitsFile ) + "_" + maxDim + "_" + s + "_" + m + "_" + h + ".gray";
+    }
+
+    /** Width and height, then the TYPE_BYTE_GRAY raster's bytes as they are. */
+    private static byte[] toRaster( BufferedImage image ) {
+        byte[] gray = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        return ByteBuffer.allocate( 8 + gray.length ).putInt( image.getWidth() ).putInt( image.getHeight() ).put( gray ).array();
+    }
+
+    private static BufferedImage fromRaster( byte[] raster ) {
+        ByteBuffer buf = ByteBuffer.wrap( raster );
+        BufferedImage image = new BufferedImage( buf.getInt(), buf.getInt(), BufferedImage.TYPE_BYTE_GRAY );
+        buf.get( ((DataBufferByte) image.getRaster().getDataBuffer()).getData() );
+        return image;
+    }
+
+    /**
+     * A deep-zoom tile (see FitsThumbnail.renderTile), null if there's no such tile. Tiles share
+     * the thumbnails' directory and byte budget — every level of every frame someone zoomed
+     * into, least recently used first out like everything else in there.
+     */
+    public byte[] renderTile( File fitsFile, int level, int tx, int ty, double shadows, double midtones, double highlights ) throws Exception {
+        double s = quantizeClip( shadows );
+        double m = quantizeMidtones( midtones );
+        double h = quantizeClip( highlights );
+
+        String cacheKey = fileKey( fitsFile ) + "_tile_" + level + "_" + tx + "_" + ty + "_" + s + "_" + m + "_" + h + ".jpg";
+        return cached( fitsFile, cacheKey, () -> FitsThumbnail.renderTile( fitsFile, level, tx, ty, s, m, h ) );
+    }
+
+    private static String fileKey( File fitsFile ) {
+        return Integer.toHexString( fitsFile.getAbsolutePath().hashCode() ) + "_" + fitsFile.lastModified();
+    }
 
-        String cacheKey = Integer.toHexString( fitsFile.getAbsolutePath().hashCode() ) + "_" + fitsFile.lastModified()
-                + "_" + maxDim + "_" + shadows + "_" + midtones + "_" + highlights + ".jpg";
+    private interface Renderer {
+        byte[] render() throws Exception;
+    }
+
+    private byte[] cached( File fitsFile, String cacheKey, Renderer renderer ) throws Exception {
         File cacheFile = new File( THUMBNAIL_CACHE_DIR, cacheKey );
 
-        if( cacheFile.isFile() ) {
-            return Files.readAllBytes( cacheFile.toPath() );
+        byte[] hit = readCached( cacheKey, cacheFile );
+        if( hit != null ) {
+            return hit;
         }
 
-        byte[] jpeg = FitsThumbnail.render( fitsFile, maxDim, shadows, midtones, highlights );
+        byte[] jpeg = renderer.render();
+        if( jpeg == null ) {
+            return null;
+        }
 
         try {
-            Files.write( cacheFile.toPath(), jpeg );
+            File tmp = new File( THUMBNAIL_CACHE_DIR, cacheKey + "." + Thread.currentThread().getId() + ".tmp" );
+            Files.write( tmp.toPath(), jpeg );
+            Files.move( tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            synchronized( this ) {
+                Long previous = diskIndex.put( cacheKey, (long) jpeg.length );
+                diskBytes += jpeg.length - ( previous != null ? previous : 0 );
+                evict();
+            }
         }
         catch( Throwable t ) {
             // Not fatal — the caller still gets a correctly-rendered jpeg for this request, just
             // without it being cached to disk for next time.
-            SimpleLogger.getLogger().logError( "Failed to cache thumbnail for " + fitsFile, t );
+            SimpleLogger.getLogger().logError( "Failed to cache render of " + fitsFile, t );
         }
 
         return jpeg;
     }
+
+    private byte[] readCached( String cacheKey, File cacheFile ) throws IOException {
+        synchronized( this ) {
+            loadDiskIndex();
+            if( diskIndex.get( cacheKey ) == null ) {
+                misses++;
+                return null;
+            }
+        }
+
+        try {
+            byte[] jpeg = Files.readAllBytes( cacheFile.toPath() );
+            // the index order is rebuilt from mtimes at startup
+            cacheFile.setLastModified( System.currentTimeMillis() );
+            synchronized( this ) {
+                hits++;
+            }
+            return jpeg;
+        }
+        catch( IOException e ) {
+            // deleted behind our back — forget it and render again
+            synchronized( this ) {
+                Long size = diskIndex.remove( cacheKey );
+                if( size != null ) {
+                    diskBytes -= size;
+                }
+                misses++;
+            }
+            return null;
+        }
+    }
+
+    /** First use only: everything already in the directory, least recently used first. */
+    private void loadDiskIndex() throws IOException {
+        if( diskIndexLoaded ) {
+            return;
+        }
+        diskIndexLoaded = true;
+        Files.createDirectories( THUMBNAIL_CACHE_DIR.toPath() );
+
+        File[] files = THUMBNAIL_CACHE_DIR.listFiles();
+        if( files == null ) {
+            return;
+        }
+        Arrays.sort( files, Comparator.comparingLong( File::lastModified ) );
+        for( File f : files ) {
+            if( f.getName().endsWith( ".tmp" ) ) {
+                f.delete();
+                continue;
+            }
+            long size = f.length();
+            diskIndex.put( f.getName(), size );
+            diskBytes += size;
+        }
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> it = diskIndex.entrySet().iterator();
+        while( diskBytes > maxDiskBytes && it.hasNext() ) {
+            Map.Entry<String, Long> eldest = it.next();
+            new File( THUMBNAIL_CACHE_DIR, eldest.getKey() ).delete();
+            diskBytes -= eldest.getValue();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> disk = new LinkedHashMap<>();
+        disk.put( "files", diskIndex.size() );
+        disk.put( "bytes", diskBytes );
+        disk.put( "maxBytes", maxDiskBytes );
+        disk.put( "hits", hits );
+        disk.put( "misses", misses );
+        disk.put( "evictions", evictions );
+
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put( "thumbnails", disk );
+        res.put( "autoStretch", autoStretchCache.stats() );
+        return res;
+    }
 }
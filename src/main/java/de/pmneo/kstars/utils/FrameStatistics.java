@@ -0,0 +1,292 @@
+package de.pmneo.kstars.utils;
+
+import java.util.Arrays;
+
+/**
+ * Order statistics of a frame's pixel values — median, MAD, percentiles, mean and a clipped
+ * sigma — for the auto-stretch (see FitsThumbnail.computeAutoStretch) and whatever else ends
+ * up measuring frames.
+ *
+ * Two implementations behind the same methods:
+ * <ul>
+ * <li>{@link #ofHistogram} for integer data: a count per possible value (65,536 bins for 16-bit),
+ *     median and MAD come out exact in linear passes over the bins, no matter whether it
+ *     counted a 400x400 grid or all 60 million pixels.</li>
+ * <li>{@link #of} for anything else: a primitive array and quickselect, no boxing, no full sort.</li>
+ * </ul>
+ *
+ * percentile(p) is the value at index floor(p * count) of the sorted values — median() is
+ * the element at count / 2 (the upper one for an even count), the same pick the auto-stretch
+ * always made from its sorted sample list.
+ */
+public abstract class FrameStatistics {
+
+    /** MAD * 1.4826 estimates the standard deviation of normally distributed data. */
+    public static final double MAD_TO_SIGMA = 1.4826;
+
+    public abstract long count();
+
+    public abstract double mean();
+
+    /** p in [0,1] */
+    public abstract double percentile( double p );
+
+    public double median() {
+        return percentile( 0.5 );
+    }
+
+    /** Median absolute deviation from the median, unscaled. */
+    public abstract double mad();
+
+    /** mad() scaled to a standard deviation estimate. */
+    public double sigmaMad() {
+        return mad() * MAD_TO_SIGMA;
+    }
+
+    /** Standard deviation after iteratively rejecting values further than kappa sigmas from the
+     *  median — noise without the stars. */
+    public abstract double clippedSigma( double kappa, int iterations );
+
+    protected static long rank( double p, long count ) {
+        return Math.max( 0, Math.min( count - 1, (long) Math.floor( p * count ) ) );
+    }
+
+    /**
+     * @param counts   how many pixels fell into each bin
+     * @param binValue the value every bin stands for; must be non-decreasing with the bin index
+     *                 (e.g. a normalized, clamped raw value)
+     */
+    public static FrameStatistics ofHistogram( long[] counts, double[] binValue ) {
+        return new Histogram( counts, binValue );
+    }
+
+    /** Statistics over values[0..size) — the array is reordered in place. */
+    public static FrameStatistics of( double[] values, int size ) {
+        return new Values( values, size );
+    }
+
+    private static class Histogram extends FrameStatistics {
+        private final long[] counts;
+        private final double[] binValue;
+        private final long count;
+        private final double mean;
+
+        Histogram( long[] counts, double[] binValue ) {
+            this.counts = counts;
+            this.binValue = binValue;
+
+            long n = 0;
+            double sum = 0;
+            for( int b = 0; b < counts.length; b++ ) {
+                n += counts[b];
+                sum += counts[b] * binValue[b];
+            }
+            this.count = n;
+            this.mean = n > 0 ? sum / n : 0;
+        }
+
+        @Override
+        public long count() {
+            return count;
+        }
+
+        @Override
+        public double mean() {
+            return mean;
+        }
+
+        @Override
+        public double percentile( double p ) {
+            return count == 0 ? 0 : binValue[ bin( rank( p, count ) ) ];
+        }
+
+        /** Bin holding the k-th smallest value (0-based). */
+        private int bin( long k ) {
+            long seen = 0;
+            for( int b = 0; b < counts.length; b++ ) {
+                seen += counts[b];
+                if( seen > k ) {
+                    return b;
+                }
+            }
+            return counts.length - 1;
+        }
+
+        /** The deviations |v - median| grow moving away from the median's bin on either side,
+         *  so merging both sides outward visits them in sorted order. */
+        @Override
+        public double mad() {
+            if( count == 0 ) {
+                return 0;
+            }
+            int m = bin( rank( 0.5, count ) );
+            double median = binValue[m];
+            long k = rank( 0.5, count );
+
+            long seen = counts[m];
+            if( seen > k ) {
+                return 0;
+            }
+            int lo = m - 1;
+            int hi = m + 1;
+            while( true ) {
+                double dLo = lo >= 0 ? median - binValue[lo] : Double.MAX_VALUE;
+                double dHi = hi < counts.length ? binValue[hi] - median : Double.MAX_VALUE;
+                if( dLo <= dHi ) {
+                    seen += counts[lo--];
+                    if( seen > k ) {
+                        return dLo;
+                    }
+                }
+                else {
+                    seen += counts[hi++];
+                    if( seen > k ) {
+                        return dHi;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public double clippedSigma( double kappa, int iterations ) {
+            double center = median();
+            double sigma = Double.MAX_VALUE;
+            for( int i = 0; i <= iterations; i++ ) {
+                long n = 0;
+                double sum = 0;
+                double sumSq = 0;
+                for( int b = 0; b < counts.length; b++ ) {
+                    if( counts[b] == 0 || Math.abs( binValue[b] - center ) > kappa * sigma ) {
+                        continue;
+                    }
+                    n += counts[b];
+                    sum += counts[b] * binValue[b];
+                    sumSq += counts[b] * binValue[b] * binValue[b];
+                }
+                if( n < 2 ) {
+                    break;
+                }
+                double mean = sum / n;
+                sigma = Math.sqrt( Math.max( 0, sumSq / n - mean * mean ) );
+            }
+            return sigma == Double.MAX_VALUE ? 0 : sigma;
+        }
+    }
+
+    private static class Values extends FrameStatistics {
+        private final double[] values;
+        private final int size;
+        private final double mean;
+
+        Values( double[] values, int size ) {
+            this.values = values;
+            this.size = size;
+
+            double sum = 0;
+            for( int i = 0; i < size; i++ ) {
+                sum += values[i];
+            }
+            this.mean = size > 0 ? sum / size : 0;
+        }
+
+        @Override
+        public long count() {
+            return size;
+        }
+
+        @Override
+        public double mean() {
+            return mean;
+        }
+
+        @Override
+        public double percentile( double p ) {
+            return size == 0 ? 0 : select( values, size, (int) rank( p, size ) );
+        }
+
+        @Override
+        public double mad() {
+            if( size == 0 ) {
+                return 0;
+            }
+            double median = median();
+            double[] deviations = new double[ size ];
+            for( int i = 0; i < size; i++ ) {
+                deviations[i] = Math.abs( values[i] - median );
+            }
+            return select( deviations, size, (int) rank( 0.5, size ) );
+        }
+
+        @Override
+        public double clippedSigma( double kappa, int iterations ) {
+            double center = median();
+            double sigma = Double.MAX_VALUE;
+            for( int it = 0; it <= iterations; it++ ) {
+                long n = 0;
+                double sum = 0;
+                double sumSq = 0;
+                for( int i = 0; i < size; i++ ) {
+                    double v = values[i];
+                    if( Math.abs( v - center ) > kappa * sigma ) {
+                        continue;
+                    }
+                    n++;
+                    sum += v;
+                    sumSq += v * v;
+                }
+                if( n < 2 ) {
+                    break;
+                }
+                double mean = sum / n;
+                sigma = Math.sqrt( Math.max( 0, sumSq / n - mean * mean ) );
+            }
+            return sigma == Double.MAX_VALUE ? 0 : sigma;
+        }
+    }
+
+    /** k-th smallest of a[0..size), quickselect (Hoare partition, median-of-three pivot) —
+     *  partially reorders a. */
+    static double select( double[] a, int size, int k ) {
+        int lo = 0;
+        int hi = size - 1;
+        while( hi > lo ) {
+            if( hi - lo < 16 ) {
+                Arrays.sort( a, lo, hi + 1 );
+                return a[k];
+            }
+            int mid = ( lo + hi ) >>> 1;
+            double pivot = medianOf3( a[lo], a[mid], a[hi] );
+            int i = lo;
+            int j = hi;
+            while( i <= j ) {
+                while( a[i] < pivot ) {
+                    i++;
+                }
+                while( a[j] > pivot ) {
+                    j--;
+                }
+                if( i <= j ) {
+                    double t = a[i];
+                    a[i] = a[j];
+                    a[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if( k <= j ) {
+                hi = j;
+            }
+            else if( k >= i ) {
+                lo = i;
+            }
+            else {
+                return a[k];
+            }
+        }
+        return a[k];
+    }
+
+    private static double medianOf3( double a, double b, double c ) {
+        return Math.max( Math.min( a, b ), Math.min( Math.max( a, b ), c ) );
+    }
+}
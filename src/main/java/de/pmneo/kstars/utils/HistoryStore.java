@@ -0,0 +1,655 @@
+package de.pmneo.kstars.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.pmneo.kstars.SimpleLogger;
+
+/**
+ * SessionHistory's write-through archive: every guide sample, HFR sample and capture, kept for
+ * good on disk instead of just until the in-memory ring buffers evict it (or the next restart,
+ * after which only the latest Ekos analyze log can be replayed). Lets the history query browse
+ * weeks of guiding and focus data without any of it living on the heap.
+ *
+ * Layout: one directory per night (the local date the night started on — a night runs noon to
+ * noon, so it never splits at midnight), holding one append-only file of fixed-width records per
+ * kind plus a string dictionary:
+ * <pre>
+ *   &lt;root&gt;/2026-10-17/guide.bin     ts, ra, de                                  (24 bytes)
+ *                      hfr.bin       ts, train, position, hfr                    (24 bytes)
+ *                      capture.bin   ts, train, filename, target, filter, exposure, hfr,
+ *                                    eccentricity, median, snr, starCount, width, height, type (88 bytes)
+ *                      strings.txt   one dictionary entry per line, the record's int is its line
+ * </pre>
+ * Each .bin file starts with a 16 byte header (magic, record size, record count) and is memory
+ * mapped; an append is a handful of absolute puts into the mapping plus bumping the count, which
+ * is written last so a crash mid-append just loses that record. The mapping grows by doubling.
+ *
+ * Records within a file are in time order. An append up to REORDER_TOLERANCE_MILLIS older than
+ * the file's newest record — signals racing for the file (hfr.bin and capture.bin are shared by
+ * every train, and the ts is taken before the lock), or a small clock step — is kept, stamped
+ * with the newest record's ts. Anything older is dropped, counted (listNights) and logged the
+ * first time per file. That's also what keeps the startup analyze log replay (which re-records
+ * tonight's history, see SessionHistory.restoreFromAnalyzeLog) from duplicating what's already
+ * stored.
+ *
+ * Only the MAX_OPEN_NIGHTS most recently used nights stay open, so browsing weeks of history
+ * doesn't pile up mappings and dictionaries. A night that is only read is mapped READ_ONLY and
+ * its files are closed right after mapping; only a night that's been appended to keeps its
+ * channels (to grow the mapping) and dictionary writer open, until it's evicted.
+ */
+public class HistoryStore {
+
+    public static final String GUIDE = "guide";
+    public static final String HFR = "hfr";
+    public static final String CAPTURE = "capture";
+
+    private static final int MAGIC = 0x4b534853; // "KSHS"
+    private static final int HEADER = 16;
+    private static final int INITIAL_RECORDS = 4096;
+
+    /** Tonight, last night, plus whatever a history query is browsing right now. */
+    private static final int MAX_OPEN_NIGHTS = 8;
+
+    private static final int GUIDE_RECORD = 24;
+    private static final int HFR_RECORD = 24;
+    private static final int CAPTURE_RECORD = 88;
+
+    /** See the class comment — well above lock contention, well below a guide frame's cadence. */
+    private static final long REORDER_TOLERANCE_MILLIS = 2000;
+
+    /** A night starts at local noon — see the class comment. */
+    private static final long NIGHT_OFFSET_MILLIS = 12 * 60 * 60 * 1000L;
+
+    private final File root;
+
+    /** Access-ordered: eldest is least recently used. Guarded by itself. */
+    private final LinkedHashMap<LocalDate, Night> nights = new LinkedHashMap<>( 16, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<LocalDate, Night> eldest ) {
+            if( size() <= MAX_OPEN_NIGHTS ) {
+                return false;
+            }
+            eldest.getValue().close();
+            return true;
+        }
+    };
+
+    public HistoryStore( File root ) throws IOException {
+        this.root = root;
+        Files.createDirectories( root.toPath() );
+    }
+
+    /** Also what AnalyzeArchiveIndex groups its per-file summaries by. */
+    public static LocalDate nightOf( long ts ) {
+        return Instant.ofEpochMilli( ts - NIGHT_OFFSET_MILLIS ).atZone( ZoneId.systemDefault() ).toLocalDate();
+    }
+
+    public void appendGuide( long ts, double ra, double de ) throws IOException {
+        Segment s = night( nightOf( ts ), true ).segment( GUIDE, GUIDE_RECORD, true );
+        synchronized( s ) {
+            long at = s.admit( ts );
+            if( at == Segment.DROPPED ) {
+                return;
+            }
+            int off = s.beginAppend();
+            s.buf.putLong( off, at );
+            s.buf.putDouble( off + 8, ra );
+            s.buf.putDouble( off + 16, de );
+            s.commitAppend( at );
+        }
+    }
+
+    public void appendHfr( long ts, String train, double hfr, int position ) throws IOException {
+        Night n = night( nightOf( ts ), true );
+        Segment s = n.segment( HFR, HFR_RECORD, true );
+        synchronized( s ) {
+            long at = s.admit( ts );
+            if( at == Segment.DROPPED ) {
+                return;
+            }
+            int off = s.beginAppend();
+            s.buf.putLong( off, at );
+            s.buf.putInt( off + 8, n.intern( train ) );
+            s.buf.putInt( off + 12, position );
+            s.buf.putDouble( off + 16, hfr );
+            s.commitAppend( at );
+        }
+    }
+
+    public void appendCapture( long ts, String train, String filename, String target, String filter, double exposure,
+                               double hfr, double eccentricity, double median, double snr,
+                               int starCount, int width, int height, int type ) throws IOException {
+        Night n = night( nightOf( ts ), true );
+        Segment s = n.segment( CAPTURE, CAPTURE_RECORD, true );
+        synchronized( s ) {
+            long at = s.admit( ts );
+            if( at == Segment.DROPPED ) {
+                return;
+            }
+            int off = s.beginAppend();
+            s.buf.putLong( off, at );
+            s.buf.putInt( off + 8, n.intern( train ) );
+            s.buf.putInt( off + 12, n.intern( filename ) );
+            s.buf.putInt( off + 16, n.intern( target ) );
+            s.buf.putInt( off + 20, n.intern( filter ) );
+            s.buf.putDouble( off + 24, exposure );
+            s.buf.putDouble( off + 32, hfr );
+            s.buf.putDouble( off + 40, eccentricity );
+            s.buf.putDouble( off + 48, median );
+            s.buf.putDouble( off + 56, snr );
+            s.buf.putInt( off + 64, starCount );
+            s.buf.putInt( off + 68, width );
+            s.buf.putInt( off + 72, height );
+            s.buf.putInt( off + 76, type );
+            s.commitAppend( at );
+        }
+    }
+
+    /** Byte offset and reader of one value in a record — see series(). */
+    private interface Field {
+        double get( MappedByteBuffer buf, int off );
+    }
+
+    /** Guide RA or DEC ("ra"/"de") with fromTs &lt;= ts &lt; toTs, as a Downsampler slice. */
+    public Downsampler.Series guide( String axis, long fromTs, long toTs ) throws IOException {
+        int offset = "de".equals( axis ) ? 16 : 8;
+        return series( GUIDE, GUIDE_RECORD, null, fromTs, toTs, ( buf, off ) -> buf.getDouble( off + offset ) );
+    }
+
+    public Downsampler.Series hfr( String train, long fromTs, long toTs ) throws IOException {
+        return series( HFR, HFR_RECORD, train, fromTs, toTs, ( buf, off ) -> buf.getDouble( off + 16 ) );
+    }
+
+    /** One capture metric (as in SessionHistory.CAPTURE_METRICS) of a train, null for an unknown metric. */
+    public Downsampler.Series capture( String train, String metric, long fromTs, long toTs ) throws IOException {
+        Field field = switch( metric ) {
+            case "hfr" -> ( buf, off ) -> buf.getDouble( off + 32 );
+            case "eccentricity" -> ( buf, off ) -> buf.getDouble( off + 40 );
+            case "median" -> ( buf, off ) -> buf.getDouble( off + 48 );
+            case "snr" -> ( buf, off ) -> buf.getDouble( off + 56 );
+            case "starCount" -> ( buf, off ) -> buf.getInt( off + 64 );
+            default -> null;
+        };
+        return field == null ? null : series( CAPTURE, CAPTURE_RECORD, train, fromTs, toTs, field );
+    }
+
+    /** Stored captures with fromTs &lt;= ts &lt; toTs (of one train, or all if null), oldest first. */
+    public List<Map<String,Object>> captures( String train, long fromTs, long toTs, int limit ) throws IOException {
+        List<Map<String,Object>> res = new ArrayList<>();
+        for( LocalDate date : nightsBetween( fromTs, toTs ) ) {
+            Night n = night( date, false );
+            Segment s = n.segment( CAPTURE, CAPTURE_RECORD, false );
+            if( s == null ) {
+                continue;
+            }
+            int trainId = train == null ? -1 : n.lookup( train );
+            if( train != null && trainId < 0 ) {
+                continue;
+            }
+
+            long count = s.count;
+            MappedByteBuffer buf = s.buf;
+            for( long i = s.firstAtOrAfter( fromTs, count ); i < count && res.size() < limit; i++ ) {
+                int off = (int) (HEADER + i * CAPTURE_RECORD);
+                long ts = buf.getLong( off );
+                if( ts >= toTs ) {
+                    break;
+                }
+                if( trainId >= 0 && buf.getInt( off + 8 ) != trainId ) {
+                    continue;
+                }
+
+                Map<String,Object> entry = new LinkedHashMap<>();
+                entry.put( "ts", ts );
+                entry.put( "train", n.string( buf.getInt( off + 8 ) ) );
+                entry.put( "filename", n.string( buf.getInt( off + 12 ) ) );
+                entry.put( "target", n.string( buf.getInt( off + 16 ) ) );
+                entry.put( "filter", n.string( buf.getInt( off + 20 ) ) );
+                entry.put( "exposure", buf.getDouble( off + 24 ) );
+                entry.put( "hfr", buf.getDouble( off + 32 ) );
+                entry.put( "eccentricity", buf.getDouble( off + 40 ) );
+                entry.put( "median", buf.getDouble( off + 48 ) );
+                entry.put( "snr", buf.getDouble( off + 56 ) );
+                entry.put( "starCount", buf.getInt( off + 64 ) );
+                entry.put( "width", buf.getInt( off + 68 ) );
+                entry.put( "height", buf.getInt( off + 72 ) );
+                entry.put( "type", buf.getInt( off + 76 ) );
+                res.add( entry );
+            }
+        }
+        return res;
+    }
+
+    /** Every stored night with its record counts per kind, oldest first. */
+    public Map<String,Map<String,Long>> listNights() throws IOException {
+        Map<String,Map<String,Long>> res = new LinkedHashMap<>();
+        for( LocalDate date : storedNights().keySet() ) {
+            Night n = night( date, false );
+            Map<String,Long> counts = new LinkedHashMap<>();
+            for( String kind : List.of( GUIDE, HFR, CAPTURE ) ) {
+                Segment s = n.segment( kind, recordSize( kind ), false );
+                counts.put( kind, s == null ? 0 : s.count );
+                if( s != null && s.dropped > 0 ) {
+                    counts.put( kind + "Dropped", s.dropped );
+                }
+            }
+            res.put( date.toString(), counts );
+        }
+        return res;
+    }
+
+    private static int recordSize( String kind ) {
+        return switch( kind ) {
+            case GUIDE -> GUIDE_RECORD;
+            case HFR -> HFR_RECORD;
+            default -> CAPTURE_RECORD;
+        };
+    }
+
+    private Downsampler.Series series( String kind, int recordSize, String train, long fromTs, long toTs, Field field ) throws IOException {
+        long[] ts = new long[ 1024 ];
+        double[] values = new double[ 1024 ];
+        int size = 0;
+        long retainedTo = Long.MIN_VALUE;
+
+        for( LocalDate date : nightsBetween( fromTs, toTs ) ) {
+            Night n = night( date, false );
+            Segment s = n.segment( kind, recordSize, false );
+            if( s == null ) {
+                continue;
+            }
+            int trainId = train == null ? -1 : n.lookup( train );
+            if( train != null && trainId < 0 ) {
+                continue;
+            }
+
+            // count before buf: a remap always happens before count grows past the old mapping
+            long count = s.count;
+            MappedByteBuffer buf = s.buf;
+            for( long i = s.firstAtOrAfter( fromTs, count ); i < count; i++ ) {
+                int off = (int) (HEADER + i * recordSize);
+                long t = buf.getLong( off );
+                if( t >= toTs ) {
+                    break;
+                }
+                if( trainId >= 0 && buf.getInt( off + 8 ) != trainId ) {
+                    continue;
+                }
+                if( size == ts.length ) {
+                    ts = Arrays.copyOf( ts, size * 2 );
+                    values = Arrays.copyOf( values, size * 2 );
+                }
+                ts[ size ] = t;
+                values[ size ] = field.get( buf, off );
+                size++;
+            }
+            retainedTo = Math.max( retainedTo, s.lastTs );
+        }
+
+        // nothing is ever evicted; only samples past the newest stored one can still arrive
+        return new Downsampler.Series( ts, values, size, Long.MIN_VALUE, retainedTo );
+    }
+
+    /** Just the dates — each night is opened only when its turn comes, so a query spanning more
+     *  than MAX_OPEN_NIGHTS doesn't evict the ones it's about to read. */
+    private List<LocalDate> nightsBetween( long fromTs, long toTs ) {
+        LocalDate first = nightOf( fromTs );
+        LocalDate last = nightOf( toTs );
+        return new ArrayList<>( storedNights().subMap( first, true, last, true ).keySet() );
+    }
+
+    private TreeMap<LocalDate, File> storedNights() {
+        TreeMap<LocalDate, File> res = new TreeMap<>();
+        File[] dirs = root.listFiles( File::isDirectory );
+        if( dirs != null ) {
+            for( File dir : dirs ) {
+                try {
+                    res.put( LocalDate.parse( dir.getName() ), dir );
+                }
+                catch( Throwable t ) {
+                    //not one of ours
+                }
+            }
+        }
+        return res;
+    }
+
+    /** create: the night is about to be appended to — opened writable (replacing a read-only
+     *  one), and its directory made if need be. */
+    private Night night( LocalDate date, boolean create ) throws IOException {
+        synchronized( nights ) {
+            Night n = nights.get( date );
+            if( n == null || ( create && !n.writable ) ) {
+                File dir = new File( root, date.toString() );
+                if( create ) {
+                    Files.createDirectories( dir.toPath() );
+                }
+                // a replaced read-only night holds no files, just mappings the GC unmaps
+                n = new Night( dir, create );
+                nights.put( date, n );
+            }
+            return n;
+        }
+    }
+
+    /** One night's directory: its segments and string dictionary. */
+    private static class Night {
+        final File dir;
+        final boolean writable;
+        final Map<String, Segment> segments = new ConcurrentHashMap<>();
+        private boolean closed = false;
+
+        private final Map<String,Integer> ids = new ConcurrentHashMap<>();
+        private volatile String[] strings = new String[ 0 ];
+        private Writer dictWriter;
+        private boolean dictTorn = false;
+
+        Night( File dir, boolean writable ) throws IOException {
+            this.dir = dir;
+            this.writable = writable;
+            File dict = new File( dir, "strings.txt" );
+            if( dict.isFile() ) {
+                // split on '\n' only — Files.readAllLines would also split on a bare '\r'
+                String text = new String( Files.readAllBytes( dict.toPath() ), StandardCharsets.UTF_8 );
+                List<String> lines = new ArrayList<>();
+                int start = 0;
+                for( int nl = text.indexOf( '\n' ); nl >= 0; nl = text.indexOf( '\n', start ) ) {
+                    lines.add( unescape( text.substring( start, nl ) ) );
+                    start = nl + 1;
+                }
+                if( start < text.length() ) {
+                    // torn by a crash mid-intern: its id was never handed out, but the next line
+                    // written must not run on from it
+                    lines.add( unescape( text.substring( start ) ) );
+                    dictTorn = true;
+                }
+                String[] s = lines.toArray( new String[ 0 ] );
+                for( int i=0; i<s.length; i++ ) {
+                    ids.putIfAbsent( s[ i ], i );
+                }
+                strings = s;
+            }
+        }
+
+        /** One dictionary line: backslash, newline and carriage return escaped. */
+        private static String escape( String value ) {
+            StringBuilder b = new StringBuilder( value.length() );
+            for( int i=0; i<value.length(); i++ ) {
+                char c = value.charAt( i );
+                switch( c ) {
+                    case '\\' -> b.append( "\\\\" );
+                    case '\n' -> b.append( "\\n" );
+                    case '\r' -> b.append( "\\r" );
+                    default -> b.append( c );
+                }
+            }
+            return b.toString();
+        }
+
+        /** escape() undone in one pass, so an escaped backslash followed by 'n' stays just that. */
+        private static String unescape( String line ) {
+            if( line.indexOf( '\\' ) < 0 ) {
+                return line;
+            }
+            StringBuilder b = new StringBuilder( line.length() );
+            for( int i=0; i<line.length(); i++ ) {
+                char c = line.charAt( i );
+                if( c == '\\' && i + 1 < line.length() ) {
+                    char next = line.charAt( ++i );
+                    b.append( next == 'n' ? '\n' : next == 'r' ? '\r' : next );
+                }
+                else {
+                    b.append( c );
+                }
+            }
+            return b.toString();
+        }
+
+        /** null for a kind that hasn't been written this night, unless create (writable nights only). */
+        Segment segment( String kind, int recordSize, boolean create ) throws IOException {
+            Segment s = segments.get( kind );
+            if( s == null ) {
+                synchronized( this ) {
+                    s = segments.get( kind );
+                    if( s == null ) {
+                        File f = new File( dir, kind + ".bin" );
+                        if( !create && !f.isFile() ) {
+                            return null;
+                        }
+                        if( closed ) {
+                            if( create ) {
+                                throw new IOException( "History night " + dir.getName() + " was closed" );
+                            }
+                            // evicted while a query was still reading it — a one-off read-only view
+                            return new Segment( f, recordSize, false );
+                        }
+                        s = new Segment( f, recordSize, writable );
+                        segments.put( kind, s );
+                    }
+                }
+            }
+            return s;
+        }
+
+        /** Evicted — closes the files a writable night keeps open. Mappings already handed out
+         *  stay readable; the GC unmaps them. */
+        void close() {
+            synchronized( this ) {
+                closed = true;
+            }
+            for( Segment s : segments.values() ) {
+                s.close();
+            }
+            synchronized( this ) {
+                if( dictWriter != null ) {
+                    try {
+                        dictWriter.close();
+                    }
+                    catch( IOException e ) {
+                        //nothing left to lose, every entry was flushed
+                    }
+                    dictWriter = null;
+                }
+            }
+        }
+
+        int lookup( String value ) {
+            return ids.getOrDefault( value, -1 );
+        }
+
+        String string( int id ) {
+            String[] s = strings;
+            return id >= 0 && id < s.length ? s[ id ] : null;
+        }
+
+        /** -1 for null. New entries hit strings.txt before their id is handed out. */
+        synchronized int intern( String value ) throws IOException {
+            if( value == null ) {
+                return -1;
+            }
+            Integer id = ids.get( value );
+            if( id != null ) {
+                return id;
+            }
+            if( closed || !writable ) {
+                throw new IOException( "History night " + dir.getName() + " is not writable" );
+            }
+
+            if( dictWriter == null ) {
+                dictWriter = new OutputStreamWriter( new FileOutputStream( new File( dir, "strings.txt" ), true ), StandardCharsets.UTF_8 );
+                if( dictTorn ) {
+                    dictWriter.write( '\n' );
+                    dictTorn = false;
+                }
+            }
+            dictWriter.write( escape( value ) );
+            dictWriter.write( '\n' );
+            dictWriter.flush();
+
+            String[] s = Arrays.copyOf( strings, strings.length + 1 );
+            s[ s.length - 1 ] = value;
+            strings = s;
+            ids.put( value, s.length - 1 );
+            return s.length - 1;
+        }
+    }
+
+    /** One memory mapped .bin file. Appends synchronize on the segment; reads don't lock at all —
+     *  they only look at records below count, which is published after the record is written.
+     *  A read-only segment maps what's there and closes its file straight away; only a writable
+     *  one keeps its channel, to remap as it grows. */
+    private static class Segment {
+        static final long DROPPED = Long.MIN_VALUE;
+
+        /** null once closed, and for a read-only segment. */
+        private FileChannel channel;
+        private final File file;
+        final int recordSize;
+
+        volatile MappedByteBuffer buf;
+        volatile long count;
+        volatile long lastTs = Long.MIN_VALUE;
+        /** Appends too old to keep since this segment was opened. */
+        volatile long dropped = 0;
+
+        Segment( File f, int recordSize, boolean writable ) throws IOException {
+            this.file = f;
+            this.recordSize = recordSize;
+            if( !writable ) {
+                try( FileChannel ch = FileChannel.open( f.toPath(), StandardOpenOption.READ ) ) {
+                    long existing = ch.size();
+                    if( existing < HEADER ) {
+                        // created but never written — read as empty
+                        buf = map( ch, FileChannel.MapMode.READ_ONLY, 0 );
+                        return;
+                    }
+                    buf = map( ch, FileChannel.MapMode.READ_ONLY, existing );
+                    readHeader( f, existing );
+                }
+                return;
+            }
+
+            this.channel = FileChannel.open( f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+            long existing = channel.size();
+            if( existing >= HEADER ) {
+                buf = map( channel, FileChannel.MapMode.READ_WRITE, existing );
+                try {
+                    readHeader( f, existing );
+                }
+                catch( IOException e ) {
+                    close();
+                    throw e;
+                }
+            }
+            else {
+                buf = map( channel, FileChannel.MapMode.READ_WRITE, HEADER + (long) INITIAL_RECORDS * recordSize );
+                buf.putInt( 0, MAGIC );
+                buf.putInt( 4, recordSize );
+                buf.putLong( 8, 0 );
+            }
+        }
+
+        private void readHeader( File f, long existing ) throws IOException {
+            if( buf.getInt( 0 ) != MAGIC || buf.getInt( 4 ) != recordSize ) {
+                throw new IOException( f + " is not a history segment with " + recordSize + " byte records" );
+            }
+            // count beyond what the file holds = torn append, ignore the tail
+            count = Math.min( buf.getLong( 8 ), ( existing - HEADER ) / recordSize );
+            if( count > 0 ) {
+                lastTs = buf.getLong( (int) (HEADER + ( count - 1 ) * recordSize) );
+            }
+        }
+
+        private static MappedByteBuffer map( FileChannel channel, FileChannel.MapMode mode, long size ) throws IOException {
+            if( size > Integer.MAX_VALUE ) {
+                throw new IOException( "History segment too large" );
+            }
+            MappedByteBuffer b = channel.map( mode, 0, size );
+            b.order( ByteOrder.LITTLE_ENDIAN );
+            return b;
+        }
+
+        synchronized void close() {
+            if( channel != null ) {
+                try {
+                    channel.close();
+                }
+                catch( IOException e ) {
+                    //the mapping holds the data, nothing to flush
+                }
+                channel = null;
+            }
+        }
+
+        /** The ts to store a record of ts under, or DROPPED — see the class comment. Caller holds the lock. */
+        long admit( long ts ) {
+            if( ts >= lastTs ) {
+                return ts;
+            }
+            if( lastTs - ts <= REORDER_TOLERANCE_MILLIS ) {
+                return lastTs;
+            }
+            if( dropped++ == 0 ) {
+                SimpleLogger.getLogger().logMessage( "Dropping records older than the newest one in " + file
+                    + " (e.g. the analyze log replay re-recording them), further ones are only counted" );
+            }
+            return DROPPED;
+        }
+
+        /** Offset to write the next record at. Caller holds the lock. */
+        int beginAppend() throws IOException {
+            if( channel == null ) {
+                throw new IOException( "History segment is closed or read-only" );
+            }
+            long end = HEADER + ( count + 1 ) * recordSize;
+            if( end > buf.capacity() ) {
+                buf = map( channel, FileChannel.MapMode.READ_WRITE, Math.max( end, HEADER + ( buf.capacity() - HEADER ) * 2L ) );
+            }
+            return (int) (HEADER + count * recordSize);
+        }
+
+        void commitAppend( long ts ) {
+            long c = count + 1;
+            buf.putLong( 8, c );
+            lastTs = ts;
+            count = c;
+        }
+
+        /** Index of the first of the first `count` records with ts &gt;= fromTs — records are in time order. */
+        long firstAtOrAfter( long fromTs, long count ) {
+            MappedByteBuffer b = buf;
+            long lo = 0;
+            long hi = count;
+            while( lo < hi ) {
+                long mid = ( lo + hi ) >>> 1;
+                if( b.getLong( (int) (HEADER + mid * recordSize) ) < fromTs ) {
+                    lo = mid + 1;
+                }
+                else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package de.pmneo.kstars.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a plain FITS file's primary image straight out of a memory mapping — what every camera
+ * frame KStars saves is: an uncompressed 2D primary HDU. Only the header is parsed up front
+ * (BITPIX, NAXIS1/2, BZERO, BSCALE); pixels are decoded when asked for, so sampling a grid or
+ * box-averaging down to a thumbnail touches the file's pages but never allocates the
+ * full-resolution array nom-tam-fits' getKernel() does.
+ *
+ * open() returns null for anything else (compressed/tiled images, data cubes, an image in an
+ * extension only) — callers fall back to nom-tam-fits for those.
+ */
+public class MappedFits {
+
+    private static final int BLOCK = 2880;
+    private static final int CARD = 80;
+
+    public final int bitpix;
+    public final int width;
+    public final int height;
+    public final double bzero;
+    public final double bscale;
+
+    private final ByteBuffer data;
+    /** 16-bit view of data, for bulk row reads — null unless BITPIX is 16. */
+    private final ShortBuffer shorts;
+    private final int bytesPerPixel;
+    private final int rowBytes;
+
+    private MappedFits( int bitpix, int width, int height, double bzero, double bscale, ByteBuffer data ) {
+        this.bitpix = bitpix;
+        this.width = width;
+        this.height = height;
+        this.bzero = bzero;
+        this.bscale = bscale;
+        this.data = data;
+        this.bytesPerPixel = Math.abs( bitpix ) / 8;
+        this.rowBytes = width * bytesPerPixel;
+        this.shorts = bitpix == 16 ? data.asShortBuffer() : null;
+    }
+
+    public static MappedFits open( File file ) throws IOException {
+        try( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+            long size = channel.size();
+
+            int bitpix = 0;
+            int naxis = -1;
+            long width = 0;
+            long height = 0;
+            double bzero = 0;
+            double bscale = 1;
+            boolean simple = false;
+
+            long dataStart = -1;
+            ByteBuffer block = ByteBuffer.allocate( BLOCK );
+            byte[] card = new byte[ CARD ];
+            for( long pos = 0; dataStart < 0 && pos + BLOCK <= size; pos += BLOCK ) {
+                block.clear();
+                while( block.hasRemaining() && channel.read( block, pos + block.position() ) > 0 ) {
+                    //read the whole block
+                }
+                for( int c = 0; c < BLOCK; c += CARD ) {
+                    block.get( c, card );
+                    String keyword = new String( card, 0, 8, StandardCharsets.US_ASCII ).trim();
+                    if( "END".equals( keyword ) ) {
+                        dataStart = pos + BLOCK;
+                        break;
+                    }
+                    if( card[8] != '=' ) {
+                        continue;
+                    }
+                    String value = value( card );
+                    try {
+                        switch( keyword ) {
+                            case "SIMPLE": simple = "T".equals( value ); break;
+                            case "BITPIX": bitpix = Integer.parseInt( value ); break;
+                            case "NAXIS":  naxis = Integer.parseInt( value ); break;
+                            case "NAXIS1": width = Long.parseLong( value ); break;
+                            case "NAXIS2": height = Long.parseLong( value ); break;
+                            case "BZERO":  bzero = Double.parseDouble( value ); break;
+                            case "BSCALE": bscale = Double.parseDouble( value ); break;
+                            default:
+                        }
+                    }
+                    catch( NumberFormatException e ) {
+                        return null;
+                    }
+                }
+                if( pos == 0 && !simple ) {
+                    return null;
+                }
+            }
+
+            if( dataStart < 0 || naxis != 2 || width <= 0 || height <= 0 ) {
+                return null;
+            }
+            if( bitpix != 8 && bitpix != 16 && bitpix != 32 && bitpix != -32 && bitpix != -64 ) {
+                return null;
+            }
+            long dataBytes = width * height * ( Math.abs( bitpix ) / 8 );
+            if( dataBytes > Integer.MAX_VALUE || dataStart + dataBytes > size ) {
+                return null;
+            }
+
+            ByteBuffer data = channel.map( FileChannel.MapMode.READ_ONLY, dataStart, dataBytes );
+            return new MappedFits( bitpix, (int) width, (int) height, bzero, bscale, data );
+        }
+    }
+
+    /** A card's value: what's between "= " and the comment, quotes not handled (not needed). */
+    private static String value( byte[] card ) {
+        int end = CARD;
+        for( int i = 10; i < CARD; i++ ) {
+            if( card[i] == '/' ) {
+                end = i;
+                break;
+            }
+        }
+        return new String( card, 10, Math.max( 0, end - 10 ), StandardCharsets.US_ASCII ).trim();
+    }
+
+    /** Physical value (raw * BSCALE + BZERO) of one pixel, row y counted from the file's first row. */
+    public double get( int y, int x ) {
+        int offset = y * rowBytes + x * bytesPerPixel;
+        return raw( offset ) * bscale + bzero;
+    }
+
+    private double raw( int offset ) {
+        switch( bitpix ) {
+            case 8:   return data.get( offset ) & 0xFF;
+            case 16:  return data.getShort( offset );
+            case 32:  return data.getInt( offset );
+            case -32: return data.getFloat( offset );
+            default:  return data.getDouble( offset );
+        }
+    }
+
+    /** Physical values of the given columns of row y into out[0..xs.length) — just those
+     *  pixels' bytes are touched, for strided sampling. */
+    public void readColumns( int y, int[] xs, double[] out ) {
+        int offset = y * rowBytes;
+        switch( bitpix ) {
+            case 8:
+                for( int i = 0; i < xs.length; i++ ) {
+                    out[i] = ( data.get( offset + xs[i] ) & 0xFF ) * bscale + bzero;
+                }
+                break;
+            case 16:
+                for( int i = 0; i < xs.length; i++ ) {
+                    out[i] = data.getShort( offset + xs[i] * 2 ) * bscale + bzero;
+                }
+                break;
+            case 32:
+                for( int i = 0; i < xs.length; i++ ) {
+                    out[i] = data.getInt( offset + xs[i] * 4 ) * bscale + bzero;
+                }
+                break;
+            case -32:
+                for( int i = 0; i < xs.length; i++ ) {
+                    out[i] = data.getFloat( offset + xs[i] * 4 ) * bscale + bzero;
+                }
+                break;
+            default:
+                for( int i = 0; i < xs.length; i++ ) {
+                    out[i] = data.getDouble( offset + xs[i] * 8 ) * bscale + bzero;
+                }
+        }
+    }
+
+    /** Raw (no BZERO/BSCALE) values of a whole row of a 16-bit image — one bulk copy. */
+    public void readRow( int y, short[] row ) {
+        shorts.get( y * width, row, 0, width );
+    }
+}
@@ -0,0 +1,164 @@
+package de.pmneo.kstars.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.ToLongFunction;
+
+/**
+ * LRU cache bounded by the (estimated) bytes its values hold rather than by their count — for
+ * values whose size varies by orders of magnitude, like decoded FITS frames (a 1 MP guide frame
+ * vs. a 60 MP light frame).
+ *
+ * Loading is single-flight: while one caller is loading a key, every other caller asking for
+ * that same key waits for that load instead of starting its own — the image strip asks for a
+ * frame's auto-stretch and its thumbnail at the same moment, and both need the same decode.
+ *
+ * A value bigger than the whole budget is still handed to everyone who waited for it, it just
+ * isn't kept.
+ *
+ * An optional entry limit caps the count as well — for values that are cheap on the heap but
+ * hold some other resource each, like a memory mapping.
+ */
+public class MemoryBudgetCache<V> {
+
+    public interface Loader<V> {
+        V load() throws Exception;
+    }
+
+    private final long budgetBytes;
+    private final int maxEntries;
+    private final ToLongFunction<V> weigher;
+
+    /** access-ordered, eldest first */
+    private final LinkedHashMap<String, V> entries = new LinkedHashMap<>( 16, 0.75f, true );
+    private final Map<String, CompletableFuture<V>> loading = new HashMap<>();
+    private long usedBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long sharedLoads = 0;
+    private long evictions = 0;
+
+    public MemoryBudgetCache( long budgetBytes, ToLongFunction<V> weigher ) {
+        this( budgetBytes, Integer.MAX_VALUE, weigher );
+    }
+
+    public MemoryBudgetCache( long budgetBytes, int maxEntries, ToLongFunction<V> weigher ) {
+        this.budgetBytes = budgetBytes;
+        this.maxEntries = maxEntries;
+        this.weigher = weigher;
+    }
+
+    public V get( String key, Loader<V> loader ) throws Exception {
+        CompletableFuture<V> pending;
+        boolean owner = false;
+        synchronized( this ) {
+            V cached = entries.get( key );
+            if( cached != null ) {
+                hits++;
+                return cached;
+            }
+            pending = loading.get( key );
+            if( pending == null ) {
+                pending = new CompletableFuture<>();
+                loading.put( key, pending );
+                owner = true;
+                misses++;
+            }
+            else {
+                sharedLoads++;
+            }
+        }
+
+        if( !owner ) {
+            try {
+                return pending.get();
+            }
+            catch( ExecutionException e ) {
+                Throwable cause = e.getCause();
+                if( cause instanceof Exception ) {
+                    throw (Exception) cause;
+                }
+                throw (Error) cause;
+            }
+        }
+
+        V value;
+        try {
+            value = loader.load();
+        }
+        catch( Throwable t ) {
+            synchronized( this ) {
+                loading.remove( key );
+            }
+            pending.completeExceptionally( t );
+            throw t;
+        }
+
+        synchronized( this ) {
+            loading.remove( key );
+            put( key, value );
+        }
+        pending.complete( value );
+        return value;
+    }
+
+    private void put( String key, V value ) {
+        long size = weigher.applyAsLong( value );
+        if( size > budgetBytes ) {
+            return;
+        }
+
+        V previous = entries.put( key, value );
+        if( previous != null ) {
+            usedBytes -= weigher.applyAsLong( previous );
+        }
+        usedBytes += size;
+
+        Iterator<Map.Entry<String, V>> it = entries.entrySet().iterator();
+        while( ( usedBytes > budgetBytes || entries.size() > maxEntries ) && it.hasNext() ) {
+            Map.Entry<String, V> eldest = it.next();
+            if( eldest.getKey().equals( key ) ) {
+                continue;
+            }
+            usedBytes -= weigher.applyAsLong( eldest.getValue() );
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /** The cached value without loading it, null if there's none (yet). */
+    public synchronized V peek( String key ) {
+        V cached = entries.get( key );
+        if( cached != null ) {
+            hits++;
+        }
+        return cached;
+    }
+
+    public synchronized void invalidate( String key ) {
+        V removed = entries.remove( key );
+        if( removed != null ) {
+            usedBytes -= weigher.applyAsLong( removed );
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put( "entries", entries.size() );
+        if( maxEntries != Integer.MAX_VALUE ) {
+            res.put( "maxEntries", maxEntries );
+        }
+        res.put( "usedBytes", usedBytes );
+        res.put( "budgetBytes", budgetBytes );
+        res.put( "hits", hits );
+        res.put( "misses", misses );
+        res.put( "sharedLoads", sharedLoads );
+        res.put( "evictions", evictions );
+        return res;
+    }
+}
@@ -0,0 +1,160 @@
+package de.pmneo.kstars.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Answers "is process X running, and for how long" straight from /proc instead of forking
+ * `ps -C X -o etimes=` — the status broadcast asks once a second, forever, which on the small
+ * observatory PC used to mean a fork+exec (and a blocking waitFor) every second just to learn
+ * nothing had changed.
+ *
+ * The PID is found once by scanning /proc/[pid]/comm (the same name ps -C matches on) and then
+ * cached together with its start time; every later call is a single read of /proc/[pid]/stat.
+ * Only when that PID is gone — or got reused by some other process, which the start time gives
+ * away — is /proc scanned again. Elapsed time is /proc/uptime minus the stat's starttime, i.e.
+ * exactly what ps computes for etimes.
+ *
+ * "Not running" is cached too, for RESCAN_INTERVAL_MILLIS: KStars is down most of the day, and a
+ * scan lists /proc and opens every process's comm. Whoever just started the process calls
+ * invalidate() so it's seen right away rather than up to one interval later.
+ *
+ * Non-Linux hosts (no /proc, e.g. a dev machine) fall back to the old ps fork.
+ */
+public class ProcessTracker {
+
+    /** starttime in /proc/[pid]/stat is in clock ticks — USER_HZ, which the kernel fixes at 100
+     *  for userspace on every architecture we run on (it's not CONFIG_HZ). */
+    private static final double CLOCK_TICKS_PER_SECOND = 100.0;
+
+    private static final Path PROC = Paths.get( "/proc" );
+
+    private static final long RESCAN_INTERVAL_MILLIS = 10000;
+
+    private final String name;
+
+    private long pid = -1;
+    private long startTicks = -1;
+    /** When rescan() last came up empty, 0 if the next call should scan regardless. */
+    private long notFoundAt = 0;
+
+    public ProcessTracker( String name ) {
+        this.name = name;
+    }
+
+    /** Seconds the process has been running, or -1 if it isn't — same contract as `ps -o etimes=`. */
+    public synchronized int getRuntime() throws IOException {
+        if( !Files.isDirectory( PROC.resolve( "self" ) ) ) {
+            return getRuntimeFromPs();
+        }
+
+        if( pid >= 0 ? readStartTicks( pid ) != startTicks : System.currentTimeMillis() - notFoundAt >= RESCAN_INTERVAL_MILLIS ) {
+            rescan();
+        }
+        if( pid < 0 ) {
+            return -1;
+        }
+
+        double uptime = Double.parseDouble( readProc( PROC.resolve( "uptime" ) ).trim().split( "\\s+" )[0] );
+        return (int) Math.max( 0, Math.floor( uptime - startTicks / CLOCK_TICKS_PER_SECOND ) );
+    }
+
+    /** Forget a cached "not running" — the next call scans /proc. */
+    public synchronized void invalidate() {
+        notFoundAt = 0;
+    }
+
+    /** Oldest matching process wins — ps printed them in PID order and the caller took the first
+     *  line, which in practice was the long-running one too. */
+    private void rescan() {
+        pid = -1;
+        startTicks = -1;
+        scan();
+        notFoundAt = pid < 0 ? System.currentTimeMillis() : 0;
+    }
+
+    private void scan() {
+        File[] entries = PROC.toFile().listFiles();
+        if( entries == null ) {
+            return;
+        }
+
+        for( File entry : entries ) {
+            long candidate = parsePid( entry.getName() );
+            if( candidate < 0 ) {
+                continue;
+            }
+
+            try {
+                if( !name.equals( readProc( entry.toPath().resolve( "comm" ) ).trim() ) ) {
+                    continue;
+                }
+            }
+            catch( IOException e ) {
+                //exited while we were scanning
+                continue;
+            }
+
+            long ticks = readStartTicks( candidate );
+            if( ticks >= 0 && ( startTicks < 0 || ticks < startTicks ) ) {
+                pid = candidate;
+                startTicks = ticks;
+            }
+        }
+    }
+
+    /** Field 22 of /proc/[pid]/stat, or -1 if the process is gone. The comm field (2) is in
+     *  parentheses and may itself contain spaces or parentheses, so count from the last ')'. */
+    private static long readStartTicks( long pid ) {
+        try {
+            String stat = readProc( PROC.resolve( Long.toString( pid ) ).resolve( "stat" ) );
+            String[] fields = stat.substring( stat.lastIndexOf( ')' ) + 2 ).split( " " );
+            return Long.parseLong( fields[19] );
+        }
+        catch( Throwable t ) {
+            return -1;
+        }
+    }
+
+    private static long parsePid( String s ) {
+        if( s.isEmpty() ) {
+            return -1;
+        }
+        for( int i=0; i<s.length(); i++ ) {
+            if( !Character.isDigit( s.charAt( i ) ) ) {
+                return -1;
+            }
+        }
+        return Long.parseLong( s );
+    }
+
+    /** /proc files report a size of 0, so read until EOF rather than trusting Files.size(). */
+    private static String readProc( Path p ) throws IOException {
+        return new String( Files.readAllBytes( p ), StandardCharsets.US_ASCII );
+    }
+
+    private int getRuntimeFromPs() throws IOException {
+        try {
+            Process runtime = Runtime.getRuntime().exec( new String[]{ "ps", "-C", name, "-o", "etimes=" } );
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try( InputStream in = runtime.getInputStream() ) {
+                in.transferTo( out );
+            }
+            runtime.waitFor();
+
+            var seconds = out.toString().trim().split( "\n" )[0].trim();
+            return seconds.isBlank() ? -1 : Integer.parseInt( seconds );
+        }
+        catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while waiting for ps", e );
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package de.pmneo.kstars.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import de.pmneo.kstars.SimpleLogger;
+
+/**
+ * A fixed set of worker threads with a bounded queue in front, for CPU/IO-heavy work that must
+ * never be allowed to pile up on threads someone else needs — ImageServlet's FITS rendering runs
+ * here instead of on Jetty's request threads, so a burst of thumbnail requests can't leave /cmd/
+ * actions and WebSocket upgrades waiting for a free thread.
+ *
+ * A full queue rejects (submit() returns null) rather than growing without bound; the caller
+ * decides what that means (ImageServlet answers 503). A task that hasn't started yet can be
+ * cancelled and never runs — a running one always runs to the end.
+ *
+ * Counters, the queue depth and how long tasks waited and ran (a recent average, and the
+ * maximum) are reported by stats().
+ */
+public class RenderExecutor {
+
+    public interface Task {
+        /** True if the task hadn't started yet and now never will. */
+        boolean cancel();
+    }
+
+    /** Weight of the newest sample in the recent averages. */
+    private static final double EWMA_ALPHA = 0.1;
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int CANCELLED = 2;
+
+    private final ThreadPoolExecutor executor;
+    private final int queueCapacity;
+
+    private long submitted = 0;
+    private long rejected = 0;
+    private long cancelled = 0;
+    private long completed = 0;
+    private long failed = 0;
+    private double avgQueueMillis = 0;
+    private double maxQueueMillis = 0;
+    private double avgRunMillis = 0;
+    private double maxRunMillis = 0;
+
+    public RenderExecutor( String name, int threads, int queueCapacity ) {
+        this.queueCapacity = queueCapacity;
+        AtomicInteger n = new AtomicInteger();
+        executor = new ThreadPoolExecutor( threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>( queueCapacity ), r -> {
+            Thread t = new Thread( r, name + "-" + n.getAndIncrement() );
+            t.setDaemon( true );
+            return t;
+        }, new ThreadPoolExecutor.AbortPolicy() );
+        executor.allowCoreThreadTimeOut( true );
+    }
+
+    /** Null if the queue is full. */
+    public Task submit( Runnable work ) {
+        return submit( work, () -> true, () -> {} );
+    }
+
+    /** wanted is asked once the task's turn comes — if it says no, the task is skipped and
+     *  counted as cancelled, same as cancel() (e.g. the connection it would answer is gone).
+     *  Either way onCancel runs, exactly once, for a task that never ran — on whichever thread
+     *  cancelled it. Not for a rejected one (submit() returned null). */
+    public Task submit( Runnable work, BooleanSupplier wanted, Runnable onCancel ) {
+        QueuedTask task = new QueuedTask( work, wanted, onCancel );
+        try {
+            executor.execute( task );
+        }
+        catch( RejectedExecutionException e ) {
+            synchronized( this ) {
+                rejected++;
+            }
+            return null;
+        }
+        synchronized( this ) {
+            submitted++;
+        }
+        return task;
+    }
+
+    private class QueuedTask implements Runnable, Task {
+        private final Runnable work;
+        private final BooleanSupplier wanted;
+        private final Runnable onCancel;
+        private final long enqueued = System.nanoTime();
+        private final AtomicInteger state = new AtomicInteger( QUEUED );
+
+        QueuedTask( Runnable work, BooleanSupplier wanted, Runnable onCancel ) {
+            this.work = work;
+            this.wanted = wanted;
+            this.onCancel = onCancel;
+        }
+
+        @Override
+        public void run() {
+            if( !wanted.getAsBoolean() ) {
+                cancel();
+            }
+            if( !state.compareAndSet( QUEUED, RUNNING ) ) {
+                return;
+            }
+            long started = System.nanoTime();
+            boolean ok = false;
+            try {
+                work.run();
+                ok = true;
+            }
+            catch( Throwable t ) {
+                SimpleLogger.getLogger().logError( "Render task failed", t );
+            }
+            finally {
+                finished( ok, ( started - enqueued ) / 1e6, ( System.nanoTime() - started ) / 1e6 );
+            }
+        }
+
+        @Override
+        public boolean cancel() {
+            if( !state.compareAndSet( QUEUED, CANCELLED ) ) {
+                return false;
+            }
+            executor.remove( this );
+            synchronized( RenderExecutor.this ) {
+                cancelled++;
+            }
+            onCancel.run();
+            return true;
+        }
+    }
+
+    private synchronized void finished( boolean ok, double queueMillis, double runMillis ) {
+        if( ok ) {
+            completed++;
+        }
+        else {
+            failed++;
+        }
+        boolean first = completed + failed == 1;
+        avgQueueMillis = first ? queueMillis : avgQueueMillis + EWMA_ALPHA * ( queueMillis - avgQueueMillis );
+        avgRunMillis = first ? runMillis : avgRunMillis + EWMA_ALPHA * ( runMillis - avgRunMillis );
+        maxQueueMillis = Math.max( maxQueueMillis, queueMillis );
+        maxRunMillis = Math.max( maxRunMillis, runMillis );
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put( "threads", executor.getMaximumPoolSize() );
+        res.put( "active", executor.getActiveCount() );
+        res.put( "queued", executor.getQueue().size() );
+        res.put( "queueCapacity", queueCapacity );
+        res.put( "submitted", submitted );
+        res.put( "rejected", rejected );
+        res.put( "cancelled", cancelled );
+        res.put( "completed", completed );
+        res.put( "failed", failed );
+        res.put( "avgQueueMillis", Math.round( avgQueueMillis * 10 ) / 10.0 );
+        res.put( "maxQueueMillis", Math.round( maxQueueMillis * 10 ) / 10.0 );
+        res.put( "avgRunMillis", Math.round( avgRunMillis * 10 ) / 10.0 );
+        res.put( "maxRunMillis", Math.round( maxRunMillis * 10 ) / 10.0 );
+        return res;
+    }
+}
@@ -0,0 +1,159 @@
+package de.pmneo.kstars.utils;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Fixed-capacity {@link AppendOnlySeries} stored column-wise in primitive arrays instead of one
+ * object (plus a deque node) per sample — subclasses own the value columns (e.g. a double[] per
+ * axis), this class owns the timestamp column, the slot/sequence arithmetic and the locking.
+ *
+ * A sample's sequence number is simply its append count, and its slot is seq % capacity, so
+ * appending is O(1) and evicting the oldest sample is implicit (it just gets overwritten) —
+ * no size() walk per append, no garbage per sample. Appends are serialized by the write lock
+ * (Ekos signals can arrive on several D-Bus signal threads); reads are optimistic and only fall
+ * back to the read lock if an append raced them.
+ */
+public abstract class RingBufferSeries<T> extends AbstractCollection<T> implements AppendOnlySeries<T> {
+
+    protected final int capacity;
+    protected final long[] ts;
+
+    private final StampedLock lock = new StampedLock();
+    private volatile long nextSeq = 0;
+
+    protected RingBufferSeries( int capacity ) {
+        this.capacity = capacity;
+        this.ts = new long[ capacity ];
+    }
+
+    /**
+     * Subclasses' typed append methods look like
+     * <pre>
+     *   long stamp = beginAppend();
+     *   int slot = appendSlot();
+     *   column[ slot ] = value; ...
+     *   return commitAppend( stamp, timestamp );
+     * </pre>
+     * — plain array stores in between that can't throw, so no try/finally (and no per-append
+     * lambda/object) needed to guarantee the lock gets released.
+     */
+    protected final long beginAppend() {
+        return lock.writeLock();
+    }
+
+    /** Slot the sample being appended goes to — only meaningful between beginAppend and commitAppend. */
+    protected final int appendSlot() {
+        return (int) (nextSeq % capacity);
+    }
+
+    /** Publishes the sample written at appendSlot() and releases the write lock. Returns its sequence number. */
+    protected final long commitAppend( long stamp, long timestamp ) {
+        long seq = nextSeq;
+        ts[ (int) (seq % capacity) ] = timestamp;
+        nextSeq = seq + 1;
+        lock.unlockWrite( stamp );
+        return seq;
+    }
+
+    /** Materializes one sample from its slot — only ever called while reading under a valid stamp. */
+    protected abstract T read( int slot, long seq );
+
+    @Override
+    public long firstSeq() {
+        return Math.max( 0, nextSeq - capacity );
+    }
+
+    @Override
+    public long nextSeq() {
+        return nextSeq;
+    }
+
+    @Override
+    public List<T> range( long fromSeq, long toSeq ) {
+        long stamp = lock.tryOptimisticRead();
+        List<T> res = readRange( fromSeq, toSeq );
+        if( lock.validate( stamp ) ) {
+            return res;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return readRange( fromSeq, toSeq );
+        }
+        finally {
+            lock.unlockRead( stamp );
+        }
+    }
+
+    private List<T> readRange( long fromSeq, long toSeq ) {
+        long next = nextSeq;
+        long from = Math.max( fromSeq, Math.max( 0, next - capacity ) );
+        long to = Math.min( toSeq, next );
+
+        List<T> res = new ArrayList<>( (int) Math.max( 0, to - from ) );
+        for( long seq = from; seq < to; seq++ ) {
+            res.add( read( (int) (seq % capacity), seq ) );
+        }
+        return res;
+    }
+
+    /** One value column of a subclass, read slot by slot — see slice(). */
+    protected interface Column {
+        double get( int slot );
+    }
+
+    /** Timestamps plus one value column of every retained sample with fromTs &lt;= ts &lt; toTs,
+     *  straight from the arrays — no sample objects, for the history query's downsampling. */
+    protected final Downsampler.Series slice( long fromTs, long toTs, Column column ) {
+        long stamp = lock.tryOptimisticRead();
+        Downsampler.Series res = readSlice( fromTs, toTs, column );
+        if( lock.validate( stamp ) ) {
+            return res;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return readSlice( fromTs, toTs, column );
+        }
+        finally {
+            lock.unlockRead( stamp );
+        }
+    }
+
+    private Downsampler.Series readSlice( long fromTs, long toTs, Column column ) {
+        long next = nextSeq;
+        long first = Math.max( 0, next - capacity );
+
+        int n = (int) (next - first);
+        long[] t = new long[ n ];
+        double[] v = new double[ n ];
+        int size = 0;
+        for( long seq = first; seq < next; seq++ ) {
+            int slot = (int) (seq % capacity);
+            if( ts[ slot ] >= fromTs && ts[ slot ] < toTs ) {
+                t[ size ] = ts[ slot ];
+                v[ size ] = column.get( slot );
+                size++;
+            }
+        }
+
+        long retainedFrom = n > 0 ? ts[ (int) (first % capacity) ] : Long.MAX_VALUE;
+        long retainedTo = n > 0 ? ts[ (int) ((next - 1) % capacity) ] : Long.MIN_VALUE;
+        return new Downsampler.Series( t, v, size, retainedFrom, retainedTo );
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return range( 0, Long.MAX_VALUE ).iterator();
+    }
+
+    @Override
+    public int size() {
+        long next = nextSeq;
+        return (int) Math.min( next, capacity );
+    }
+}
@@ -0,0 +1,125 @@
+package de.pmneo.kstars.utils;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.BooleanSupplier;
+
+import de.pmneo.kstars.SimpleLogger;
+
+/**
+ * Renders a new frame's auto-stretch and default-size thumbnail into FitsThumbnailCache before
+ * the browser asks for them — otherwise the image strip stalls on a cold decode right when a
+ * frame lands, and after a restart every analyze-log-restored image gets rendered on demand at
+ * once.
+ *
+ * Newest frames first: the queue is ordered by capture time, and it's bounded — once full, the
+ * oldest queued frame is dropped for a newer one (it still renders on demand if anyone ever
+ * scrolls back to it). A couple of low-priority worker threads, and they hold off entirely while
+ * `busy` says automation needs the CPU (plate solving, autofocus, an image download) — a
+ * thumbnail is never worth delaying any of those.
+ */
+public class ThumbnailPrerenderer {
+
+    /** What the image strip asks for (ImageStrip.tsx THUMB_MAX_DIM) with the frame's own
+     *  (non-strong) auto-stretch — the exact request that's going to come. */
+    public static final int DEFAULT_MAX_DIM = 200;
+
+    private static final int QUEUE_CAPACITY = 200;
+    private static final long BUSY_RECHECK_MILLIS = 2000;
+
+    private record Job( File file, long ts, long seq ) {}
+
+    private static final Comparator<Job> NEWEST_FIRST = Comparator.comparingLong( Job::ts ).reversed().thenComparingLong( Job::seq );
+
+    private final FitsThumbnailCache cache;
+    private final BooleanSupplier busy;
+
+    private final TreeSet<Job> queue = new TreeSet<>( NEWEST_FIRST );
+    private final Map<String, Job> queued = new HashMap<>();
+    private long nextSeq = 0;
+
+    private long submitted = 0;
+    private long rendered = 0;
+    private long dropped = 0;
+    private long failed = 0;
+
+    public ThumbnailPrerenderer( FitsThumbnailCache cache, BooleanSupplier busy ) {
+        this.cache = cache;
+        this.busy = busy;
+
+        int workers = Math.max( 1, Math.min( 2, Runtime.getRuntime().availableProcessors() / 4 ) );
+        for( int i = 0; i < workers; i++ ) {
+            Thread t = new Thread( this::work, "thumbnail-prerender-" + i );
+            t.setDaemon( true );
+            t.setPriority( Thread.MIN_PRIORITY );
+            t.start();
+        }
+    }
+
+    /** Queues a frame captured at ts; a frame already queued is left where it is. */
+    public synchronized void submit( File file, long ts ) {
+        if( file == null || queued.containsKey( file.getPath() ) ) {
+            return;
+        }
+        Job job = new Job( file, ts, nextSeq++ );
+        queue.add( job );
+        queued.put( file.getPath(), job );
+        submitted++;
+
+        while( queue.size() > QUEUE_CAPACITY ) {
+            Job oldest = queue.pollLast();
+            queued.remove( oldest.file().getPath() );
+            dropped++;
+        }
+        notifyAll();
+    }
+
+    private synchronized Job take() throws InterruptedException {
+        while( queue.isEmpty() ) {
+            wait();
+        }
+        Job job = queue.pollFirst();
+        queued.remove( job.file().getPath() );
+        return job;
+    }
+
+    private void work() {
+        while( true ) {
+            try {
+                Job job = take();
+                while( busy.getAsBoolean() ) {
+                    Thread.sleep( BUSY_RECHECK_MILLIS );
+                }
+
+                double[] shmh = cache.computeAutoStretch( job.file(), false );
+                cache.renderThumbnail( job.file(), DEFAULT_MAX_DIM, shmh[0], shmh[1], shmh[2] );
+                synchronized( this ) {
+                    rendered++;
+                }
+            }
+            catch( InterruptedException e ) {
+                return;
+            }
+            catch( Throwable t ) {
+                synchronized( this ) {
+                    failed++;
+                }
+                SimpleLogger.getLogger().logError( "Failed to pre-render thumbnail", t );
+            }
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put( "queued", queue.size() );
+        res.put( "submitted", submitted );
+        res.put( "rendered", rendered );
+        res.put( "dropped", dropped );
+        res.put( "failed", failed );
+        return res;
+    }
+}
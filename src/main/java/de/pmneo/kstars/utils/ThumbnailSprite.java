@@ -0,0 +1,184 @@
+package de.pmneo.kstars.utils;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import de.pmneo.kstars.SimpleLogger;
+
+/**
+ * Many frames' thumbnails as one JPEG sprite sheet, for the image strip — scrolling through a
+ * night of several hundred frames used to mean an auto-stretch request plus a thumb request per
+ * frame, hundreds of them at once, each tying up a Jetty thread with blocking FITS I/O.
+ *
+ * Every cell is the frame's own (non-strong, cached) auto-stretch thumbnail as a gray raster,
+ * from FitsThumbnailCache.renderCell — the same cache entry the single-thumb request and the
+ * ThumbnailPrerenderer fill, so a sheet of already prerendered frames is just read off disk and
+ * JPEG-compressed once; only frames that missed it are decoded. Each of those is its own part,
+ * submitted wherever the caller says (ImageServlet: its render executor, which is what bounds how
+ * much rendering runs at once — a pool of our own here would double that), and the part that
+ * renders the last one assembles the sheet. Nothing ever waits for another part to finish.
+ *
+ * The sheet is a grid of maxDim x maxDim cells, each thumbnail in its cell's top left corner.
+ */
+public class ThumbnailSprite {
+
+    /** Files per sprite — more than a screenful of the image strip, and the sheet stays ~2000px. */
+    public static final int MAX_FILES = 100;
+
+    public static class Entry {
+        public final String file;
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+        public final double shadows;
+        public final double midtones;
+        public final double highlights;
+
+        Entry( String file, int x, int y, int width, int height, double[] shmh ) {
+            this.file = file;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.shadows = shmh[0];
+            this.midtones = shmh[1];
+            this.highlights = shmh[2];
+        }
+    }
+
+    /** What render() built: the sheet, and where every frame went — the files that couldn't be
+     *  rendered aren't in entries. */
+    public static class Sheet {
+        public final int width;
+        public final int height;
+        public final List<Entry> entries;
+        public final byte[] jpeg;
+
+        Sheet( int width, int height, List<Entry> entries, byte[] jpeg ) {
+            this.width = width;
+            this.height = height;
+            this.entries = entries;
+            this.jpeg = jpeg;
+        }
+    }
+
+    private static class Thumb {
+        final String name;
+        final double[] shmh;
+        final BufferedImage image;
+
+        Thumb( String name, double[] shmh, BufferedImage image ) {
+            this.name = name;
+            this.shmh = shmh;
+            this.image = image;
+        }
+    }
+
+    public interface Part {
+        void run() throws Exception;
+    }
+
+    /** Where render() hands the cells it has to actually render — false if it couldn't take
+     *  one (e.g. the queue is full), which render() then runs itself. One that's taken but
+     *  never run means no sheet is delivered. */
+    public interface Parts {
+        boolean submit( Part part );
+    }
+
+    public interface Delivery {
+        void deliver( Sheet sheet ) throws Exception;
+    }
+
+    /**
+     * Hands the finished sheet to delivery — right away on the calling thread if every cell was
+     * cached, otherwise on whichever part rendered the last missing cell. A cell that fails to
+     * render is left out of the sheet.
+     *
+     * @param names the name every file is reported under in the entries (what the client asked
+     *              for), same order as files
+     */
+    public static void render( FitsThumbnailCache cache, List<File> files, List<String> names, int maxDim, Parts parts, Delivery delivery ) throws Exception {
+        int count = Math.min( files.size(), MAX_FILES );
+        Thumb[] thumbs = new Thumb[ count ];
+        List<Integer> misses = new ArrayList<>();
+        for( int i = 0; i < count; i++ ) {
+            File file = files.get( i );
+            double[] shmh = cache.cachedAutoStretch( file, false );
+            BufferedImage cell = shmh != null ? cache.cachedCell( file, maxDim, shmh[0], shmh[1], shmh[2] ) : null;
+            if( cell != null ) {
+                thumbs[i] = new Thumb( names.get( i ), shmh, cell );
+            }
+            else {
+                misses.add( i );
+            }
+        }
+
+        if( misses.isEmpty() ) {
+            delivery.deliver( assemble( thumbs, maxDim ) );
+            return;
+        }
+
+        // the part that counts this down to 0 also sees every other part's cell
+        AtomicInteger remaining = new AtomicInteger( misses.size() );
+        for( int i : misses ) {
+            File file = files.get( i );
+            String name = names.get( i );
+            Part part = () -> {
+                thumbs[i] = renderThumb( cache, file, name, maxDim );
+                if( remaining.decrementAndGet() == 0 ) {
+                    delivery.deliver( assemble( thumbs, maxDim ) );
+                }
+            };
+            if( !parts.submit( part ) ) {
+                part.run();
+            }
+        }
+    }
+
+    /** Null if it failed (e.g. the file is still being written). */
+    private static Thumb renderThumb( FitsThumbnailCache cache, File file, String name, int maxDim ) {
+        try {
+            double[] shmh = cache.computeAutoStretch( file, false );
+            return new Thumb( name, shmh, cache.renderCell( file, maxDim, shmh[0], shmh[1], shmh[2] ) );
+        }
+        catch( Exception e ) {
+            SimpleLogger.getLogger().logError( "Failed to render sprite thumbnail of " + file, e );
+            return null;
+        }
+    }
+
+    private static Sheet assemble( Thumb[] cells, int maxDim ) throws Exception {
+        List<Thumb> thumbs = new ArrayList<>();
+        for( Thumb thumb : cells ) {
+            if( thumb != null ) {
+                thumbs.add( thumb );
+            }
+        }
+
+        int columns = Math.max( 1, (int) Math.ceil( Math.sqrt( thumbs.size() ) ) );
+        int rows = Math.max( 1, ( thumbs.size() + columns - 1 ) / columns );
+        BufferedImage sheet = new BufferedImage( columns * maxDim, rows * maxDim, BufferedImage.TYPE_BYTE_GRAY );
+        Graphics2D g = sheet.createGraphics();
+        List<Entry> entries = new ArrayList<>();
+        for( int i = 0; i < thumbs.size(); i++ ) {
+            Thumb thumb = thumbs.get( i );
+            int x = ( i % columns ) * maxDim;
+            int y = ( i / columns ) * maxDim;
+            g.drawImage( thumb.image, x, y, null );
+            entries.add( new Entry( thumb.name, x, y, thumb.image.getWidth(), thumb.image.getHeight(), thumb.shmh ) );
+        }
+        g.dispose();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ImageIO.write( sheet, "jpg", bytes );
+        return new Sheet( sheet.getWidth(), sheet.getHeight(), entries, bytes.toByteArray() );
+    }
+}
@@ -5,10 +5,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
-import com.google.gson.GsonBuilder;
-
 import de.pmneo.kstars.KStarsCluster;
 import de.pmneo.kstars.SimpleLogger;
+import de.pmneo.kstars.StatusJson;
 import jakarta.servlet.ServletConfig;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
@@ -69,7 +68,7 @@ public class CommandServlet extends HttpServlet
                 Object res = a.doAction( parts, req, resp);
 
                 if( res != null ) {
-                    new GsonBuilder().setPrettyPrinting().create().toJson( res, resp.getWriter() );
+                    StatusJson.PRETTY.toJson( res, resp.getWriter() );
                 }
             } catch (IOException e) {
                 throw e;
@@ -83,7 +82,7 @@ public class CommandServlet extends HttpServlet
             res.put( "actions", actions.keySet() );
             res.put( "error", "Invalid action" );
 
-            new GsonBuilder().setPrettyPrinting().create().toJson( res, resp.getWriter() );
+            StatusJson.PRETTY.toJson( res, resp.getWriter() );
         }
 
     }
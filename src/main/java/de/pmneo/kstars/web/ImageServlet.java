@@ -8,16 +8,38 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 
 import de.pmneo.kstars.KStarsCluster;
+import de.pmneo.kstars.SimpleLogger;
+import de.pmneo.kstars.utils.FitsThumbnail;
 import de.pmneo.kstars.utils.FitsThumbnailCache;
+import de.pmneo.kstars.utils.RenderExecutor;
+import de.pmneo.kstars.utils.ThumbnailSprite;
 
+import org.eclipse.jetty.server.Request;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.ServletConfig;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
@@ -26,22 +48,26 @@ import jakarta.servlet.http.HttpServletResponse;
 
 /**
  * Serves the observatory's own captured FITS frames as browser-viewable JPEG thumbnails (with an
- * adjustable linear stretch), and reports an auto-computed stretch for a given frame. The actual
- * FITS decoding/rendering/caching (FitsThumbnailCache) is entirely self-contained; only the "is
- * this filename something we actually captured" security check (never render an arbitrary
- * client-supplied path) needs KStarsCluster's own live captured-image history, fetched via the
- * shared "cluster" servlet context attribute, same as CommandServlet.
+ * adjustable linear stretch) or as linear previews the browser stretches itself, and reports an
+ * auto-computed stretch for a given frame. The actual FITS decoding/rendering/caching
+ * (FitsThumbnailCache) is entirely self-contained; only the "is this filename something we
+ * actually captured" security check (never render an arbitrary client-supplied path) needs
+ * KStarsCluster's own live captured-image history, fetched via the shared "cluster" servlet
+ * context attribute, same as CommandServlet.
  */
 public class ImageServlet extends HttpServlet {
 
     private KStarsCluster cluster;
-    private final FitsThumbnailCache thumbnails = new FitsThumbnailCache();
+    private FitsThumbnailCache thumbnails;
+    private RenderExecutor renderer;
     private final Gson gson = new Gson();
 
     @Override
     public void init( ServletConfig config ) throws ServletException {
         super.init( config );
         cluster = (KStarsCluster) getServletContext().getAttribute( "cluster" );
+        thumbnails = cluster.thumbnails;
+        renderer = cluster.imageRenderer;
     }
 
     @Override
@@ -52,7 +78,7 @@ public class ImageServlet extends HttpServlet {
             return;
         }
 
-        try {
+        renderAsync( req, resp, () -> {
             switch( pathInfo ) {
                 case "/thumb":
                     handleThumb( req, resp );
@@ -62,16 +88,285 @@ public class ImageServlet extends HttpServlet {
                     handleAutostretch( req, resp );
                     return;
 
+                case "/preview":
+                    handlePreview( req, resp );
+                    return;
+
+                case "/tiles":
+                    handlePyramid( req, resp );
+                    return;
+
                 default:
+                    if( pathInfo.startsWith( "/tiles/" ) ) {
+                        handleTile( pathInfo.substring( "/tiles/".length() ), req, resp );
+                        return;
+                    }
                     resp.sendError( HttpServletResponse.SC_NOT_FOUND );
             }
+        } );
+    }
+
+    /** POST, since a batch's list of filenames easily outgrows a URL. */
+    @Override
+    protected void doPost( HttpServletRequest req, HttpServletResponse resp ) throws IOException {
+        if( !"/sprite".equals( req.getPathInfo() ) ) {
+            resp.sendError( HttpServletResponse.SC_NOT_FOUND );
+            return;
+        }
+        RenderRequest render = new RenderRequest( req, resp );
+        if( !render.submit( () -> handleSprite( req, resp, render ) ) ) {
+            render.reject();
+        }
+    }
+
+    private interface Handler {
+        void handle() throws Exception;
+    }
+
+    /** How long a request may wait for and take to render before it's answered 503 anyway. */
+    private static final long ASYNC_TIMEOUT_MILLIS = 60_000;
+
+    /** Our own request timeout rather than the container's async one: that one answers the
+     *  request itself when it fires, even while a render thread is in the middle of writing it. */
+    private static final ScheduledExecutorService TIMEOUTS = Executors.newSingleThreadScheduledExecutor( r -> {
+        Thread t = new Thread( r, "Image Request Timeout" );
+        t.setDaemon( true );
+        return t;
+    } );
+
+    /**
+     * Every image request is rendered on KStarsCluster's imageRenderer (see RenderExecutor), never
+     * on the Jetty thread it came in on — that one returns right away, the response is completed
+     * asynchronously once the render ran. A full render queue is answered 503 with a Retry-After
+     * straight away. A request that times out or whose connection fails (the browser went away)
+     * before its render started is dropped from the queue and answered 503; one that's already
+     * rendering finishes (into the cache, for next time) and completes the request itself.
+     */
+    private void renderAsync( HttpServletRequest req, HttpServletResponse resp, Handler handler ) throws IOException {
+        RenderRequest render = new RenderRequest( req, resp );
+        if( !render.submit( handler ) ) {
+            render.reject();
+        }
+    }
+
+    /**
+     * One async image request and the render tasks ("parts") answering it — usually just the one
+     * from renderAsync, but a part may submit more (see handleSprite). The request is completed by
+     * whichever thread ends its last part, whether that part ran or was dropped from the queue, so
+     * exactly one thread completes it and nothing writes to it afterwards. Abandoning it (timeout,
+     * connection error) only cancels the parts still queued — a part that's already running is
+     * left to finish, and only a request nobody answered yet gets the 503.
+     */
+    private class RenderRequest {
+        private final HttpServletRequest req;
+        private final HttpServletResponse resp;
+        private final AsyncContext async;
+        private final ScheduledFuture<?> timeout;
+
+        private final List<RenderExecutor.Task> tasks = new ArrayList<>();
+        /** Parts submitted that haven't run to the end or been cancelled yet. */
+        private int pending = 0;
+        private volatile boolean abandoned = false;
+
+        RenderRequest( HttpServletRequest req, HttpServletResponse resp ) {
+            this.req = req;
+            this.resp = resp;
+
+            async = req.startAsync();
+            async.setTimeout( 0 );
+            async.addListener( new AsyncListener() {
+                @Override
+                public void onTimeout( AsyncEvent event ) {
+                }
+
+                @Override
+                public void onError( AsyncEvent event ) {
+                    abandon();
+                }
+
+                @Override
+                public void onComplete( AsyncEvent event ) {
+                }
+
+                @Override
+                public void onStartAsync( AsyncEvent event ) {
+                }
+            } );
+            timeout = TIMEOUTS.schedule( this::abandon, ASYNC_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS );
+        }
+
+        /** False if the render queue is full or the request was already abandoned. */
+        boolean submit( Handler part ) {
+            synchronized( this ) {
+                if( abandoned ) {
+                    return false;
+                }
+                pending++;
+            }
+
+            RenderExecutor.Task task = renderer.submit( () -> run( part ), this::wanted, this::partDone );
+
+            synchronized( this ) {
+                if( task == null ) {
+                    // never the last part: either it's the first (and the caller rejects the
+                    // request), or it was submitted by a part that's still running
+                    pending--;
+                    return false;
+                }
+                tasks.add( task );
+                return true;
+            }
+        }
+
+        boolean isAbandoned() {
+            return abandoned;
+        }
+
+        void reject() throws IOException {
+            timeout.cancel( false );
+            resp.setHeader( "Retry-After", "1" );
+            resp.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+            async.complete();
+        }
+
+        private boolean wanted() {
+            if( !abandoned && connectionOpen( req ) ) {
+                return true;
+            }
+            abandoned = true;
+            return false;
+        }
+
+        private void abandon() {
+            List<RenderExecutor.Task> queued;
+            synchronized( this ) {
+                abandoned = true;
+                queued = new ArrayList<>( tasks );
+            }
+            for( RenderExecutor.Task t : queued ) {
+                // each one this actually takes out of the queue ends through partDone(); one
+                // that's already running ends through its own finally
+                t.cancel();
+            }
+        }
+
+        private void run( Handler part ) {
+            try {
+                if( !abandoned ) {
+                    part.handle();
+                }
+            }
+            catch( Throwable t ) {
+                // a failed write of a response already under way: the browser went away mid-render
+                boolean clientGone = t instanceof IOException && resp.isCommitted();
+                if( !abandoned && !clientGone ) {
+                    SimpleLogger.getLogger().logError( "Failed to serve " + req.getRequestURI(), t );
+                    try {
+                        if( !resp.isCommitted() ) {
+                            resp.sendError( HttpServletResponse.SC_INTERNAL_SERVER_ERROR );
+                        }
+                    }
+                    catch( Throwable ignored ) {
+                        // the connection is gone
+                    }
+                }
+            }
+            finally {
+                partDone();
+            }
+        }
+
+        private void partDone() {
+            synchronized( this ) {
+                if( --pending > 0 ) {
+                    return;
+                }
+            }
+
+            timeout.cancel( false );
+            try {
+                if( abandoned && !resp.isCommitted() ) {
+                    resp.sendError( HttpServletResponse.SC_SERVICE_UNAVAILABLE );
+                }
+            }
+            catch( Throwable ignored ) {
+                // the connection is gone
+            }
+            async.complete();
+        }
+    }
+
+    private static class SpriteRequest {
+        List<String> files;
+        Integer maxDim;
+    }
+
+    /**
+     * POST /sprite with {"files": [...], "maxDim": 200} — up to ThumbnailSprite.MAX_FILES
+     * captured frames' thumbnails (each with its own auto-stretch) as one JPEG sprite sheet, one
+     * request for a whole screenful of the image strip instead of two per frame. Little-endian
+     * like the preview: uint32 header length, the header (UTF-8 JSON: width, height, and per
+     * frame its cell and auto-stretch; frames that aren't known captures or failed to render are
+     * listed under "missing"), then the JPEG. Every frame whose thumbnail isn't cached yet is
+     * rendered as a part of its own on the render executor, and the last of them answers.
+     */
+    private void handleSprite( HttpServletRequest req, HttpServletResponse resp, RenderRequest render ) throws Exception {
+        SpriteRequest request;
+        try {
+            request = gson.fromJson( req.getReader(), SpriteRequest.class );
+        }
+        catch( JsonParseException e ) {
+            request = null;
+        }
+        if( request == null || request.files == null ) {
+            resp.sendError( HttpServletResponse.SC_BAD_REQUEST );
+            return;
+        }
+        int maxDim = clamp( request.maxDim != null ? request.maxDim : 200, 32, 400 );
+
+        List<File> files = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for( String name : request.files ) {
+            File fitsFile = name != null ? cluster.history.resolveKnownCapturedFile( name ) : null;
+            if( fitsFile == null || files.size() >= ThumbnailSprite.MAX_FILES ) {
+                missing.add( name );
+                continue;
+            }
+            files.add( fitsFile );
+            names.add( name );
         }
-        catch( IOException e ) {
-            throw e;
+
+        // a part the abandoned request won't take is dropped, not rendered here instead
+        ThumbnailSprite.render( thumbnails, files, names, maxDim, part -> render.submit( part::run ) || render.isAbandoned(),
+            sheet -> writeSprite( resp, sheet, names, missing ) );
+    }
+
+    private void writeSprite( HttpServletResponse resp, ThumbnailSprite.Sheet sheet, List<String> names, List<String> missing ) throws IOException {
+        Set<String> rendered = new HashSet<>();
+        for( ThumbnailSprite.Entry entry : sheet.entries ) {
+            rendered.add( entry.file );
         }
-        catch( Exception e ) {
-            throw new IOException( e );
+        for( String name : names ) {
+            if( !rendered.contains( name ) ) {
+                missing.add( name );
+            }
         }
+
+        Map<String,Object> header = new LinkedHashMap<>();
+        header.put( "width", sheet.width );
+        header.put( "height", sheet.height );
+        header.put( "entries", sheet.entries );
+        header.put( "missing", missing );
+        byte[] json = gson.toJson( header ).getBytes( StandardCharsets.UTF_8 );
+
+        resp.setContentType( "application/octet-stream" );
+        resp.setContentLength( 4 + json.length + sheet.jpeg.length );
+        OutputStream out = resp.getOutputStream();
+        out.write( ByteBuffer.allocate( 4 ).order( ByteOrder.LITTLE_ENDIAN ).putInt( json.length ).array() );
+        out.write( json );
+        out.write( sheet.jpeg );
+        out.flush();
     }
 
     private void handleThumb( HttpServletRequest req, HttpServletResponse resp ) throws Exception {
@@ -89,11 +384,64 @@ public class ImageServlet extends HttpServlet {
         }
 
         int maxDim = clamp( parseIntParam( req, "maxDim", 320 ), 32, 8000 );
-        double shadows = clamp( parseDoubleParam( req, "shadows", 0.0 ), 0, 1 );
-        double midtones = clamp( parseDoubleParam( req, "midtones", 0.5 ), 0, 1 );
-        double highlights = clamp( parseDoubleParam( req, "highlights", 1.0 ), 0, 1 );
+        double[] shmh = parseStretchParams( req );
 
-        byte[] jpeg = thumbnails.renderThumbnail( fitsFile, maxDim, shadows, midtones, highlights );
+        byte[] jpeg = thumbnails.renderThumbnail( fitsFile, maxDim, shmh[0], shmh[1], shmh[2] );
+        writeJpeg( resp, jpeg );
+    }
+
+    /** shadows/midtones/highlights params, defaulting to no stretch at all. */
+    private static double[] parseStretchParams( HttpServletRequest req ) {
+        return new double[]{
+            clamp( parseDoubleParam( req, "shadows", 0.0 ), 0, 1 ),
+            clamp( parseDoubleParam( req, "midtones", 0.5 ), 0, 1 ),
+            clamp( parseDoubleParam( req, "highlights", 1.0 ), 0, 1 )
+        };
+    }
+
+    /** /tiles?file= — the frame's deep-zoom pyramid (FitsThumbnail.Pyramid): width, height,
+     *  tileSize and maxLevel, everything needed to work out which tiles cover what. */
+    private void handlePyramid( HttpServletRequest req, HttpServletResponse resp ) throws Exception {
+        File fitsFile = resolveFileParam( req, resp );
+        if( fitsFile == null ) {
+            return;
+        }
+        resp.setContentType( "application/json;charset=utf-8" );
+        gson.toJson( FitsThumbnail.pyramid( fitsFile ), resp.getWriter() );
+    }
+
+    /**
+     * /tiles/{level}/{x}/{y}?file=&shadows=&midtones=&highlights= — one 256px JPEG tile, so the
+     * viewer can zoom a 60 MP frame to 1:1 fetching only what's on screen instead of the whole
+     * frame as one giant JPEG.
+     */
+    private void handleTile( String path, HttpServletRequest req, HttpServletResponse resp ) throws Exception {
+        String[] parts = path.split( "/" );
+        int[] lxy = new int[ 3 ];
+        try {
+            if( parts.length != 3 ) {
+                throw new NumberFormatException( path );
+            }
+            for( int i = 0; i < 3; i++ ) {
+                lxy[i] = Integer.parseInt( parts[i] );
+            }
+        }
+        catch( NumberFormatException e ) {
+            resp.sendError( HttpServletResponse.SC_NOT_FOUND );
+            return;
+        }
+
+        File fitsFile = resolveFileParam( req, resp );
+        if( fitsFile == null ) {
+            return;
+        }
+        double[] shmh = parseStretchParams( req );
+
+        byte[] jpeg = thumbnails.renderTile( fitsFile, lxy[0], lxy[1], lxy[2], shmh[0], shmh[1], shmh[2] );
+        if( jpeg == null ) {
+            resp.sendError( HttpServletResponse.SC_NOT_FOUND );
+            return;
+        }
         writeJpeg( resp, jpeg );
     }
 
@@ -104,17 +452,80 @@ public class ImageServlet extends HttpServlet {
         }
 
         boolean strong = "true".equals( req.getParameter( "strong" ) );
-        double[] shmh = thumbnails.computeAutoStretch( fitsFile, strong );
+        // full=true: every pixel instead of a ~400x400 grid — a few tens of ms more for a
+        // 16-bit frame, for a slightly more accurate STF
+        boolean allPixels = "true".equals( req.getParameter( "full" ) );
+        double[] shmh = thumbnails.computeAutoStretch( fitsFile, strong, allPixels );
+
+        Map<String,Object> res = stretchJson( shmh );
+        resp.setContentType( "application/json;charset=utf-8" );
+        gson.toJson( res, resp.getWriter() );
+    }
 
+    /**
+     * A linear (unstretched) downsampled frame for the browser to stretch itself — see
+     * FitsThumbnail.Preview. Dragging an STF slider over a JPEG from the thumb handler means a
+     * render + encode per position; over this it's a lookup table in the browser, no request at
+     * all. One binary response, little-endian throughout:
+     *
+     *   uint32 header length, the header (UTF-8 JSON: width, height, sourceWidth, sourceHeight,
+     *   a 256-bin histogram, the normal and strong auto-stretch), zero padding to a multiple of
+     *   4 bytes, then width * height uint16 levels, row by row — 65535 is a normalized 1.
+     */
+    private void handlePreview( HttpServletRequest req, HttpServletResponse resp ) throws Exception {
+        File fitsFile = resolveFileParam( req, resp );
+        if( fitsFile == null ) {
+            return;
+        }
+
+        int maxDim = clamp( parseIntParam( req, "maxDim", PREVIEW_MAX_DIM ), 32, 8000 );
+        FitsThumbnail.Preview preview = FitsThumbnail.preview( fitsFile, maxDim );
+
+        Map<String,Object> header = new LinkedHashMap<>();
+        header.put( "width", preview.width );
+        header.put( "height", preview.height );
+        header.put( "sourceWidth", preview.sourceWidth );
+        header.put( "sourceHeight", preview.sourceHeight );
+        header.put( "histogram", preview.histogram( 256 ) );
+        header.put( "autoStretch", stretchJson( thumbnails.computeAutoStretch( fitsFile, false ) ) );
+        header.put( "strongAutoStretch", stretchJson( thumbnails.computeAutoStretch( fitsFile, true ) ) );
+        byte[] json = gson.toJson( header ).getBytes( StandardCharsets.UTF_8 );
+        int padding = ( 4 - json.length % 4 ) % 4;
+
+        resp.setContentType( "application/octet-stream" );
+        resp.setContentLengthLong( 4L + json.length + padding + 2L * preview.levels.length );
+        OutputStream out = resp.getOutputStream();
+
+        ByteBuffer buf = ByteBuffer.allocate( 64 * 1024 ).order( ByteOrder.LITTLE_ENDIAN );
+        buf.putInt( json.length );
+        out.write( buf.array(), 0, buf.position() );
+        out.write( json );
+        out.write( new byte[ padding ] );
+
+        char[] levels = preview.levels;
+        for( int pos = 0; pos < levels.length; ) {
+            buf.clear();
+            int n = Math.min( levels.length - pos, buf.capacity() / 2 );
+            buf.asCharBuffer().put( levels, pos, n );
+            out.write( buf.array(), 0, n * 2 );
+            pos += n;
+        }
+        out.flush();
+    }
+
+    /** What the image viewer asks for — a 6000x4000 frame is then 12 MB of levels. */
+    private static final int PREVIEW_MAX_DIM = 3000;
+
+    private static Map<String,Object> stretchJson( double[] shmh ) {
         Map<String,Object> res = new LinkedHashMap<>();
         res.put( "shadows", shmh[0] );
         res.put( "midtones", shmh[1] );
         res.put( "highlights", shmh[2] );
-        resp.setContentType( "application/json;charset=utf-8" );
-        gson.toJson( res, resp.getWriter() );
+        return res;
     }
 
-    /** Shared by the thumb/autostretch handlers: validates the "file" param, 404s on the response if it's unusable. */
+    /** Shared by the thumb/autostretch/preview/tile handlers: validates the "file" param, 404s on
+     *  the response if it's unusable. */
     private File resolveFileParam( HttpServletRequest req, HttpServletResponse resp ) {
         String file = req.getParameter( "file" );
         if( file == null || file.isBlank() ) {
@@ -129,6 +540,13 @@ public class ImageServlet extends HttpServlet {
         return fitsFile;
     }
 
+    /** Whether the request's connection is still there, as far as Jetty knows — a closed one
+     *  that nothing has read from or written to yet may still look open. */
+    private static boolean connectionOpen( HttpServletRequest req ) {
+        Request base = Request.getBaseRequest( req );
+        return base == null || base.getHttpChannel() == null || base.getHttpChannel().getEndPoint().isOpen();
+    }
+
     private static void writeJpeg( HttpServletResponse resp, byte[] jpeg ) throws IOException {
         resp.setContentType( "image/jpeg" );
         resp.setContentLength( jpeg.length );
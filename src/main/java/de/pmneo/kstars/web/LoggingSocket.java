@@ -10,22 +10,30 @@ import jakarta.websocket.OnOpen;
 import jakarta.websocket.Session;
 import jakarta.websocket.server.ServerEndpoint;
 
+/**
+ * Streams log lines to the web UI's log view through a bounded FIFO {@link OutboundMailbox}: one
+ * send in flight at a time, and a client that falls more than MAX_QUEUED lines behind loses the
+ * oldest ones rather than piling them up in Jetty's buffers.
+ */
 @ServerEndpoint("/logging/")
 public class LoggingSocket implements LogListener {
-    private Session session;
+    private static final int MAX_QUEUED = 1000;
+    private static final long MAX_LAG_MILLIS = 30_000;
+
+    private final OutboundMailbox<String> mailbox = new OutboundMailbox<>( "logging", MAX_QUEUED, MAX_LAG_MILLIS, message -> message );
 
     @OnOpen
     public void onOpen(Session session)
     {
-        this.session = session;
+        mailbox.open( session );
         SimpleLogger.getLogger().addListener( this );
     }
 
     @OnClose
     public void onClose(CloseReason close)
     {
-        this.session = null;
         SimpleLogger.getLogger().removeListener( this );
+        mailbox.close();
     }
 
     @OnMessage
@@ -40,14 +48,8 @@ public class LoggingSocket implements LogListener {
 
     @Override
     public void logMessage(String message) {
-        if (this.session != null) {
-            this.session.getAsyncRemote().sendText(message, res -> {
-                if( res.getException() != null ) {
-                    //deliberately NOT routed through SimpleLogger: this IS a log listener,
-                    //logging the send failure would re-trigger a send and recurse endlessly
-                    res.getException().printStackTrace();
-                }
-            } );
-        }
+        //a laggard just gets disconnected — deliberately NOT logged through SimpleLogger: this IS
+        //a log listener, logging it would re-enter every open logging socket's mailbox
+        mailbox.offer( message );
     }
 }
@@ -0,0 +1,199 @@
+package de.pmneo.kstars.web;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.CloseReason.CloseCodes;
+import jakarta.websocket.Session;
+
+/**
+ * One WebSocket client's outbound queue. Used to be a bare getAsyncRemote().sendText() per
+ * message with no limit on how many were outstanding — a phone on weak Wi-Fi just piled up
+ * pending frames in Jetty's buffers for as long as it stayed connected.
+ *
+ * Now there's at most one send in flight per client; the next one only goes out from that send's
+ * completion callback. Whatever arrives in the meantime waits in a bounded queue, and once that's
+ * full the oldest entry is dropped — with a capacity of 1 (the status socket) that's simply
+ * latest-wins: a slow client skips straight to the newest snapshot. Items are only turned into
+ * text when they're actually about to be sent (see {@link Renderer}), so a coalesced item costs
+ * nothing.
+ *
+ * A client whose send has been in flight for longer than maxLagMillis is closed (the web UI's
+ * socket reconnects on its own and starts over with a fresh snapshot). The per-client counters
+ * are listed by {@link #stats()}.
+ */
+public class OutboundMailbox<T> {
+
+    /** Turns the item that's about to be sent into its frame — always called by one thread at a time
+     *  per mailbox, in send order, so it may keep per-client state (e.g. the revision last sent).
+     *  Returning null skips the item. */
+    public interface Renderer<T> {
+        String render( T item );
+    }
+
+    private static final Set<OutboundMailbox<?>> open = ConcurrentHashMap.newKeySet();
+
+    private final String endpoint;
+    private final int capacity;
+    private final long maxLagMillis;
+    private final Renderer<T> renderer;
+
+    private final ArrayDeque<T> queue = new ArrayDeque<>();
+    private Session session;
+    private boolean inFlight = false;
+    private long inFlightSince = 0;
+
+    private long sent = 0;
+    private long dropped = 0;
+    private long failed = 0;
+    private long lastSendMillis = 0;
+    private long maxSendMillis = 0;
+    private final long connectedSince = System.currentTimeMillis();
+
+    public OutboundMailbox( String endpoint, int capacity, long maxLagMillis, Renderer<T> renderer ) {
+        this.endpoint = endpoint;
+        this.capacity = capacity;
+        this.maxLagMillis = maxLagMillis;
+        this.renderer = renderer;
+    }
+
+    public synchronized void open( Session session ) {
+        this.session = session;
+        open.add( this );
+    }
+
+    public synchronized void close() {
+        this.session = null;
+        this.queue.clear();
+        open.remove( this );
+    }
+
+    /**
+     * Queues an item for sending. Returns false if the client had been lagging for longer than
+     * maxLagMillis and got disconnected instead — the caller may want to log that (this class
+     * deliberately doesn't, LoggingSocket is one of its users).
+     */
+    public boolean offer( T item ) {
+        Session laggard = null;
+        synchronized( this ) {
+            if( session == null ) {
+                return true;
+            }
+
+            if( inFlight && System.currentTimeMillis() - inFlightSince > maxLagMillis ) {
+                laggard = session;
+                close();
+            }
+            else {
+                while( queue.size() >= capacity ) {
+                    queue.pollFirst();
+                    dropped++;
+                }
+                queue.addLast( item );
+            }
+        }
+
+        if( laggard != null ) {
+            try {
+                laggard.close( new CloseReason( CloseCodes.TRY_AGAIN_LATER, "Client too slow, reconnect" ) );
+            }
+            catch( IOException | IllegalStateException e ) {
+                //already closing
+            }
+            return false;
+        }
+
+        flush();
+        return true;
+    }
+
+    private void flush() {
+        T item;
+        Session s;
+        synchronized( this ) {
+            if( inFlight || session == null || queue.isEmpty() ) {
+                return;
+            }
+            item = queue.pollFirst();
+            s = session;
+            inFlight = true;
+            inFlightSince = System.currentTimeMillis();
+        }
+
+        String text;
+        try {
+            text = renderer.render( item );
+        }
+        catch( Throwable t ) {
+            //deliberately NOT routed through SimpleLogger: LoggingSocket is a log listener itself,
+            //logging from here would re-enter this very mailbox
+            t.printStackTrace();
+            completed( false );
+            return;
+        }
+
+        if( text == null ) {
+            synchronized( this ) {
+                inFlight = false;
+            }
+            flush();
+            return;
+        }
+
+        try {
+            s.getAsyncRemote().sendText( text, res -> completed( res.isOK() ) );
+        }
+        catch( Throwable t ) {
+            //session closed underneath us
+            completed( false );
+        }
+    }
+
+    private void completed( boolean ok ) {
+        synchronized( this ) {
+            long took = System.currentTimeMillis() - inFlightSince;
+            inFlight = false;
+            lastSendMillis = took;
+            maxSendMillis = Math.max( maxSendMillis, took );
+            if( ok ) {
+                sent++;
+            }
+            else {
+                failed++;
+            }
+        }
+        flush();
+    }
+
+    public synchronized Map<String,Object> getStats() {
+        long now = System.currentTimeMillis();
+
+        Map<String,Object> res = new LinkedHashMap<>();
+        res.put( "endpoint", endpoint );
+        res.put( "connectedSeconds", ( now - connectedSince ) / 1000 );
+        res.put( "queued", queue.size() );
+        res.put( "lagMillis", inFlight ? now - inFlightSince : 0 );
+        res.put( "lastSendMillis", lastSendMillis );
+        res.put( "maxSendMillis", maxSendMillis );
+        res.put( "sent", sent );
+        res.put( "dropped", dropped );
+        res.put( "failed", failed );
+        return res;
+    }
+
+    /** Every currently connected client's counters — served by the "sockets" command. */
+    public static List<Map<String,Object>> stats() {
+        List<Map<String,Object>> res = new ArrayList<>();
+        for( OutboundMailbox<?> m : open ) {
+            res.add( m.getStats() );
+        }
+        return res;
+    }
+}
@@ -1,7 +1,18 @@
 package de.pmneo.kstars.web;
 
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import de.pmneo.kstars.SimpleLogger;
 import de.pmneo.kstars.StatusBroadcaster;
+import de.pmneo.kstars.StatusSnapshot;
 import de.pmneo.kstars.StatusBroadcaster.StatusListener;
+import de.pmneo.kstars.StatusBroadcaster.StatusUpdate;
 import jakarta.websocket.CloseReason;
 import jakarta.websocket.OnClose;
 import jakarta.websocket.OnError;
@@ -10,41 +21,193 @@ import jakarta.websocket.OnOpen;
 import jakarta.websocket.Session;
 import jakarta.websocket.server.ServerEndpoint;
 
+/**
+ * Two wire protocols, picked once per connection via the "protocol" query parameter:
+ * the default (legacy) one sends the complete snapshot object on every change, exactly like
+ * before; "/status/?protocol=delta" sends a {"type":"full"} envelope first and then only
+ * {"type":"patch"} envelopes carrying the keys that changed and the history samples appended
+ * since (see StatusBroadcaster.StatusUpdate). A delta client that notices a gap in the revisions
+ * sends {"type":"resync"} — optionally with "cursors" (the nextSeq it holds per history series),
+ * so the fresh full envelope only has to carry the samples it's actually missing.
+ *
+ * Updates go out through a latest-wins {@link OutboundMailbox}: a client that can't keep up
+ * never has more than one frame in flight, and the message is only picked (patch if the client
+ * is exactly at the update's base revision, a full envelope otherwise) when it's actually sent —
+ * so skipping intermediate revisions just turns the next frame into a full one.
+ *
+ * Either protocol may narrow what it gets to some topics (see StatusSnapshot) with a
+ * "topics=guide,images:Primary" query parameter; a delta client can also change its topics later
+ * with {"type":"subscribe","topics":[...]}, answered with a full envelope of the new selection.
+ * No topics means everything, same as before. A delta client only gets a patch for a revision
+ * that touched one of its topics — the next one that does is simply based on the revision it was
+ * last sent.
+ */
 @ServerEndpoint("/status/")
 public class StatusSocket implements StatusListener {
-    private Session session;
+    private static final Gson gson = new Gson();
+
+    /** A client whose send hasn't completed for this long is disconnected (and reconnects). */
+    private static final long MAX_LAG_MILLIS = 30_000;
+
+    private final OutboundMailbox<StatusUpdate> mailbox = new OutboundMailbox<>( "status", 1, MAX_LAG_MILLIS, this::render );
+
+    private String sessionId;
+    private volatile boolean delta = false;
+    /** Topic subscriptions as the client sent them, and their base topics — null for everything. */
+    private volatile Set<String> topics = null;
+    private volatile Set<String> baseTopics = null;
+    /** Revision this client was last sent (full or patch) — the base of the next patch. Only touched by render(). */
+    private long sentRev = -1;
+    /** Latest revision this client is up to date with — later than sentRev if the revisions in
+     *  between didn't touch any of its topics. Only touched by render(). */
+    private long coveredRev = -1;
+    /** Set by a resync request: the next frame must be a full envelope (built from these cursors, if any). */
+    private boolean resyncRequested = false;
+    private JsonObject resyncCursors = null;
 
     @OnOpen
     public void onOpen(Session session)
     {
-        this.session = session;
+        List<String> protocol = session.getRequestParameterMap().get( "protocol" );
+        this.delta = protocol != null && protocol.contains( "delta" );
+        this.sessionId = session.getId();
+
+        List<String> topicsParam = session.getRequestParameterMap().get( "topics" );
+        if( topicsParam != null && !topicsParam.isEmpty() ) {
+            Set<String> requested = new LinkedHashSet<>();
+            for( String param : topicsParam ) {
+                for( String topic : param.split( "," ) ) {
+                    if( !topic.isBlank() ) {
+                        requested.add( topic.trim() );
+                    }
+                }
+            }
+            setTopics( requested );
+        }
+
+        mailbox.open( session );
+
         StatusBroadcaster.getInstance().addListener( this );
     }
 
     @OnClose
     public void onClose(CloseReason close)
     {
-        this.session = null;
         StatusBroadcaster.getInstance().removeListener( this );
+        mailbox.close();
     }
 
     @OnMessage
     public void onMessage( String message ) {
-        //keep-alive pings from the client — nothing to do
+        //anything that isn't a json control message is a keep-alive ping from the client — nothing to do
+        if( !delta || !message.startsWith( "{" ) ) {
+            return;
+        }
+
+        try {
+            JsonObject msg = gson.fromJson( message, JsonObject.class );
+            String type = msg != null && msg.has( "type" ) ? msg.get( "type" ).getAsString() : null;
+            if( "resync".equals( type ) ) {
+                resync( msg.has( "cursors" ) && msg.get( "cursors" ).isJsonObject() ? msg.getAsJsonObject( "cursors" ) : null );
+            }
+            else if( "subscribe".equals( type ) ) {
+                if( msg.has( "topics" ) && msg.get( "topics" ).isJsonArray() ) {
+                    Set<String> requested = new LinkedHashSet<>();
+                    msg.getAsJsonArray( "topics" ).forEach( t -> requested.add( t.getAsString() ) );
+                    setTopics( requested );
+                }
+                else {
+                    setTopics( null );
+                }
+                StatusBroadcaster.getInstance().subscriptionsChanged();
+                //the new selection may add keys this client doesn't have yet — start it over from a full envelope
+                resync( null );
+            }
+        }
+        catch( Throwable t ) {
+            //malformed control message — ignore, same as an unknown keep-alive
+        }
     }
 
     @OnError
     public void onError( Throwable t ) {
     }
 
+    private void setTopics( Set<String> requested ) {
+        if( requested == null ) {
+            this.baseTopics = null;
+            this.topics = null;
+            return;
+        }
+
+        Set<String> base = new HashSet<>();
+        for( String topic : requested ) {
+            base.add( StatusSnapshot.baseTopic( topic ) );
+        }
+        this.baseTopics = Set.copyOf( base );
+        this.topics = Set.copyOf( requested );
+    }
+
     @Override
-    public void statusChanged(String json) {
-        if (this.session != null) {
-            this.session.getAsyncRemote().sendText(json, res -> {
-                if( res.getException() != null ) {
-                    res.getException().printStackTrace();
-                }
-            } );
+    public Set<String> topics() {
+        return topics;
+    }
+
+    private void resync( JsonObject cursors ) {
+        StatusUpdate update = StatusBroadcaster.getInstance().current();
+        if( update != null ) {
+            synchronized( this ) {
+                resyncRequested = true;
+                resyncCursors = cursors;
+            }
+            mailbox.offer( update );
+        }
+    }
+
+    @Override
+    public void statusChanged( StatusUpdate update ) {
+        if( !mailbox.offer( update ) ) {
+            SimpleLogger.getLogger().logMessage( "Disconnected status client " + sessionId + ": no send completed for " + MAX_LAG_MILLIS / 1000 + "s" );
+        }
+    }
+
+    /** Picks the frame for the update that's about to go out — see the class comment. */
+    private String render( StatusUpdate update ) {
+        Set<String> topics = baseTopics;
+        if( !delta ) {
+            return update.fullJson( topics );
+        }
+
+        boolean resync;
+        JsonObject cursors;
+        synchronized( this ) {
+            resync = resyncRequested;
+            cursors = resyncCursors;
+            resyncRequested = false;
+            resyncCursors = null;
+        }
+
+        if( resync ) {
+            sentRev = coveredRev = update.rev;
+            return cursors == null ? update.fullMessage( topics ) : update.resyncMessage( cursors, topics );
+        }
+        else if( update.rev <= coveredRev ) {
+            //already covered by a resync that raced this publish
+            return null;
+        }
+        else if( update.baseRev == coveredRev ) {
+            String patch = update.patchMessage( sentRev, topics );
+            coveredRev = update.rev;
+            if( patch == null ) {
+                //nothing under this client's topics changed — it's up to date without a frame
+                return null;
+            }
+            sentRev = update.rev;
+            return patch;
+        }
+        else {
+            sentRev = coveredRev = update.rev;
+            return update.fullMessage( topics );
         }
     }
 }
@@ -19,6 +19,15 @@ export async function fetchScheduleFileJobs(): Promise<SchedulerJob[]> {
   return Array.isArray(jobs) ? (jobs as SchedulerJob[]) : [];
 }
 
+/** A scheduler job's .esq XML. The status stream's job entries only carry its sequenceHash (the
+ * XML itself used to be pushed every second); pass that along and the response is cacheable for
+ * good. Null if the backend doesn't know the job, or its sequence has changed since. */
+export async function fetchSequenceContent(jobName: string, sequenceHash?: string | null): Promise<string | null> {
+  const path = `sequenceContent/${encodeURIComponent(jobName)}` + (sequenceHash ? `/${sequenceHash}` : '');
+  const res = await fetch(`/cmd/${path}`);
+  return res.ok ? res.text() : null;
+}
+
 export const actions = {
   connection: {
     startEkos: () => runAction('startEkos'),
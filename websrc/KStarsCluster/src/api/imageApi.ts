@@ -1,5 +1,137 @@
 // Canonical definitions now live in skymap-widget (SkyMapCard's own "last image" overlay needs
 // them too) — re-exported here so this dashboard's other consumers (ImageStrip, ImageViewer,
 // CaptureCompareStrip) don't need to know that.
+import type { StretchSettings } from 'skymap-widget';
+
 export type { StretchSettings } from 'skymap-widget';
 export { DEFAULT_STRETCH, imageUrl, fetchAutoStretch } from 'skymap-widget';
+
+/** A linear (unstretched) downsampled frame from /images/preview — see ImageServlet.handlePreview
+ * for the wire format. levels are normalized pixel values, 65535 = 1. */
+export interface LinearPreview {
+  width: number;
+  height: number;
+  sourceWidth: number;
+  sourceHeight: number;
+  histogram: number[];
+  autoStretch: StretchSettings;
+  strongAutoStretch: StretchSettings;
+  levels: Uint16Array;
+}
+
+export async function fetchPreview(filename: string, maxDim?: number): Promise<LinearPreview> {
+  const params = new URLSearchParams({ file: filename });
+  if (maxDim != null) params.set('maxDim', String(maxDim));
+  const res = await fetch(`/images/preview?${params}`);
+  if (!res.ok) throw new Error(`preview ${res.status}`);
+
+  const buf = await res.arrayBuffer();
+  const view = new DataView(buf);
+  const headerLength = view.getUint32(0, true);
+  const header = JSON.parse(new TextDecoder().decode(new Uint8Array(buf, 4, headerLength)));
+  const levelsOffset = 4 + Math.ceil(headerLength / 4) * 4;
+
+  // Uint16Array reads in platform byte order — little-endian on everything a browser runs on,
+  // but checked rather than assumed.
+  let levels: Uint16Array;
+  if (new Uint8Array(new Uint16Array([1]).buffer)[0] === 1) {
+    levels = new Uint16Array(buf, levelsOffset, header.width * header.height);
+  } else {
+    levels = new Uint16Array(header.width * header.height);
+    for (let i = 0; i < levels.length; i++) levels[i] = view.getUint16(levelsOffset + i * 2, true);
+  }
+  return { ...header, levels };
+}
+
+/** Edge length of a deep-zoom tile, FitsThumbnail.TILE_SIZE. */
+export const TILE_SIZE = 256;
+
+/** One JPEG tile of the frame's deep-zoom pyramid (see FitsThumbnail.Pyramid), stretched
+ * server-side. */
+export function tileUrl(filename: string, level: number, x: number, y: number, stretch: StretchSettings): string {
+  const params = new URLSearchParams({
+    file: filename,
+    shadows: String(stretch.shadows),
+    midtones: String(stretch.midtones),
+    highlights: String(stretch.highlights),
+  });
+  return `/images/tiles/${level}/${x}/${y}?${params}`;
+}
+
+/** One frame's cell in a sprite sheet (ThumbnailSprite.Entry), with its auto-stretch. */
+export interface SpriteEntry {
+  file: string;
+  x: number;
+  y: number;
+  width: number;
+  height: number;
+  shadows: number;
+  midtones: number;
+  highlights: number;
+}
+
+export interface SpriteSheet {
+  width: number;
+  height: number;
+  entries: SpriteEntry[];
+  /** files that aren't known captures or failed to render */
+  missing: string[];
+  jpeg: Blob;
+}
+
+/** Up to ThumbnailSprite.MAX_FILES thumbnails in one request — see ImageServlet.handleSprite. */
+export const SPRITE_MAX_FILES = 100;
+
+export async function fetchSprite(files: string[], maxDim: number): Promise<SpriteSheet> {
+  const res = await fetch('/images/sprite', {
+    method: 'POST',
+    headers: { 'Content-Type': 'application/json' },
+    body: JSON.stringify({ files, maxDim }),
+  });
+  if (!res.ok) throw new Error(`sprite ${res.status}`);
+
+  const buf = await res.arrayBuffer();
+  const headerLength = new DataView(buf).getUint32(0, true);
+  const header = JSON.parse(new TextDecoder().decode(new Uint8Array(buf, 4, headerLength)));
+  return { ...header, jpeg: new Blob([buf.slice(4 + headerLength)], { type: 'image/jpeg' }) };
+}
+
+/** Midtones transfer function, same as FitsThumbnail.mtf on the server. */
+function mtf(m: number, x: number): number {
+  if (x <= 0) return 0;
+  if (x >= 1) return 1;
+  return ((m - 1) * x) / ((2 * m - 1) * x - m);
+}
+
+/** Gray value of every level under the given STF — the same clamps and rounding as
+ * FitsThumbnail.render, so a preview looks exactly like the server's JPEG would. */
+export function stretchLut(stretch: StretchSettings): Uint8Array {
+  const s = Math.min(Math.max(stretch.shadows, 0), 1);
+  const h = Math.max(s + 1e-6, Math.min(Math.max(stretch.highlights, 0), 1));
+  const m = Math.min(Math.max(stretch.midtones, 0.00001), 0.99999);
+  const lut = new Uint8Array(65536);
+  for (let i = 0; i < lut.length; i++) {
+    const x = Math.min(Math.max((i / 65535 - s) / (h - s), 0), 1);
+    lut[i] = Math.round(255 * mtf(m, x));
+  }
+  return lut;
+}
+
+/** Draws the preview stretched into the canvas, resizing it to the preview's size. */
+export function drawPreview(canvas: HTMLCanvasElement, preview: LinearPreview, stretch: StretchSettings): void {
+  if (canvas.width !== preview.width) canvas.width = preview.width;
+  if (canvas.height !== preview.height) canvas.height = preview.height;
+  const ctx = canvas.getContext('2d');
+  if (!ctx) return;
+
+  const lut = stretchLut(stretch);
+  const image = ctx.createImageData(preview.width, preview.height);
+  const rgba = new Uint32Array(image.data.buffer);
+  const { levels } = preview;
+  for (let i = 0; i < levels.length; i++) {
+    const g = lut[levels[i]];
+    // opaque gray — R=G=B, so only alpha's position (the high byte, little-endian) matters
+    rgba[i] = 0xff000000 | (g << 16) | (g << 8) | g;
+  }
+  ctx.putImageData(image, 0, 0);
+}
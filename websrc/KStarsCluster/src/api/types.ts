@@ -1,4 +1,7 @@
+/** Every history sample carries its series' sequence number — the status socket's delta protocol
+ * streams new samples as appends keyed on it (see useStatusSocket). */
 export interface HfrSample {
+  seq: number;
   ts: number;
   hfr: number;
   position: number;
@@ -6,6 +9,7 @@ export interface HfrSample {
 
 /** Guide.newAxisDelta — one sample per guide frame, arcsec RA/DEC guiding error. */
 export interface GuideDeltaSample {
+  seq: number;
   ts: number;
   ra: number;
   de: number;
@@ -15,6 +19,7 @@ export interface GuideDeltaSample {
  * lane as contiguous segments between consecutive same-lane events, so there's one row here per
  * actual change, not a sample every tick. */
 export interface TimelineEvent {
+  seq: number;
   ts: number;
   lane: string;
   label: string;
@@ -2,7 +2,93 @@ import { useEffect, useState } from 'react';
 import { connectSocket } from '../ws';
 import type { StatusSnapshot } from './types';
 
-export function useStatusSocket() {
+/** One history series' new samples (see StatusBroadcaster.SeriesCursor.appendJson): keep what we
+ * already have with dropBefore <= seq < from, then append `samples`. */
+interface SeriesAppend {
+  from: number;
+  dropBefore: number;
+  samples: { seq: number }[];
+}
+
+/** A top-level key's append — either one series (guideDeltaHistory, timelineEvents) or one per
+ * train (hfrHistory). */
+type AppendEntry = SeriesAppend | Record<string, SeriesAppend>;
+
+/** StatusSocket's delta protocol (see StatusSocket.java): one full snapshot, then per-key patches
+ * tagged with a revision, with the history series only ever sent as appends. A patch whose base
+ * isn't the revision we're at means we missed one — ask for a resync (telling the server how far
+ * each series already goes, so it doesn't have to resend them whole) and drop patches until the
+ * fresh full snapshot arrives. */
+type StatusMessage =
+  | { type: 'full'; rev: number; status: StatusSnapshot; append?: Record<string, AppendEntry> }
+  | {
+      type: 'patch';
+      rev: number;
+      base: number;
+      set: Partial<StatusSnapshot>;
+      append: Record<string, AppendEntry>;
+      remove: string[];
+    };
+
+const SERIES_KEYS = ['guideDeltaHistory', 'timelineEvents', 'hfrHistory'];
+
+function isSeriesAppend(entry: AppendEntry): entry is SeriesAppend {
+  return Array.isArray((entry as SeriesAppend).samples);
+}
+
+function applySeriesAppend(existing: unknown, append: SeriesAppend): { seq: number }[] {
+  const kept = ((existing as { seq: number }[] | undefined) ?? []).filter(
+    (s) => s.seq >= append.dropBefore && s.seq < append.from,
+  );
+  return kept.concat(append.samples);
+}
+
+function applyAppends(target: StatusSnapshot, appends: Record<string, AppendEntry> | undefined) {
+  for (const [key, entry] of Object.entries(appends ?? {})) {
+    if (isSeriesAppend(entry)) {
+      target[key] = applySeriesAppend(target[key], entry);
+    } else {
+      const perTrain = { ...((target[key] as Record<string, unknown> | undefined) ?? {}) };
+      for (const [train, append] of Object.entries(entry)) {
+        perTrain[train] = applySeriesAppend(perTrain[train], append);
+      }
+      target[key] = perTrain;
+    }
+  }
+}
+
+function nextSeqOf(samples: unknown): number | undefined {
+  const arr = samples as { seq?: number }[] | undefined;
+  const last = arr && arr.length > 0 ? arr[arr.length - 1].seq : undefined;
+  return last === undefined ? undefined : last + 1;
+}
+
+/** What we already hold per series — lets a resync send only what's missing. */
+function seriesCursors(status: StatusSnapshot): Record<string, unknown> {
+  const cursors: Record<string, unknown> = {};
+  for (const key of SERIES_KEYS) {
+    const value = status[key];
+    if (Array.isArray(value)) {
+      const next = nextSeqOf(value);
+      if (next !== undefined) cursors[key] = next;
+    } else if (value && typeof value === 'object') {
+      const perTrain: Record<string, number> = {};
+      for (const [train, samples] of Object.entries(value as Record<string, unknown>)) {
+        const next = nextSeqOf(samples);
+        if (next !== undefined) perTrain[train] = next;
+      }
+      cursors[key] = perTrain;
+    }
+  }
+  return cursors;
+}
+
+/** `topics` narrows what the server computes and sends (see StatusSnapshot.java: "devices",
+ * "scheduler", "guide", "hfr", "images" or "images:<train>", "timeline", "alignment", "mount" —
+ * connection/process state is always included). Omitted means everything. */
+export function useStatusSocket(topics?: string[]) {
+  const topicsParam = topics && topics.length > 0 ? `&topics=${encodeURIComponent(topics.join(','))}` : '';
+
   const [status, setStatus] = useState<StatusSnapshot | null>(null);
   const [connected, setConnected] = useState(false);
 
@@ -13,18 +99,63 @@ export function useStatusSocket() {
       .then(setStatus)
       .catch(() => {});
 
+    let rev = -1;
+    let current: StatusSnapshot | null = null;
+
     return connectSocket(
-      '/status/',
-      (data) => {
+      `/status/?protocol=delta${topicsParam}`,
+      (data, send) => {
+        let msg: StatusMessage;
         try {
-          setStatus(JSON.parse(data));
+          msg = JSON.parse(data);
         } catch {
           //ignore malformed frame
+          return;
+        }
+
+        if (msg.type === 'full') {
+          // A cursor-based resync leaves the series we already hold out of `status` and sends
+          // just their missing samples in `append` — carry our copies over before applying them.
+          const next: StatusSnapshot = { ...msg.status };
+          if (current && msg.append) {
+            for (const key of Object.keys(msg.append)) {
+              if (!(key in next)) next[key] = current[key];
+            }
+          }
+          applyAppends(next, msg.append);
+          rev = msg.rev;
+          current = next;
+        } else if (msg.type === 'patch') {
+          if (rev < 0) {
+            // resync already requested, waiting for its full snapshot
+            return;
+          }
+          if (current === null || msg.base !== rev) {
+            rev = -1;
+            send(JSON.stringify({ type: 'resync', cursors: current ? seriesCursors(current) : {} }));
+            return;
+          }
+          const next: StatusSnapshot = { ...current, ...msg.set };
+          for (const key of msg.remove) delete next[key];
+          applyAppends(next, msg.append);
+          rev = msg.rev;
+          current = next;
+        } else {
+          return;
+        }
+        setStatus(current);
+      },
+      (isConnected) => {
+        // A reconnect starts a fresh server-side session (possibly a restarted server, with its
+        // sequence numbers starting over), which always opens with a plain full snapshot.
+        if (!isConnected) {
+          rev = -1;
+          current = null;
         }
+        setConnected(isConnected);
       },
-      setConnected,
     );
-  }, []);
+  }, [topicsParam]);
 
   return { status, connected };
 }
@@ -1,21 +1,41 @@
 import { useEffect, useRef, useState } from 'react';
-import { imageUrl, fetchAutoStretch, DEFAULT_STRETCH, type StretchSettings } from '../api/imageApi';
+import {
+  imageUrl, fetchAutoStretch, fetchSprite, DEFAULT_STRETCH, SPRITE_MAX_FILES, type StretchSettings,
+} from '../api/imageApi';
 import { getFrameNumber, getFrameTypeLabel, type CapturedImage, type ViewerImage } from '../api/types';
 
 const THUMB_MAX_DIM = 200;
+/** Thumbs that scroll into view within this long of each other go out as one sprite request. */
+const SPRITE_BATCH_DELAY_MS = 50;
 
 interface ThumbProps {
   img: CapturedImage;
   stretch: StretchSettings;
+  /** Its cell cut out of a sprite sheet, once that arrived — until then (or if the batch didn't
+   * have it) the thumb falls back to its own <img> request. */
+  bitmap?: ImageBitmap;
+  spriteFailed: boolean;
   onVisible: () => void;
   onOpen: () => void;
 }
 
-/** Only requests its auto-stretch (and only renders the actual <img>, so nothing is fetched at
- * all) once it's actually scrolled near the viewport — with up to 2000 images in the ring buffer
+function BitmapCanvas({ bitmap, title }: { bitmap: ImageBitmap; title: string }) {
+  const ref = useRef<HTMLCanvasElement>(null);
+  useEffect(() => {
+    const canvas = ref.current;
+    if (!canvas) return;
+    canvas.width = bitmap.width;
+    canvas.height = bitmap.height;
+    canvas.getContext('2d')?.drawImage(bitmap, 0, 0);
+  }, [bitmap]);
+  return <canvas ref={ref} aria-label={title} />;
+}
+
+/** Only asks for its thumbnail (onVisible, batched into the strip's next sprite request — nothing
+ * is fetched at all before) once it's actually scrolled near the viewport — with up to 2000 images in the ring buffer
  * (a full night across several targets/filters), fetching every single one's auto-stretch on
  * mount regardless of visibility was wasteful. */
-function Thumb({ img, stretch, onVisible, onOpen }: ThumbProps) {
+function Thumb({ img, stretch, bitmap, spriteFailed, onVisible, onOpen }: ThumbProps) {
   const ref = useRef<HTMLDivElement>(null);
   const [visible, setVisible] = useState(false);
   const frameNumber = getFrameNumber(img.filename);
@@ -40,9 +60,11 @@ function Thumb({ img, stretch, onVisible, onOpen }: ThumbProps) {
 
   return (
     <div ref={ref} className="image-thumb">
-      {visible ? (
+      {visible && (bitmap || spriteFailed) ? (
         <button type="button" className="image-thumb-open" onClick={onOpen} title={img.filename}>
-          <img src={imageUrl(img.filename, THUMB_MAX_DIM, stretch)} alt={img.filename} loading="lazy" />
+          {bitmap
+            ? <BitmapCanvas bitmap={bitmap} title={img.filename} />
+            : <img src={imageUrl(img.filename, THUMB_MAX_DIM, stretch)} alt={img.filename} loading="lazy" />}
         </button>
       ) : (
         <div className="image-thumb-placeholder" />
@@ -59,20 +81,66 @@ function Thumb({ img, stretch, onVisible, onOpen }: ThumbProps) {
 
 /** Each thumb shows its own Auto-STF; click one to open it full-size in ImageViewer, which has
  * its own (much roomier) stretch/zoom controls — this used to have its own inline manual-editing
- * panel too, folded into the viewer instead of maintaining two separate stretch UIs. */
+ * panel too, folded into the viewer instead of maintaining two separate stretch UIs.
+ *
+ * Thumbs come in sprite sheets (fetchSprite): everything that scrolled into view within
+ * SPRITE_BATCH_DELAY_MS is one request, thumbnails and auto-stretches together, instead of two
+ * requests per thumb. Only what a sheet didn't have (e.g. a since-deleted file, which gets the
+ * server's "not found" placeholder) or a failed sheet falls back to per-thumb requests. */
 export function ImageStrip({ images, onOpenImage }: { images: CapturedImage[]; onOpenImage: (image: ViewerImage) => void }) {
   const [autoByFile, setAutoByFile] = useState<Record<string, StretchSettings>>({});
+  const [bitmapByFile, setBitmapByFile] = useState<Record<string, ImageBitmap>>({});
+  const [spriteFailedFiles, setSpriteFailedFiles] = useState<Set<string>>(new Set());
   // Tracks every filename ever requested, successful or not — a 404 (e.g. a since-deleted file)
   // must never be retried, or it gets re-requested on every status push (roughly once a second)
   // forever.
   const requestedFiles = useRef(new Set<string>());
+  const pendingFiles = useRef<string[]>([]);
+  const batchTimer = useRef<number | null>(null);
 
-  function requestAutoStretch(filename: string) {
+  function requestThumb(filename: string) {
     if (requestedFiles.current.has(filename)) return;
     requestedFiles.current.add(filename);
-    fetchAutoStretch(filename, false)
-      .then((stretch) => setAutoByFile((s) => ({ ...s, [filename]: stretch })))
-      .catch(() => { /* leave it out of autoByFile — DEFAULT_STRETCH is the fallback, no retry */ });
+    pendingFiles.current.push(filename);
+    if (batchTimer.current == null) {
+      batchTimer.current = window.setTimeout(flushBatch, SPRITE_BATCH_DELAY_MS);
+    }
+  }
+
+  function flushBatch() {
+    batchTimer.current = null;
+    const files = pendingFiles.current;
+    pendingFiles.current = [];
+    for (let i = 0; i < files.length; i += SPRITE_MAX_FILES) {
+      loadSprite(files.slice(i, i + SPRITE_MAX_FILES));
+    }
+  }
+
+  async function loadSprite(files: string[]) {
+    try {
+      const sheet = await fetchSprite(files, THUMB_MAX_DIM);
+      const bitmaps: Record<string, ImageBitmap> = {};
+      const stretches: Record<string, StretchSettings> = {};
+      await Promise.all(sheet.entries.map(async (e) => {
+        bitmaps[e.file] = await createImageBitmap(sheet.jpeg, e.x, e.y, e.width, e.height);
+        stretches[e.file] = { shadows: e.shadows, midtones: e.midtones, highlights: e.highlights };
+      }));
+      setBitmapByFile((b) => ({ ...b, ...bitmaps }));
+      setAutoByFile((s) => ({ ...s, ...stretches }));
+      if (sheet.missing.length > 0) fallBack(sheet.missing);
+    } catch {
+      fallBack(files);
+    }
+  }
+
+  /** Per-thumb <img> requests for what a sprite didn't deliver, with their own auto-stretch. */
+  function fallBack(files: string[]) {
+    setSpriteFailedFiles((f) => new Set([...f, ...files]));
+    for (const filename of files) {
+      fetchAutoStretch(filename, false)
+        .then((stretch) => setAutoByFile((s) => ({ ...s, [filename]: stretch })))
+        .catch(() => { /* leave it out of autoByFile — DEFAULT_STRETCH is the fallback, no retry */ });
+    }
   }
 
   if (images.length === 0) {
@@ -86,7 +154,9 @@ export function ImageStrip({ images, onOpenImage }: { images: CapturedImage[]; o
           key={img.filename}
           img={img}
           stretch={autoByFile[img.filename] ?? DEFAULT_STRETCH}
-          onVisible={() => requestAutoStretch(img.filename)}
+          bitmap={bitmapByFile[img.filename]}
+          spriteFailed={spriteFailedFiles.has(img.filename)}
+          onVisible={() => requestThumb(img.filename)}
           onOpen={() => onOpenImage({ filename: img.filename, target: img.target, filter: img.filter, exposure: img.exposure })}
         />
       ))}
@@ -1,5 +1,8 @@
 import { useEffect, useRef, useState } from 'react';
-import { imageUrl, fetchAutoStretch, DEFAULT_STRETCH, type StretchSettings } from '../api/imageApi';
+import {
+  imageUrl, tileUrl, fetchAutoStretch, fetchPreview, drawPreview, DEFAULT_STRETCH, TILE_SIZE,
+  type LinearPreview, type StretchSettings,
+} from '../api/imageApi';
 import type { ViewerImage } from '../api/types';
 
 interface Props {
@@ -9,8 +12,18 @@ interface Props {
 
 /** Same convention as ImageStrip's own full-size link — the thumb endpoint downsizes server-side,
  * this just asks for more than any of our cameras actually produce so the real resolution comes
- * through untouched. */
+ * through untouched. Only used when the linear preview below can't be had. */
 const VIEWER_MAX_DIM = 8000;
+/** The linear preview the viewer stretches itself (see fetchPreview) — every slider move is a
+ * lookup table over these pixels instead of a server-side render + JPEG of the whole frame.
+ * Half a 6000px sensor's resolution, 12 MB of 16-bit levels. */
+const PREVIEW_MAX_DIM = 3000;
+/** Zoomed in past the preview's own resolution, the visible part is overlaid with deep-zoom tiles
+ * (/images/tiles) at the level matching the zoom — never more than this many at once. */
+const MAX_TILES = 64;
+/** Tiles are rendered server-side with the STF, so while a slider is being dragged they wait for
+ * it to settle (the preview underneath follows immediately). */
+const TILE_STRETCH_DELAY_MS = 300;
 const MIN_ZOOM = 1;
 // Large sensors easily need >8x zoom (relative to "fit") just to reach their native 1:1 size in a
 // modest-sized viewer, and pixel-peeping stars typically wants to go beyond 1:1 too.
@@ -32,6 +45,72 @@ interface PinchState {
   startZoom: number;
 }
 
+interface Box {
+  left: number;
+  top: number;
+  width: number;
+  height: number;
+}
+
+interface Tile {
+  key: string;
+  level: number;
+  x: number;
+  y: number;
+  /** percentages of the frame's fit box */
+  left: number;
+  top: number;
+  width: number;
+  height: number;
+}
+
+/** The tiles covering what's on screen of a frame shown in `fit` (the untransformed fit box within
+ * `area`) at zoom/pan — none while the preview itself still has at least as many pixels as the
+ * screen shows. Deep Zoom numbering, same as FitsThumbnail.Pyramid: maxLevel is full resolution,
+ * each level below half that. */
+function visibleTiles(
+  preview: LinearPreview, fit: Box, area: { width: number; height: number },
+  zoom: number, pan: { x: number; y: number },
+): Tile[] {
+  const { sourceWidth, sourceHeight } = preview;
+  const display = (zoom * fit.width) / sourceWidth; // screen px per source px
+  if (fit.width <= 0 || display <= preview.width / sourceWidth) return [];
+
+  const maxLevel = Math.ceil(Math.log2(Math.max(sourceWidth, sourceHeight)));
+  const k = Math.min(maxLevel, Math.max(0, Math.floor(Math.log2(1 / display))));
+  const level = maxLevel - k;
+  const span = TILE_SIZE * 2 ** k; // source px per tile
+
+  // The transform scales around the fit box's center; invert it for the area's corners.
+  const toSource = sourceWidth / fit.width;
+  const cx = fit.left + fit.width / 2 + pan.x;
+  const cy = fit.top + fit.height / 2 + pan.y;
+  const x0 = Math.max(0, (fit.width / 2 + (0 - cx) / zoom) * toSource);
+  const x1 = Math.min(sourceWidth, (fit.width / 2 + (area.width - cx) / zoom) * toSource);
+  const y0 = Math.max(0, (fit.height / 2 + (0 - cy) / zoom) * toSource);
+  const y1 = Math.min(sourceHeight, (fit.height / 2 + (area.height - cy) / zoom) * toSource);
+
+  const tiles: Tile[] = [];
+  for (let ty = Math.floor(y0 / span); ty * span < y1; ty++) {
+    for (let tx = Math.floor(x0 / span); tx * span < x1; tx++) {
+      if (tiles.length >= MAX_TILES) return tiles;
+      const left = tx * span;
+      const top = ty * span;
+      tiles.push({
+        key: `${level}/${tx}/${ty}`,
+        level,
+        x: tx,
+        y: ty,
+        left: (left / sourceWidth) * 100,
+        top: (top / sourceHeight) * 100,
+        width: (Math.min(span, sourceWidth - left) / sourceWidth) * 100,
+        height: (Math.min(span, sourceHeight - top) / sourceHeight) * 100,
+      });
+    }
+  }
+  return tiles;
+}
+
 function pointerDistance(a: { x: number; y: number }, b: { x: number; y: number }): number {
   return Math.hypot(a.x - b.x, a.y - b.y);
 }
@@ -52,6 +131,15 @@ export function ImageViewer({ image, onClose }: Props) {
   const dragRef = useRef<DragState | null>(null);
   const canvasRef = useRef<HTMLDivElement>(null);
   const imgRef = useRef<HTMLImageElement>(null);
+  const previewCanvasRef = useRef<HTMLCanvasElement>(null);
+  const [preview, setPreview] = useState<LinearPreview | null>(null);
+  // Falls back to the server-rendered JPEG (e.g. the "image not found" placeholder).
+  const [previewFailed, setPreviewFailed] = useState(false);
+  // The preview canvas' laid-out (untransformed) box, and the viewer area's size — where the tile
+  // layer goes, and which tiles are on screen.
+  const [fitBox, setFitBox] = useState<Box>({ left: 0, top: 0, width: 0, height: 0 });
+  const [areaSize, setAreaSize] = useState({ width: 0, height: 0 });
+  const [tileStretch, setTileStretch] = useState<StretchSettings>(DEFAULT_STRETCH);
   // Multi-touch: pointer events unify mouse/touch/pen, so tracking every currently-down pointer
   // by id is what lets two simultaneous touches become a pinch gesture instead of two independent
   // (and conflicting) single-finger drags.
@@ -64,11 +152,53 @@ export function ImageViewer({ image, onClose }: Props) {
     setZoom(1);
     setPan({ x: 0, y: 0 });
     setFitScale(1);
-    fetchAutoStretch(image.filename, false)
-      .then(setStretch)
-      .catch(() => { /* leave the default stretch in place, no retry */ });
+    setPreview(null);
+    setPreviewFailed(false);
+    let cancelled = false;
+    fetchPreview(image.filename, PREVIEW_MAX_DIM)
+      .then((p) => {
+        if (cancelled) return;
+        setPreview(p);
+        setStretch(p.autoStretch);
+      })
+      .catch(() => {
+        if (cancelled) return;
+        setPreviewFailed(true);
+        fetchAutoStretch(image.filename, false)
+          .then(setStretch)
+          .catch(() => { /* leave the default stretch in place, no retry */ });
+      });
+    return () => { cancelled = true; };
   }, [image?.filename]);
 
+  useEffect(() => {
+    const canvas = previewCanvasRef.current;
+    if (!canvas || !preview) return;
+    drawPreview(canvas, preview, stretch);
+    requestAnimationFrame(recomputeFitScale);
+  }, [preview, stretch]);
+
+  useEffect(() => {
+    const timer = window.setTimeout(() => setTileStretch(stretch), TILE_STRETCH_DELAY_MS);
+    return () => window.clearTimeout(timer);
+  }, [stretch]);
+
+  /** Either element's own fit box vs. the frame's native width — see fitScale. */
+  function recomputeFitScale() {
+    const canvas = previewCanvasRef.current;
+    const area = canvasRef.current;
+    if (canvas && preview && canvas.offsetWidth > 0) {
+      setFitScale(canvas.offsetWidth / preview.sourceWidth);
+      setFitBox({ left: canvas.offsetLeft, top: canvas.offsetTop, width: canvas.offsetWidth, height: canvas.offsetHeight });
+      if (area) setAreaSize({ width: area.clientWidth, height: area.clientHeight });
+      return;
+    }
+    const img = imgRef.current;
+    if (img && img.naturalWidth > 0) {
+      setFitScale(img.offsetWidth / img.naturalWidth);
+    }
+  }
+
   useEffect(() => {
     if (!image) return undefined;
     function onKeyDown(e: KeyboardEvent) {
@@ -113,15 +243,9 @@ export function ImageViewer({ image, onClose }: Props) {
   // out) and on resize, since the fit box changes with the viewer's own size.
   useEffect(() => {
     if (!image) return undefined;
-    function recomputeFitScale() {
-      const img = imgRef.current;
-      if (img && img.naturalWidth > 0) {
-        setFitScale(img.offsetWidth / img.naturalWidth);
-      }
-    }
     window.addEventListener('resize', recomputeFitScale);
     return () => window.removeEventListener('resize', recomputeFitScale);
-  }, [image]);
+  }, [image, preview]);
 
   if (!image) return null;
 
@@ -134,7 +258,7 @@ export function ImageViewer({ image, onClose }: Props) {
   // exceed half of however much that exceeds the canvas, or the image can be dragged/left fully off
   // screen with no way back (this was the "zoom out and panning is stuck" bug).
   function computeMaxPan(z: number): { x: number; y: number } {
-    const img = imgRef.current;
+    const img = previewCanvasRef.current ?? imgRef.current;
     const canvas = canvasRef.current;
     if (!img || !canvas) return { x: 0, y: 0 };
     return {
@@ -155,6 +279,10 @@ export function ImageViewer({ image, onClose }: Props) {
   }
 
   async function applyAuto(strong: boolean) {
+    if (preview) {
+      setStretch(strong ? preview.strongAutoStretch : preview.autoStretch);
+      return;
+    }
     try {
       setStretch(await fetchAutoStretch(image!.filename, strong));
     } catch {
@@ -221,21 +349,58 @@ export function ImageViewer({ image, onClose }: Props) {
           onPointerUp={handlePointerUp}
           onPointerLeave={handlePointerUp}
         >
-          <img
-            ref={imgRef}
-            src={imageUrl(image.filename, VIEWER_MAX_DIM, stretch)}
-            alt={image.filename}
-            draggable={false}
-            className="image-viewer-img"
-            onLoad={() => {
-              // offsetWidth is only meaningful once the browser has actually laid the image out.
-              requestAnimationFrame(() => {
-                const img = imgRef.current;
-                if (img && img.naturalWidth > 0) setFitScale(img.offsetWidth / img.naturalWidth);
-              });
-            }}
-            style={{ transform: `translate(${pan.x}px, ${pan.y}px) scale(${zoom})`, cursor: zoom > MIN_ZOOM ? 'grab' : 'default' }}
-          />
+          {previewFailed ? (
+            <img
+              ref={imgRef}
+              src={imageUrl(image.filename, VIEWER_MAX_DIM, stretch)}
+              alt={image.filename}
+              draggable={false}
+              className="image-viewer-img"
+              onLoad={() => {
+                // offsetWidth is only meaningful once the browser has actually laid the image out.
+                requestAnimationFrame(recomputeFitScale);
+              }}
+              style={{ transform: `translate(${pan.x}px, ${pan.y}px) scale(${zoom})`, cursor: zoom > MIN_ZOOM ? 'grab' : 'default' }}
+            />
+          ) : (
+            <>
+              <canvas
+                ref={previewCanvasRef}
+                aria-label={image.filename}
+                className="image-viewer-img"
+                style={{ transform: `translate(${pan.x}px, ${pan.y}px) scale(${zoom})`, cursor: zoom > MIN_ZOOM ? 'grab' : 'default' }}
+              />
+              {preview && (
+                <div
+                  className="image-viewer-tiles"
+                  style={{
+                    left: fitBox.left,
+                    top: fitBox.top,
+                    width: fitBox.width,
+                    height: fitBox.height,
+                    transform: `translate(${pan.x}px, ${pan.y}px) scale(${zoom})`,
+                  }}
+                >
+                  {visibleTiles(preview, fitBox, areaSize, zoom, pan).map((t) => (
+                    <img
+                      key={t.key}
+                      src={tileUrl(image.filename, t.level, t.x, t.y, tileStretch)}
+                      alt=""
+                      draggable={false}
+                      style={{
+                        left: `${t.left}%`,
+                        top: `${t.top}%`,
+                        width: `${t.width}%`,
+                        height: `${t.height}%`,
+                        // past 1:1, show the actual pixels rather than a blur of them
+                        imageRendering: zoom * fitScale > 1 ? 'pixelated' : 'auto',
+                      }}
+                    />
+                  ))}
+                </div>
+              )}
+            </>
+          )}
         </div>
 
         <div className="image-viewer-panel">
@@ -2,11 +2,13 @@
  * Connects to a same-origin WebSocket path with auto-reconnect and a 1s
  * keep-alive ping, mirroring the protocol the backend's LoggingSocket/
  * StatusSocket endpoints already speak (see the old Angular LogWebSocket).
+ * onMessage also gets a `send` for control messages back to the server
+ * (e.g. the status socket's delta-protocol resync request).
  * Returns a cleanup function.
  */
 export function connectSocket(
   path: string,
-  onMessage: (data: string) => void,
+  onMessage: (data: string, send: (msg: string) => void) => void,
   onStatusChange?: (connected: boolean) => void,
 ): () => void {
   let ws: WebSocket | null = null;
@@ -25,7 +27,7 @@ export function connectSocket(
       keepAlive = setInterval(() => ws?.send('KEEP_ALIVE'), 1000);
     };
     ws.onmessage = (m) => {
-      if (m.data) onMessage(m.data);
+      if (m.data) onMessage(m.data, (msg) => ws?.send(msg));
     };
     ws.onclose = () => {
       onStatusChange?.(false);